@@ -0,0 +1,87 @@
+package exercises.lottery.data;
+
+import com.mongodb.Mongo;
+import cz.jirutka.spring.embedmongo.EmbeddedMongoBuilder;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.rules.PrecomputedLotteryRules;
+import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.service.TicketService;
+import exercises.lottery.service.TicketServices;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of generating and storing a batch of tickets one at a time
+ * (as POST /tickets/{numberOfLines} does) and in bulk, with parallel
+ * generation and chunked batch inserts (as POST /tickets/bulk does).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkGenerationBenchmark {
+
+    private static final int NUMBER_OF_LINES = 5;
+
+    @Param({"27020"})
+    private int port;
+
+    @Param({"1000"})
+    private int numberOfTickets;
+
+    @Param({"100", "1000"})
+    private int chunkSize;
+
+    private Mongo mongo;
+    private MongoTemplate mongoTemplate;
+    private LotteryDao lotteryDao;
+    private TicketService ticketService;
+
+    @Setup(Level.Trial)
+    public void startMongo() throws Exception {
+        mongo = new EmbeddedMongoBuilder()
+                .version(Version.V3_2_1)
+                .bindIp("127.0.0.1")
+                .port(port)
+                .build();
+        mongoTemplate = new MongoTemplate(mongo, "lotteryBenchmark");
+        lotteryDao = new LotteryDao(mongoTemplate);
+        ticketService = TicketServices.create(new PrecomputedLotteryRules(new SimpleLotteryRules()));
+    }
+
+    @Setup(Level.Iteration)
+    public void dropTickets() {
+        mongoTemplate.dropCollection(Ticket.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopMongo() {
+        mongo.close();
+    }
+
+    @Benchmark
+    public int singleTickets() {
+        int created = 0;
+        for (int i = 0; i < numberOfTickets; i++) {
+            lotteryDao.createTicket(ticketService.generateNewTicket(NUMBER_OF_LINES));
+            created++;
+        }
+        return created;
+    }
+
+    @Benchmark
+    public int bulkTickets() {
+        int created = 0;
+        while (created < numberOfTickets) {
+            List<Ticket> chunk = ticketService.generateNewTickets(Math.min(chunkSize, numberOfTickets - created), NUMBER_OF_LINES);
+            created += lotteryDao.createTickets(chunk).size();
+        }
+        return created;
+    }
+}
@@ -0,0 +1,112 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.LotteryRules;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.rules.PrecomputedLotteryRules;
+import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.service.TicketService;
+import exercises.lottery.service.TicketServices;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark of the JournalTicketStore, with the same operations as
+ * {@link LotteryDaoBenchmark}, to compare both TicketStore implementations,
+ * with and without waiting for the records to be forced to disk.
+ * The writes are also measured with concurrent writers, which share the forces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalTicketStoreBenchmark {
+
+    @Param({"5", "27"})
+    private int numberOfLines;
+
+    @Param({"100000"})
+    private int storedTickets;
+
+    @Param({"true", "false"})
+    private boolean syncWrites;
+
+    private Path directory;
+    private JournalTicketStore ticketStore;
+    private TicketService ticketService;
+    private Ticket storedTicket;
+    private String middleId;
+
+    @Setup(Level.Trial)
+    public void createStore() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        ticketStore = new JournalTicketStore(directory.toString(), 64 << 20, syncWrites, 0.5, 1000);
+        LotteryRules rules = new PrecomputedLotteryRules(new SimpleLotteryRules());
+        ticketService = TicketServices.create(rules);
+    }
+
+    @Setup(Level.Iteration)
+    public void insertTickets() {
+        ticketStore.clear();
+        List<Ticket> tickets = ticketStore.createTickets(ticketService.generateNewTickets(storedTickets, numberOfLines));
+        storedTicket = tickets.get(tickets.size() - 1);
+        middleId = tickets.get(tickets.size() / 2).getId();
+        System.out.printf("%nJournal with %d tickets of %d lines: %d bytes of live records in %d bytes of files%n",
+                ticketStore.ticketCount(), numberOfLines, ticketStore.liveBytes(), ticketStore.fileBytes());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        ticketStore.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Ticket createTicket() {
+        return ticketStore.createTicket(ticketService.generateNewTicket(numberOfLines));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Ticket createTicketConcurrently() {
+        return ticketStore.createTicket(ticketService.generateNewTicket(numberOfLines));
+    }
+
+    @Benchmark
+    public Ticket getTicketById() {
+        return ticketStore.getTicketById(storedTicket.getId());
+    }
+
+    @Benchmark
+    public Ticket getTicketStatusById() {
+        return ticketStore.getTicketStatusById(storedTicket.getId());
+    }
+
+    @Benchmark
+    public List<Ticket> getTicketsPage() {
+        return ticketStore.getTicketsPage(false, middleId, 100);
+    }
+
+    @Benchmark
+    public Ticket createAndCheckTicket() {
+        Ticket created = ticketStore.createTicket(ticketService.generateNewTicket(numberOfLines));
+        return ticketStore.checkTicket(ticketService.checkTicket(created));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Ticket createAndCheckTicketConcurrently() {
+        Ticket created = ticketStore.createTicket(ticketService.generateNewTicket(numberOfLines));
+        return ticketStore.checkTicket(ticketService.checkTicket(created));
+    }
+}
@@ -0,0 +1,111 @@
+package exercises.lottery.data;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+import cz.jirutka.spring.embedmongo.EmbeddedMongoBuilder;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import exercises.lottery.domain.LotteryRules;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.rules.PrecomputedLotteryRules;
+import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.service.TicketService;
+import exercises.lottery.service.TicketServices;
+import org.bson.BasicBSONEncoder;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of LotteryDao round trips against an embedded MongoDB,
+ * with the lines stored in each layout (see {@link TicketConversions}).
+ * The BSON size of the stored ticket is printed on each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LotteryDaoBenchmark {
+
+    @Param({"27019"})
+    private int port;
+
+    @Param({"5", "27"})
+    private int numberOfLines;
+
+    @Param({TicketConversions.DOCUMENTS_LAYOUT, TicketConversions.COMPACT_LAYOUT})
+    private String layout;
+
+    private Mongo mongo;
+    private MongoTemplate mongoTemplate;
+    private LotteryDao lotteryDao;
+    private TicketService ticketService;
+    private Ticket storedTicket;
+
+    @Setup(Level.Trial)
+    public void startMongo() throws Exception {
+        mongo = new EmbeddedMongoBuilder()
+                .version(Version.V3_2_1)
+                .bindIp("127.0.0.1")
+                .port(port)
+                .build();
+        MongoDbFactory factory = new SimpleMongoDbFactory(mongo, "lotteryBenchmark");
+        CustomConversions conversions = TicketConversions.customConversions(layout);
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(new DefaultDbRefResolver(factory), mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        mongoTemplate = new MongoTemplate(factory, converter);
+        lotteryDao = new LotteryDao(mongoTemplate);
+        LotteryRules rules = new PrecomputedLotteryRules(new SimpleLotteryRules());
+        ticketService = TicketServices.create(rules);
+    }
+
+    @Setup(Level.Iteration)
+    public void insertTicket() {
+        mongoTemplate.dropCollection(Ticket.class);
+        storedTicket = lotteryDao.createTicket(ticketService.generateNewTicket(numberOfLines));
+        DBObject stored = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Ticket.class))
+                .findOne(new BasicDBObject("_id", new ObjectId(storedTicket.getId())));
+        System.out.printf("%nBSON size of a ticket with %d lines (%s layout): %d bytes%n",
+                numberOfLines, layout, new BasicBSONEncoder().encode(stored).length);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopMongo() {
+        mongo.close();
+    }
+
+    @Benchmark
+    public Ticket createTicket() {
+        return lotteryDao.createTicket(ticketService.generateNewTicket(numberOfLines));
+    }
+
+    @Benchmark
+    public Ticket getTicketById() {
+        return lotteryDao.getTicketById(storedTicket.getId());
+    }
+
+    @Benchmark
+    public Ticket getTicketStatusById() {
+        return lotteryDao.getTicketStatusById(storedTicket.getId());
+    }
+
+    @Benchmark
+    public Ticket createAndCheckTicket() {
+        Ticket created = lotteryDao.createTicket(ticketService.generateNewTicket(numberOfLines));
+        return lotteryDao.checkTicket(ticketService.checkTicket(created));
+    }
+}
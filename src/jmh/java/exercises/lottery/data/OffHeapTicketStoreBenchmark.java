@@ -0,0 +1,80 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.LotteryRules;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.rules.PrecomputedLotteryRules;
+import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.service.TicketService;
+import exercises.lottery.service.TicketServices;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the OffHeapTicketStore, with the same operations as
+ * {@link LotteryDaoBenchmark}, to compare both TicketStore implementations.
+ * The memory used by the store is printed on each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=2g")
+public class OffHeapTicketStoreBenchmark {
+
+    @Param({"5", "27"})
+    private int numberOfLines;
+
+    @Param({"100000"})
+    private int storedTickets;
+
+    private OffHeapTicketStore ticketStore;
+    private TicketService ticketService;
+    private Ticket storedTicket;
+    private String middleId;
+
+    @Setup(Level.Trial)
+    public void createStore() {
+        ticketStore = new OffHeapTicketStore(64 << 20);
+        LotteryRules rules = new PrecomputedLotteryRules(new SimpleLotteryRules());
+        ticketService = TicketServices.create(rules);
+    }
+
+    @Setup(Level.Iteration)
+    public void insertTickets() {
+        ticketStore.clear();
+        List<Ticket> tickets = ticketStore.createTickets(ticketService.generateNewTickets(storedTickets, numberOfLines));
+        storedTicket = tickets.get(tickets.size() - 1);
+        middleId = tickets.get(tickets.size() / 2).getId();
+        System.out.printf("%nOff-heap store with %d tickets of %d lines: %d bytes of records, %d bytes of index%n",
+                ticketStore.ticketCount(), numberOfLines, ticketStore.liveBytes(), ticketStore.indexBytes());
+    }
+
+    @Benchmark
+    public Ticket createTicket() {
+        return ticketStore.createTicket(ticketService.generateNewTicket(numberOfLines));
+    }
+
+    @Benchmark
+    public Ticket getTicketById() {
+        return ticketStore.getTicketById(storedTicket.getId());
+    }
+
+    @Benchmark
+    public Ticket getTicketStatusById() {
+        return ticketStore.getTicketStatusById(storedTicket.getId());
+    }
+
+    @Benchmark
+    public List<Ticket> getTicketsPage() {
+        return ticketStore.getTicketsPage(false, middleId, 100);
+    }
+
+    @Benchmark
+    public Ticket createAndCheckTicket() {
+        Ticket created = ticketStore.createTicket(ticketService.generateNewTicket(numberOfLines));
+        return ticketStore.checkTicket(ticketService.checkTicket(created));
+    }
+}
@@ -0,0 +1,151 @@
+package exercises.lottery.data;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+import com.mongodb.Mongo;
+import cz.jirutka.spring.embedmongo.EmbeddedMongoBuilder;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.rules.PrecomputedLotteryRules;
+import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.metrics.LotteryMetrics;
+import exercises.lottery.service.TicketService;
+import exercises.lottery.service.TicketServices;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark of ticket writes against an embedded MongoDB, with the given number of writes in flight,
+ * written one by one on a pool of that many threads (window -1), or coalesced with the given window.
+ * The throughput is the rate at which writes complete; the latency percentiles of the writes,
+ * from being issued to being completed, are printed on each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteCoalescerBenchmark {
+
+    private static final int NUMBER_OF_LINES = 5;
+
+    @Param({"27020"})
+    private int port;
+
+    @Param({"-1", "0", "500", "1000", "2000", "5000"})
+    private long windowMicros;
+
+    @Param({"1", "8", "64", "256"})
+    private int concurrency;
+
+    @Param({"500"})
+    private int maxBatchSize;
+
+    private Mongo mongo;
+    private MongoTemplate mongoTemplate;
+    private TicketService ticketService;
+    private ExecutorService daoExecutor;
+    private AsyncLotteryDao asyncLotteryDao;
+    private WriteCoalescer writeCoalescer;
+
+    private Semaphore inFlight;
+    private Histogram latencies;
+
+    @Setup(Level.Trial)
+    public void startMongo() throws Exception {
+        mongo = new EmbeddedMongoBuilder()
+                .version(Version.V3_2_1)
+                .bindIp("127.0.0.1")
+                .port(port)
+                .build();
+        MongoDbFactory factory = new SimpleMongoDbFactory(mongo, "lotteryBenchmark");
+        CustomConversions conversions = TicketConversions.customConversions(TicketConversions.COMPACT_LAYOUT);
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(new DefaultDbRefResolver(factory), mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        mongoTemplate = new MongoTemplate(factory, converter);
+        LotteryDao lotteryDao = new LotteryDao(mongoTemplate);
+        ticketService = TicketServices.create(new PrecomputedLotteryRules(new SimpleLotteryRules()));
+
+        daoExecutor = Executors.newFixedThreadPool(concurrency);
+        if (windowMicros >= 0) {
+            writeCoalescer = new WriteCoalescer(lotteryDao, windowMicros, maxBatchSize, concurrency,
+                    ForkJoinPool.commonPool(), LotteryMetrics.disabled());
+        }
+        asyncLotteryDao = new AsyncLotteryDao(lotteryDao, daoExecutor, Optional.ofNullable(writeCoalescer));
+        inFlight = new Semaphore(concurrency);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearTickets() {
+        mongoTemplate.dropCollection(Ticket.class);
+        mongoTemplate.dropCollection(LotteryDao.STATS_COLLECTION);
+        latencies = new Histogram(new UniformReservoir(100_000));
+    }
+
+    @TearDown(Level.Iteration)
+    public void printLatencies() throws InterruptedException {
+        // waits for the writes in flight, so they do not overlap the next iteration
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        Snapshot snapshot = latencies.getSnapshot();
+        System.out.printf("%nWrite latency (window %d us, %d in flight, %d writes): "
+                        + "p50 %.0f us, p90 %.0f us, p99 %.0f us, p99.9 %.0f us, max %d us%n",
+                windowMicros, concurrency, latencies.getCount(),
+                snapshot.getMedian() / 1000, snapshot.getValue(0.9) / 1000, snapshot.get99thPercentile() / 1000,
+                snapshot.get999thPercentile() / 1000, snapshot.getMax() / 1000);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopMongo() throws InterruptedException {
+        if (writeCoalescer != null) {
+            writeCoalescer.close();
+        }
+        daoExecutor.shutdownNow();
+        mongo.close();
+    }
+
+    @Benchmark
+    public void createTicket() throws InterruptedException {
+        issue(() -> asyncLotteryDao.createTicket(ticketService.generateNewTicket(NUMBER_OF_LINES)));
+    }
+
+    @Benchmark
+    public void createAndCheckTicket() throws InterruptedException {
+        issue(() -> asyncLotteryDao.createTicket(ticketService.generateNewTicket(NUMBER_OF_LINES))
+                .thenCompose(created -> asyncLotteryDao.checkTicket(ticketService.checkTicket(created))));
+    }
+
+
+    /**
+     * Issues a write once fewer than the given number of writes are in flight.
+     */
+    private void issue(Supplier<CompletableFuture<Ticket>> write) throws InterruptedException {
+        inFlight.acquire();
+        long start = System.nanoTime();
+        write.get().whenComplete((ticket, error) -> {
+            latencies.update(System.nanoTime() - start);
+            inFlight.release();
+        });
+    }
+}
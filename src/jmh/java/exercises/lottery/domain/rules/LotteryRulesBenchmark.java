@@ -0,0 +1,60 @@
+package exercises.lottery.domain.rules;
+
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LotteryRules;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the stream based SimpleLotteryRules
+ * with the table based PrecomputedLotteryRules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LotteryRulesBenchmark {
+
+    @Param({"simple", "precomputed"})
+    private String implementation;
+
+    private LotteryRules rules;
+    private Line[] lines;
+
+    @Setup
+    public void setUp() {
+        SimpleLotteryRules simpleRules = new SimpleLotteryRules();
+        rules = "simple".equals(implementation) ? simpleRules : new PrecomputedLotteryRules(simpleRules);
+
+        LineOutcomeTable table = LineOutcomeTable.of(simpleRules);
+        lines = new Line[table.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = new Line(table.numbersOf(i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(27)
+    public int lineOutcome() {
+        int sum = 0;
+        for (Line line : lines) {
+            sum += rules.getLineOutcome(line);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(27)
+    public int lineValidation() {
+        int valid = 0;
+        for (Line line : lines) {
+            if (rules.isLineValid(line)) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,87 @@
+package exercises.lottery.resources;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the REST interface, run against an application started separately,
+ * reporting the latency distribution (including p99) of single ticket requests
+ * at a fixed concurrency of 64 clients.
+ *
+ * To compare the blocking and asynchronous modes, run it once against the application
+ * started with the 'main' profile and once with 'main,async', with the same Tomcat
+ * thread pool (e.g. -Dserver.tomcat.max-threads=16), and compare the p0.99 columns:
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=RequestLatencyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(64)
+@Fork(1)
+public class RequestLatencyBenchmark {
+
+    @Param({"http://localhost:8080/lottery/tickets"})
+    private String ticketsUrl;
+
+    private String ticketUrl;
+
+    @Setup(Level.Trial)
+    public void createTicket() throws IOException {
+        HttpURLConnection connection = open(ticketsUrl + "/5", "POST");
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_CREATED) {
+                throw new IllegalStateException("Could not create ticket: " + connection.getResponseCode());
+            }
+            ticketUrl = connection.getHeaderField("Location");
+            drain(connection);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Benchmark
+    public int getTicket() throws IOException {
+        return request(ticketUrl, "GET");
+    }
+
+    @Benchmark
+    public int generateTicket() throws IOException {
+        return request(ticketsUrl + "/5", "POST");
+    }
+
+    private static int request(String url, String method) throws IOException {
+        HttpURLConnection connection = open(url, method);
+        int status = connection.getResponseCode();
+        // the response is read to the end so that the connection is kept alive
+        drain(connection);
+        return status;
+    }
+
+    private static HttpURLConnection open(String url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept", "application/json");
+        return connection;
+    }
+
+    private static void drain(HttpURLConnection connection) throws IOException {
+        InputStream body = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (body == null) {
+            return;
+        }
+        try (InputStream toDrain = body) {
+            byte[] buffer = new byte[4096];
+            while (toDrain.read(buffer) != -1) {
+                // discard
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package exercises.lottery.resources;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of request threads logging one event per request to a file,
+ * synchronously, through the bounded non-blocking asynchronous appender
+ * of the 'asyncLogging' profile, and with sampling (one in 100 events).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class RequestLoggingBenchmark {
+
+    @Param({"sync", "async"})
+    private String appender;
+
+    @Param({"1", "100"})
+    private int sampleRate;
+
+    private LoggerContext context;
+    private Logger requestLogger;
+    private long requests;
+    private File logFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = new LoggerContext();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} %5p [%t] %logger : %m%n");
+        encoder.start();
+
+        logFile = File.createTempFile("lottery-requests", ".log");
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(context);
+        fileAppender.setEncoder(encoder);
+        fileAppender.setFile(logFile.getAbsolutePath());
+        fileAppender.start();
+
+        Appender<ILoggingEvent> toUse = fileAppender;
+        if ("async".equals(appender)) {
+            AsyncAppender asyncAppender = new AsyncAppender();
+            asyncAppender.setContext(context);
+            asyncAppender.setQueueSize(8192);
+            asyncAppender.setDiscardingThreshold(1638);
+            asyncAppender.setNeverBlock(true);
+            asyncAppender.addAppender(fileAppender);
+            asyncAppender.start();
+            toUse = asyncAppender;
+        }
+        requestLogger = context.getLogger("lottery.requests");
+        requestLogger.setAdditive(false);
+        requestLogger.addAppender(toUse);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+        logFile.delete();
+    }
+
+    @Benchmark
+    public void logRequest() {
+        // not synchronized, as an approximation of the sampling counter
+        if (requests++ % sampleRate != 0) {
+            return;
+        }
+        requestLogger.info("event=request method={} path=/{} resource={} status={} durationUs={} sampleRate={}",
+                "GET", "tickets/57982e5b8e7c9f4b7c2e3a41", "getTicket", 200, 1234, sampleRate);
+    }
+}
@@ -0,0 +1,94 @@
+package exercises.lottery.resources;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import exercises.lottery.domain.LotteryRules;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.rules.PrecomputedLotteryRules;
+import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.service.TicketService;
+import exercises.lottery.service.TicketServices;
+import exercises.lottery.views.CheckedTicketView;
+import exercises.lottery.views.UncheckedTicketView;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the JSON serialization of a ticket with each JsonView,
+ * comparing a new ObjectMapper per request (building a String) with the
+ * shared writers of TicketJsonWriter (writing straight to the output stream)
+ * and with copying JSON serialized beforehand, as cached for checked tickets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketSerializationBenchmark {
+
+    @Param({"none", "unchecked", "checked"})
+    private String view;
+
+    @Param({"5", "27"})
+    private int numberOfLines;
+
+    private Class<?> viewClass;
+    private Ticket ticket;
+    private TicketJsonWriter ticketJsonWriter;
+    private CountingOutputStream output;
+    private byte[] serializedJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        LotteryRules rules = new PrecomputedLotteryRules(new SimpleLotteryRules());
+        TicketService ticketService = TicketServices.create(rules);
+        ticket = ticketService.generateNewTicket(numberOfLines);
+        ticket.setId("57982e5b8e7c9f4b7c2e3a41");
+        if ("checked".equals(view)) {
+            ticket = ticketService.checkTicket(ticket);
+        }
+        viewClass = "none".equals(view) ? null
+                : "checked".equals(view) ? CheckedTicketView.class : UncheckedTicketView.class;
+        ticketJsonWriter = new TicketJsonWriter();
+        output = new CountingOutputStream();
+        serializedJson = ticketJsonWriter.writerForView(viewClass).writeValueAsBytes(ticket);
+    }
+
+    @Benchmark
+    public String newMapperPerRequest() throws JsonProcessingException {
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.writerWithView(viewClass).writeValueAsString(ticket);
+    }
+
+    @Benchmark
+    public long sharedWriterToStream() throws IOException {
+        ticketJsonWriter.writerForView(viewClass).writeValue(output, ticket);
+        return output.count;
+    }
+
+    @Benchmark
+    public long cachedBytesToStream() throws IOException {
+        output.write(serializedJson, 0, serializedJson.length);
+        return output.count;
+    }
+
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
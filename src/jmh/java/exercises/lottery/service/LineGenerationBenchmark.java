@@ -0,0 +1,48 @@
+package exercises.lottery.service;
+
+import exercises.lottery.domain.LineSet;
+import exercises.lottery.domain.rules.PrecomputedLotteryRules;
+import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.service.random.ThreadLocalRandomSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the generation of all the lines of a ticket
+ * with rejection sampling (one line at a time) and with the
+ * partial Fisher-Yates shuffle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineGenerationBenchmark {
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14",
+            "15", "16", "17", "18", "19", "20", "21", "22", "23", "24", "25", "26", "27"})
+    private int numberOfLines;
+
+    private LineService lineService;
+
+    @Setup
+    public void setUp() {
+        lineService = new LineService(new PrecomputedLotteryRules(new SimpleLotteryRules()), new ThreadLocalRandomSource());
+    }
+
+    @Benchmark
+    public LineSet rejectionSampling() {
+        LineSet lines = new LineSet(numberOfLines);
+        for (int i = 0; i < numberOfLines; i++) {
+            lines.addCode(lineService.generateNewLineCode(lines));
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public LineSet shuffle() {
+        return lineService.generateNewLines(numberOfLines);
+    }
+}
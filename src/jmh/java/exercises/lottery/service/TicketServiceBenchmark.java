@@ -0,0 +1,55 @@
+package exercises.lottery.service;
+
+import com.codahale.metrics.MetricRegistry;
+import exercises.lottery.domain.LotteryRules;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.rules.PrecomputedLotteryRules;
+import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.metrics.LotteryMetrics;
+import exercises.lottery.service.random.ThreadLocalRandomSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the generation and checking of tickets of different sizes,
+ * with the metrics disabled and enabled (to measure their overhead).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketServiceBenchmark {
+
+    @Param({"1", "5", "10", "20", "27"})
+    private int numberOfLines;
+
+    @Param({"false", "true"})
+    private boolean metricsEnabled;
+
+    private TicketService ticketService;
+    private Ticket uncheckedTicket;
+
+    @Setup
+    public void setUp() {
+        LotteryRules rules = new PrecomputedLotteryRules(new SimpleLotteryRules());
+        LotteryMetrics metrics = metricsEnabled
+                ? new LotteryMetrics(new MetricRegistry(), LotteryMetrics.DEFAULT_RESERVOIR)
+                : LotteryMetrics.disabled();
+        ticketService = new TicketService(rules, new LineService(rules, new ThreadLocalRandomSource()), metrics);
+        uncheckedTicket = ticketService.generateNewTicket(numberOfLines);
+        uncheckedTicket.setId("benchmark");
+    }
+
+    @Benchmark
+    public Ticket generateNewTicket() {
+        return ticketService.generateNewTicket(numberOfLines);
+    }
+
+    @Benchmark
+    public Ticket checkTicket() {
+        return ticketService.checkTicket(uncheckedTicket);
+    }
+}
@@ -0,0 +1,18 @@
+package exercises.lottery.service;
+
+import exercises.lottery.domain.LotteryRules;
+import exercises.lottery.service.random.ThreadLocalRandomSource;
+
+/**
+ * Creates TicketService instances outside of the Spring context,
+ * for the benchmarks of other packages.
+ */
+public final class TicketServices {
+
+    private TicketServices() {
+    }
+
+    public static TicketService create(LotteryRules rules) {
+        return new TicketService(rules, new LineService(rules, new ThreadLocalRandomSource()));
+    }
+}
@@ -0,0 +1,59 @@
+package exercises.lottery.service.random;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each RandomSource under many concurrent threads, drawing the
+ * numbers for one 27 line ticket per operation. "sharedRandom" is the baseline
+ * of a single java.util.Random shared by all threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class RandomSourceBenchmark {
+
+    private static final int NUMBERS_PER_TICKET = 27;
+
+    @Param({"sharedRandom", "threadLocal", "splittable", "secure", "seeded"})
+    private String source;
+
+    private RandomSource randomSource;
+
+    @Setup
+    public void setUp() {
+        switch (source) {
+            case "sharedRandom":
+                Random random = new Random();
+                randomSource = () -> random::nextInt;
+                break;
+            case "threadLocal":
+                randomSource = new ThreadLocalRandomSource();
+                break;
+            case "splittable":
+                randomSource = new SplittableRandomSource();
+                break;
+            case "secure":
+                randomSource = new SecureRandomSource();
+                break;
+            default:
+                randomSource = new SeededRandomSource(42);
+        }
+    }
+
+    @Benchmark
+    public int ticket() {
+        RandomGenerator generator = randomSource.newGenerator();
+        int sum = 0;
+        for (int i = 0; i < NUMBERS_PER_TICKET; i++) {
+            sum += generator.nextInt(NUMBERS_PER_TICKET - i);
+        }
+        return sum;
+    }
+}
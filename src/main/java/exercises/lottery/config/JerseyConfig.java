@@ -1,6 +1,8 @@
 package exercises.lottery.config;
 
 import exercises.lottery.resources.LotteryResource;
+import exercises.lottery.resources.RequestLoggingFilter;
+import exercises.lottery.resources.RequestMetricsFilter;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
@@ -19,5 +21,7 @@ public class JerseyConfig  extends ResourceConfig {
 
     public JerseyConfig() {
         register(LotteryResource.class);
+        register(RequestMetricsFilter.class);
+        register(RequestLoggingFilter.class);
     }
 }
@@ -1,11 +1,31 @@
 package exercises.lottery.config;
 
+import com.codahale.metrics.MetricRegistry;
+import exercises.lottery.data.QueryDiagnostics;
+import exercises.lottery.data.TicketCache;
+import exercises.lottery.data.TicketConversions;
+import exercises.lottery.metrics.LotteryMetrics;
+import exercises.lottery.resources.CheckedTicketJsonCache;
+import exercises.lottery.resources.TicketJsonWriter;
+import exercises.lottery.service.random.RandomSource;
+import exercises.lottery.service.random.SecureRandomSource;
+import exercises.lottery.service.random.SeededRandomSource;
+import exercises.lottery.service.random.SplittableRandomSource;
+import exercises.lottery.service.random.ThreadLocalRandomSource;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Configuration class for the application.
@@ -24,4 +44,220 @@ public class LotteryConfiguration {
     public int getDefaultNumberOfLines() {
         return defaultNumberOfLines;
     }
+
+    @Value("${bulkInsertChunkSize:1000}")
+    private int bulkInsertChunkSize;
+    @Bean
+    @Qualifier("bulkInsertChunkSize")
+    public int getBulkInsertChunkSize() {
+        return bulkInsertChunkSize;
+    }
+
+    @Value("${bulkCheckChunkSize:1000}")
+    private int bulkCheckChunkSize;
+    @Bean
+    @Qualifier("bulkCheckChunkSize")
+    public int getBulkCheckChunkSize() {
+        return bulkCheckChunkSize;
+    }
+
+    @Value("${bulkCheckMaxChunksInFlight:4}")
+    private int bulkCheckMaxChunksInFlight;
+    @Bean
+    @Qualifier("bulkCheckMaxChunksInFlight")
+    public int getBulkCheckMaxChunksInFlight() {
+        return bulkCheckMaxChunksInFlight;
+    }
+
+    @Value("${ticketStorageLayout:" + TicketConversions.COMPACT_LAYOUT + "}")
+    private String ticketStorageLayout;
+    @Bean
+    @Qualifier("ticketStorageLayout")
+    public String getTicketStorageLayout() {
+        return ticketStorageLayout;
+    }
+
+    // the test configurations register the conversions in their own converter
+    @Bean
+    @Profile("main")
+    public CustomConversions getCustomConversions() {
+        return TicketConversions.customConversions(ticketStorageLayout);
+    }
+
+    @Value("${layoutMigrationChunkSize:1000}")
+    private int layoutMigrationChunkSize;
+    @Bean
+    @Qualifier("layoutMigrationChunkSize")
+    public int getLayoutMigrationChunkSize() {
+        return layoutMigrationChunkSize;
+    }
+
+    @Value("${layoutMigrationOnStartup:true}")
+    private boolean layoutMigrationOnStartup;
+    @Bean
+    @Qualifier("layoutMigrationOnStartup")
+    public boolean getLayoutMigrationOnStartup() {
+        return layoutMigrationOnStartup;
+    }
+
+    @Value("${writeCoalescingWindowMicros:1000}")
+    private long writeCoalescingWindowMicros;
+    @Bean
+    @Qualifier("writeCoalescingWindowMicros")
+    public long getWriteCoalescingWindowMicros() {
+        return writeCoalescingWindowMicros;
+    }
+
+    @Value("${writeCoalescingMaxBatchSize:500}")
+    private int writeCoalescingMaxBatchSize;
+    @Bean
+    @Qualifier("writeCoalescingMaxBatchSize")
+    public int getWriteCoalescingMaxBatchSize() {
+        return writeCoalescingMaxBatchSize;
+    }
+
+    @Value("${writeCoalescingQueueSize:10000}")
+    private int writeCoalescingQueueSize;
+    @Bean
+    @Qualifier("writeCoalescingQueueSize")
+    public int getWriteCoalescingQueueSize() {
+        return writeCoalescingQueueSize;
+    }
+
+    @Value("${slowQueryThresholdMillis:0}")
+    private long slowQueryThresholdMillis;
+    @Bean
+    public QueryDiagnostics getQueryDiagnostics() {
+        return new QueryDiagnostics(slowQueryThresholdMillis);
+    }
+
+    @Value("${offHeapSegmentBytes:67108864}")
+    private int offHeapSegmentBytes;
+    @Bean
+    @Qualifier("offHeapSegmentBytes")
+    public int getOffHeapSegmentBytes() {
+        return offHeapSegmentBytes;
+    }
+
+    @Value("${journalDirectory:journal}")
+    private String journalDirectory;
+    @Bean
+    @Qualifier("journalDirectory")
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    @Value("${journalSegmentBytes:67108864}")
+    private int journalSegmentBytes;
+    @Bean
+    @Qualifier("journalSegmentBytes")
+    public int getJournalSegmentBytes() {
+        return journalSegmentBytes;
+    }
+
+    @Value("${journalSyncWrites:true}")
+    private boolean journalSyncWrites;
+    @Bean
+    @Qualifier("journalSyncWrites")
+    public boolean getJournalSyncWrites() {
+        return journalSyncWrites;
+    }
+
+    @Value("${journalCompactionThreshold:0.5}")
+    private double journalCompactionThreshold;
+    @Bean
+    @Qualifier("journalCompactionThreshold")
+    public double getJournalCompactionThreshold() {
+        return journalCompactionThreshold;
+    }
+
+    @Value("${journalCompactionIntervalMillis:60000}")
+    private long journalCompactionIntervalMillis;
+    @Bean
+    @Qualifier("journalCompactionIntervalMillis")
+    public long getJournalCompactionIntervalMillis() {
+        return journalCompactionIntervalMillis;
+    }
+
+    @Value("${ticketCacheMaxWeight:1000000}")
+    private long ticketCacheMaxWeight;
+    @Value("${ticketCacheUncheckedTtlMillis:5000}")
+    private long ticketCacheUncheckedTtlMillis;
+    @Bean
+    public TicketCache getTicketCache() {
+        return new TicketCache(ticketCacheMaxWeight, ticketCacheUncheckedTtlMillis);
+    }
+
+    @Value("${checkedTicketJsonCacheMaxBytes:67108864}")
+    private long checkedTicketJsonCacheMaxBytes;
+    @Value("${checkedTicketJsonGzip:false}")
+    private boolean checkedTicketJsonGzip;
+    @Bean
+    public CheckedTicketJsonCache getCheckedTicketJsonCache(TicketJsonWriter ticketJsonWriter) {
+        return new CheckedTicketJsonCache(ticketJsonWriter, checkedTicketJsonCacheMaxBytes, checkedTicketJsonGzip);
+    }
+
+    @Value("${lotteryMetricsEnabled:true}")
+    private boolean lotteryMetricsEnabled;
+    @Value("${lotteryMetricsReservoir:" + LotteryMetrics.DEFAULT_RESERVOIR + "}")
+    private String lotteryMetricsReservoir;
+    @Bean
+    public LotteryMetrics getLotteryMetrics(MetricRegistry metricRegistry) {
+        return lotteryMetricsEnabled ? new LotteryMetrics(metricRegistry, lotteryMetricsReservoir) : LotteryMetrics.disabled();
+    }
+
+    @Value("${requestLogSampleRate:1}")
+    private int requestLogSampleRate;
+    @Bean
+    @Qualifier("requestLogSampleRate")
+    public int getRequestLogSampleRate() {
+        return requestLogSampleRate;
+    }
+
+    @Value("${randomSource:threadLocal}")
+    private String randomSource;
+    @Value("${randomSeed:0}")
+    private long randomSeed;
+    @Value("${secureRandomBatchSize:" + SecureRandomSource.DEFAULT_BATCH_SIZE + "}")
+    private int secureRandomBatchSize;
+    @Bean
+    public RandomSource getRandomSource() {
+        switch (randomSource) {
+            case "threadLocal":
+                return new ThreadLocalRandomSource();
+            case "splittable":
+                return new SplittableRandomSource();
+            case "secure":
+                return new SecureRandomSource(new SecureRandom(), secureRandomBatchSize);
+            case "seeded":
+                return new SeededRandomSource(randomSeed);
+            default:
+                throw new IllegalArgumentException("Unknown random source: " + randomSource);
+        }
+    }
+
+    @Bean
+    @Qualifier("lotteryDaoExecutor")
+    @Profile("!async")
+    public Executor getDirectLotteryDaoExecutor() {
+        return Runnable::run;
+    }
+
+    @Value("${asyncDaoThreads:16}")
+    private int asyncDaoThreads;
+    @Value("${asyncDaoQueueSize:10000}")
+    private int asyncDaoQueueSize;
+    @Bean(destroyMethod = "shutdown")
+    @Qualifier("lotteryDaoExecutor")
+    @Profile("async")
+    public ThreadPoolExecutor getAsyncLotteryDaoExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(asyncDaoThreads, asyncDaoThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(asyncDaoQueueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "lottery-dao-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
 }
@@ -0,0 +1,95 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.LineSet;
+import exercises.lottery.domain.Ticket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Asynchronous access to the stored tickets.
+ *
+ * The operations of the {@link TicketStore} are run on the given executor,
+ * so that request threads do not wait for the database. With a direct
+ * executor they are run on the calling thread, as in the blocking mode.
+ * When there is a {@link WriteCoalescer}, tickets are created and checked through it.
+ */
+@Component
+public class AsyncLotteryDao {
+
+    private final TicketStore ticketStore;
+    private final Executor executor;
+    private final WriteCoalescer writeCoalescer;
+
+    public AsyncLotteryDao(TicketStore ticketStore, Executor executor) {
+        this(ticketStore, executor, Optional.empty());
+    }
+
+    @Autowired
+    public AsyncLotteryDao(TicketStore ticketStore, @Qualifier("lotteryDaoExecutor") Executor executor,
+                           Optional<WriteCoalescer> writeCoalescer) {
+        this.ticketStore = ticketStore;
+        this.executor = executor;
+        this.writeCoalescer = writeCoalescer.orElse(null);
+    }
+
+    /**
+     * @see TicketStore#getTicketById(String)
+     */
+    public CompletableFuture<Ticket> getTicketById(String ticketId) {
+        return CompletableFuture.supplyAsync(() -> ticketStore.getTicketById(ticketId), executor);
+    }
+
+    /**
+     * @see TicketStore#getTicketsPage(Boolean, String, int)
+     */
+    public CompletableFuture<List<Ticket>> getTicketsPage(Boolean checked, String afterId, int limit) {
+        return CompletableFuture.supplyAsync(() -> ticketStore.getTicketsPage(checked, afterId, limit), executor);
+    }
+
+    /**
+     * @see TicketStore#getTopWinners(int)
+     */
+    public CompletableFuture<List<Ticket>> getTopWinners(int limit) {
+        return CompletableFuture.supplyAsync(() -> ticketStore.getTopWinners(limit), executor);
+    }
+
+    /**
+     * @see TicketStore#getTotalPayout()
+     */
+    public CompletableFuture<Long> getTotalPayout() {
+        return CompletableFuture.supplyAsync(ticketStore::getTotalPayout, executor);
+    }
+
+    /**
+     * @see TicketStore#createTicket(Ticket)
+     */
+    public CompletableFuture<Ticket> createTicket(Ticket ticket) {
+        if (writeCoalescer != null) {
+            return writeCoalescer.createTicket(ticket);
+        }
+        return CompletableFuture.supplyAsync(() -> ticketStore.createTicket(ticket), executor);
+    }
+
+    /**
+     * @see TicketStore#addLines(String, LineSet, int)
+     */
+    public CompletableFuture<Ticket> addLines(String ticketId, LineSet newLines, int maxNumberOfLines) {
+        return CompletableFuture.supplyAsync(() -> ticketStore.addLines(ticketId, newLines, maxNumberOfLines), executor);
+    }
+
+    /**
+     * @see TicketStore#checkTicket(Ticket)
+     */
+    public CompletableFuture<Ticket> checkTicket(Ticket ticket) {
+        if (writeCoalescer != null) {
+            return writeCoalescer.checkTicket(ticket);
+        }
+        return CompletableFuture.supplyAsync(() -> ticketStore.checkTicket(ticket), executor);
+    }
+}
@@ -0,0 +1,194 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.LineSet;
+import exercises.lottery.domain.Ticket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * TicketStore which wraps the {@link LotteryDao}, reading tickets by ID through a {@link TicketCache},
+ * and keeping it up to date with the tickets it writes. The cache is updated
+ * after each write, and a ticket read from the database is only cached if
+ * no write raced with the read (see {@link TicketCache#putRead(Ticket, long)}).
+ * It is the primary TicketStore, so only the classes which need the operations
+ * specific to MongoDB get the LotteryDao itself.
+ */
+@Primary
+@Component
+@ConditionalOnExpression(LotteryDao.MONGO_STORE_CONDITION)
+public class CachingLotteryDao implements TicketStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingLotteryDao.class);
+
+    private final LotteryDao lotteryDao;
+    private final TicketCache ticketCache;
+
+    @Autowired
+    CachingLotteryDao(LotteryDao lotteryDao, TicketCache ticketCache) {
+        this.lotteryDao = lotteryDao;
+        this.ticketCache = ticketCache;
+    }
+
+    @Override
+    public List<Ticket> getAllTickets() {
+        return lotteryDao.getAllTickets();
+    }
+
+    @Override
+    public Ticket getTicketById(String ticketId) {
+        Ticket cached = ticketCache.get(ticketId);
+        if (cached != null) {
+            logger.debug("Retrieved ticket with ID {} from the cache", ticketId);
+            return cached;
+        }
+        long stamp = ticketCache.readStamp(ticketId);
+        Ticket retrieved = lotteryDao.getTicketById(ticketId);
+        if (retrieved != null) {
+            ticketCache.putRead(retrieved, stamp);
+        }
+        return retrieved;
+    }
+
+    @Override
+    public Ticket getTicketStatusById(String ticketId) {
+        // a cached ticket has its status as well, but partial tickets are not cached
+        Ticket cached = ticketCache.get(ticketId);
+        return cached != null ? cached : lotteryDao.getTicketStatusById(ticketId);
+    }
+
+    @Override
+    public List<Ticket> getTicketsByChecked(boolean checked) {
+        return lotteryDao.getTicketsByChecked(checked);
+    }
+
+    @Override
+    public CloseableIterator<Ticket> streamAllTickets() {
+        return lotteryDao.streamAllTickets();
+    }
+
+    @Override
+    public CloseableIterator<Ticket> streamTicketsByChecked(boolean checked) {
+        return lotteryDao.streamTicketsByChecked(checked);
+    }
+
+    @Override
+    public List<Ticket> getTicketsPage(Boolean checked, String afterId, int limit) {
+        return lotteryDao.getTicketsPage(checked, afterId, limit);
+    }
+
+    @Override
+    public Ticket createTicket(Ticket ticket) {
+        Ticket created = lotteryDao.createTicket(ticket);
+        ticketCache.put(created);
+        return created;
+    }
+
+    @Override
+    public List<Ticket> createTickets(List<Ticket> tickets) {
+        return lotteryDao.createTickets(tickets);
+    }
+
+    @Override
+    public Ticket amendTicket(Ticket ticket) {
+        // the amendment is not conditional on the stored ticket, so it is read again from the database
+        try {
+            return lotteryDao.amendTicket(ticket);
+        } finally {
+            ticketCache.invalidate(ticket.getId());
+        }
+    }
+
+    @Override
+    public Ticket addLines(String ticketId, LineSet newLines, int maxNumberOfLines) {
+        try {
+            Ticket amended = lotteryDao.addLines(ticketId, newLines, maxNumberOfLines);
+            ticketCache.put(amended);
+            return amended;
+        } catch (RuntimeException ex) {
+            ticketCache.invalidate(ticketId);
+            throw ex;
+        }
+    }
+
+    @Override
+    public Ticket checkTicket(Ticket ticket) {
+        try {
+            Ticket checked = lotteryDao.checkTicket(ticket);
+            ticketCache.put(checked);
+            return checked;
+        } catch (EmptyResultDataAccessException ex) {
+            ticketCache.invalidate(ticket.getId());
+            throw ex;
+        }
+    }
+
+    @Override
+    public int checkTickets(List<Ticket> tickets) {
+        int checked = lotteryDao.checkTickets(tickets);
+        tickets.forEach(ticket -> ticketCache.invalidate(ticket.getId()));
+        return checked;
+    }
+
+    /**
+     * @see LotteryDao#writeTickets(List, List)
+     */
+    public List<RuntimeException> writeTickets(List<Ticket> toCreate, List<Ticket> toCheck) {
+        List<RuntimeException> errors = lotteryDao.writeTickets(toCreate, toCheck);
+        for (int i = 0; i < toCreate.size(); i++) {
+            if (errors.get(i) == null) {
+                ticketCache.put(toCreate.get(i));
+            }
+        }
+        for (int i = 0; i < toCheck.size(); i++) {
+            if (errors.get(toCreate.size() + i) == null) {
+                ticketCache.put(toCheck.get(i));
+            } else {
+                ticketCache.invalidate(toCheck.get(i).getId());
+            }
+        }
+        return errors;
+    }
+
+    @Override
+    public List<Ticket> getTopWinners(int limit) {
+        return lotteryDao.getTopWinners(limit);
+    }
+
+    @Override
+    public long getTotalPayout() {
+        return lotteryDao.getTotalPayout();
+    }
+
+    @Override
+    public TicketStats getTicketStats() {
+        return lotteryDao.getTicketStats();
+    }
+
+    @Override
+    public TicketStats rebuildTicketStats() {
+        return lotteryDao.rebuildTicketStats();
+    }
+
+    @Override
+    public String getCheckpoint(String jobName) {
+        return lotteryDao.getCheckpoint(jobName);
+    }
+
+    @Override
+    public void saveCheckpoint(String jobName, String lastId) {
+        lotteryDao.saveCheckpoint(jobName, lastId);
+    }
+
+    @Override
+    public void removeCheckpoint(String jobName) {
+        lotteryDao.removeCheckpoint(jobName);
+    }
+}
@@ -0,0 +1,653 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.LineSet;
+import exercises.lottery.domain.Ticket;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * TicketStore which keeps the tickets as records in memory it manages itself,
+ * found through an index from the key of each ticket to the address of its record.
+ * Subclasses decide where the records are and how they are written.
+ *
+ * The key of a ticket is its sequence number, and its ID has the format of a MongoDB
+ * ObjectId: the ID prefix of the store (a time in seconds) followed by the key, so IDs
+ * sort in creation order. The index is a primitive hash map, and the keys are also kept
+ * in order, for the listings. The winning tickets are also kept in order of payout,
+ * as their lines do not change once they are checked, and the stats of the tickets
+ * are counted as the records are written.
+ *
+ * Reads share a lock, and writes take it exclusively, which keeps each operation atomic.
+ * Tickets are copied out of the records, so they can be used after the lock is released.
+ */
+public abstract class IndexedTicketStore implements TicketStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexedTicketStore.class);
+
+    // tickets read at a time by the streams
+    static final int STREAM_BATCH_SIZE = 1000;
+
+    private static final int ID_PREFIX_CHARS = 8;
+    private static final int ID_CHARS = 24;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongLongHashMap index = new LongLongHashMap();
+    private long[] orderedKeys = new long[1024];
+    private int ticketCount;
+    private long nextKey = 1;
+    private int idPrefix;
+    private final NavigableSet<Winner> winners = new TreeSet<>();
+    private long totalPayout;
+    private final TicketStatsCounters stats = new TicketStatsCounters();
+
+    private final ConcurrentMap<String, String> checkpoints = new ConcurrentHashMap<>();
+
+    /**
+     * @param idPrefix First four bytes of the IDs of the tickets
+     */
+    protected IndexedTicketStore(int idPrefix) {
+        this.idPrefix = idPrefix;
+    }
+
+    @Override
+    public List<Ticket> getAllTickets() {
+        logger.debug("Retrieving all tickets in the store");
+        return readPage(null, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Ticket getTicketById(String ticketId) {
+        logger.debug("Retrieving ticket with ID {} from the store", ticketId);
+        return read(ticketId, true);
+    }
+
+    @Override
+    public Ticket getTicketStatusById(String ticketId) {
+        logger.debug("Retrieving status of ticket with ID {} from the store", ticketId);
+        return read(ticketId, false);
+    }
+
+    @Override
+    public List<Ticket> getTicketsByChecked(boolean checked) {
+        logger.debug("Retrieving all {} tickets from the store", checked ? "checked" : "unchecked");
+        return readPage(checked, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Streams all the tickets in batches, so the store is not locked
+     * while the caller consumes them. Tickets created while streaming
+     * are included if they come after the last batch read.
+     * @return Iterator over all the tickets
+     */
+    @Override
+    public CloseableIterator<Ticket> streamAllTickets() {
+        logger.debug("Streaming all tickets in the store");
+        return new TicketIterator(null);
+    }
+
+    /**
+     * Streams the tickets with the given checked value in batches,
+     * as {@link #streamAllTickets()}.
+     * @param checked Checked parameter of the tickets to retrieve
+     * @return Iterator over the tickets with the given checked value
+     */
+    @Override
+    public CloseableIterator<Ticket> streamTicketsByChecked(boolean checked) {
+        logger.debug("Streaming all {} tickets from the store", checked ? "checked" : "unchecked");
+        return new TicketIterator(checked);
+    }
+
+    /**
+     * Retrieves a page of tickets, in ID order, starting after the given ID.
+     * The tickets are scanned in order from the position of the given ID,
+     * skipping the ones with a different checked value.
+     * @param checked Checked parameter of the tickets to retrieve (null for all tickets)
+     * @param afterId ID of the last ticket of the previous page (null for the first page)
+     * @param limit Maximum number of tickets to retrieve
+     * @return Tickets in the page
+     */
+    @Override
+    public List<Ticket> getTicketsPage(Boolean checked, String afterId, int limit) {
+        logger.debug("Retrieving page of {} tickets after ID {} from the store", limit, afterId);
+        long afterKey = 0;
+        if (afterId != null) {
+            if (!ObjectId.isValid(afterId)) {
+                logger.error("Invalid ticket ID {} for pagination", afterId);
+                throw new IllegalArgumentException("Invalid ticket ID: " + afterId);
+            }
+            afterKey = keyAfter(afterId);
+        }
+        // as in MongoDB, a limit of zero means no limit
+        return readPage(checked, afterKey, limit > 0 ? limit : Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Ticket createTicket(Ticket ticket) {
+        logger.debug("Inserting ticket with {} lines in the store", ticket.getLines().size());
+        withWriteLock(() -> insert(ticket));
+        afterWrite();
+        return ticket;
+    }
+
+    @Override
+    public List<Ticket> createTickets(List<Ticket> tickets) {
+        logger.debug("Inserting {} tickets in the store", tickets.size());
+        withWriteLock(() -> {
+            tickets.forEach(this::insert);
+            return null;
+        });
+        afterWrite();
+        return tickets;
+    }
+
+    @Override
+    public Ticket amendTicket(Ticket ticket) {
+        logger.debug("Amending ticket with ID {} in the store", ticket.getId());
+        long key = toKey(ticket.getId());
+        withWriteLock(() -> {
+            long address = index.get(key);
+            if (address == LongLongHashMap.MISSING) {
+                logger.error("Error amending ticket with ID {}", ticket.getId());
+                throw new EmptyResultDataAccessException("Error amending ticket.", 1);
+            }
+            if (isChecked(address)) {
+                logger.error("Error amending ticket with ID {}, it was already checked", ticket.getId());
+                throw new IllegalArgumentException("Checked tickets cannot be amended.");
+            }
+            return write(key, address, false, ticket.getLines());
+        });
+        afterWrite();
+        return ticket;
+    }
+
+    @Override
+    public Ticket addLines(String ticketId, LineSet newLines, int maxNumberOfLines) {
+        logger.debug("Adding {} lines to ticket with ID {} in the store", newLines.size(), ticketId);
+        if (newLines.size() > maxNumberOfLines) {
+            logger.error("Cannot add {} lines to a ticket, the maximum is {}", newLines.size(), maxNumberOfLines);
+            throw new IllegalArgumentException("Invalid number of lines.");
+        }
+        long key = toKey(ticketId);
+        LineSet amended = withWriteLock(() -> {
+            long address = index.get(key);
+            if (address == LongLongHashMap.MISSING) {
+                logger.error("Error amending ticket with ID {}, not found", ticketId);
+                throw new EmptyResultDataAccessException("Error amending ticket.", 1);
+            }
+            if (isChecked(address)) {
+                logger.error("Error amending ticket with ID {}, it was already checked", ticketId);
+                throw new IllegalArgumentException("Checked tickets cannot be amended.");
+            }
+            LineSet lines = readLines(address);
+            // same condition as in MongoDB: the lines the ticket already has count against the limit
+            if (lines.size() > maxNumberOfLines - newLines.size()) {
+                logger.error("Error amending ticket with ID {}, it would have more than {} lines", ticketId, maxNumberOfLines);
+                throw new IllegalArgumentException("Invalid number of lines.");
+            }
+            lines.addAll(newLines);
+            write(key, address, false, lines);
+            return lines;
+        });
+        afterWrite();
+        return new Ticket(ticketId, false, amended);
+    }
+
+    @Override
+    public Ticket checkTicket(Ticket ticket) {
+        logger.debug("Checking ticket with ID {} in the store", ticket.getId());
+        long key = toKey(ticket.getId());
+        LineSet checked = withWriteLock(() -> {
+            long address = index.get(key);
+            if (address == LongLongHashMap.MISSING || isChecked(address)) {
+                logger.error("Error checking ticket with ID {}, not found or already checked", ticket.getId());
+                throw new EmptyResultDataAccessException("Error checking ticket.", 1);
+            }
+            return readLines(write(key, address, true, ticket.getLines()));
+        });
+        afterWrite();
+        return new Ticket(ticket.getId(), true, checked);
+    }
+
+    @Override
+    public int checkTickets(List<Ticket> tickets) {
+        logger.debug("Checking {} tickets in the store", tickets.size());
+        int checkedTickets = withWriteLock(() -> {
+            int checked = 0;
+            for (Ticket ticket : tickets) {
+                long key = toKey(ticket.getId());
+                long address = index.get(key);
+                if (address != LongLongHashMap.MISSING && !isChecked(address)) {
+                    write(key, address, true, ticket.getLines());
+                    checked++;
+                }
+            }
+            return checked;
+        });
+        afterWrite();
+        return checkedTickets;
+    }
+
+    @Override
+    public List<Ticket> getTopWinners(int limit) {
+        logger.debug("Retrieving the {} top winning tickets from the store", limit);
+        return withReadLock(() -> {
+            List<Ticket> topWinners = new ArrayList<>(Math.min(limit, winners.size()));
+            for (Winner winner : winners) {
+                if (topWinners.size() == limit) {
+                    break;
+                }
+                topWinners.add(new Ticket(toId(winner.key), true, readLines(index.get(winner.key))));
+            }
+            return topWinners;
+        });
+    }
+
+    @Override
+    public long getTotalPayout() {
+        return withReadLock(() -> totalPayout);
+    }
+
+    /**
+     * @return Stats of the tickets, read from counters without locking the store
+     */
+    @Override
+    public TicketStats getTicketStats() {
+        return stats.snapshot();
+    }
+
+    @Override
+    public TicketStats rebuildTicketStats() {
+        logger.info("Counting the stats of the tickets in the store");
+        return withWriteLock(() -> {
+            stats.reset();
+            for (int i = 0; i < ticketCount; i++) {
+                stats.add(statsOf(index.get(orderedKeys[i])));
+            }
+            return stats.snapshot();
+        });
+    }
+
+    @Override
+    public String getCheckpoint(String jobName) {
+        return checkpoints.get(jobName);
+    }
+
+    @Override
+    public void saveCheckpoint(String jobName, String lastId) {
+        logger.debug("Saving checkpoint of job {} at ticket ID {}", jobName, lastId);
+        checkpoints.put(jobName, lastId);
+    }
+
+    @Override
+    public void removeCheckpoint(String jobName) {
+        checkpoints.remove(jobName);
+    }
+
+    /**
+     * Removes all the tickets. The IDs of the removed tickets are not given to new tickets.
+     */
+    public void clear() {
+        logger.info("Removing all tickets from the store");
+        withWriteLock(() -> {
+            clearRecords();
+            index.clear();
+            ticketCount = 0;
+            winners.clear();
+            totalPayout = 0;
+            stats.reset();
+            return null;
+        });
+    }
+
+    public int ticketCount() {
+        return withReadLock(() -> ticketCount);
+    }
+
+    /**
+     * @return Bytes of the ID index, on the heap
+     */
+    public long indexBytes() {
+        return withReadLock(() -> index.sizeInBytes() + (long) orderedKeys.length * Long.BYTES);
+    }
+
+    /**
+     * Writes the record of a ticket. Called with the write lock held.
+     * @param key Key of the ticket
+     * @param address Address of the current record of the ticket ({@link LongLongHashMap#MISSING} for a new ticket)
+     * @param checked Whether the ticket is checked
+     * @param lines Lines of the ticket
+     * @return Address of the record written, which may be different from the current one
+     * @throws IllegalArgumentException if the ticket does not fit in a record
+     */
+    protected abstract long writeRecord(long key, long address, boolean checked, LineSet lines);
+
+    /**
+     * @param address Address of the record of a ticket
+     * @return Whether the ticket is checked
+     */
+    protected abstract boolean isChecked(long address);
+
+    /**
+     * @param address Address of the record of a ticket
+     * @return Copy of the lines of the ticket
+     */
+    protected abstract LineSet readLines(long address);
+
+    /**
+     * Removes all the records. Called with the write lock held.
+     */
+    protected abstract void clearRecords();
+
+    /**
+     * Called after the tickets are written, once the lock is released.
+     * Does nothing by default.
+     */
+    protected void afterWrite() {
+    }
+
+    /**
+     * Adds a ticket to the index, or moves it to another record,
+     * when the records are read or moved by the subclass.
+     * @param key Key of the ticket
+     * @param address Address of its record
+     * @return Address of the previous record of the ticket, or {@link LongLongHashMap#MISSING}
+     */
+    protected long index(long key, long address) {
+        long previous = index.put(key, address);
+        if (previous == LongLongHashMap.MISSING) {
+            addOrderedKey(key);
+            nextKey = Math.max(nextKey, key + 1);
+        } else {
+            stats.subtract(statsOf(previous));
+        }
+        stats.add(statsOf(address));
+        addWinner(key, address);
+        return previous;
+    }
+
+    /**
+     * @param key Key of a ticket
+     * @return Address of its record, or {@link LongLongHashMap#MISSING}
+     */
+    protected long addressOf(long key) {
+        return index.get(key);
+    }
+
+    protected int getIdPrefix() {
+        return idPrefix;
+    }
+
+    protected void setIdPrefix(int idPrefix) {
+        this.idPrefix = idPrefix;
+    }
+
+    protected Map<String, String> getCheckpoints() {
+        return checkpoints;
+    }
+
+    protected <T> T withReadLock(Supplier<T> supplier) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    protected <T> T withWriteLock(Supplier<T> supplier) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    private Ticket read(String ticketId, boolean withLines) {
+        long key = toKey(ticketId);
+        return withReadLock(() -> {
+            long address = index.get(key);
+            if (address == LongLongHashMap.MISSING) {
+                return null;
+            }
+            return new Ticket(ticketId, isChecked(address), withLines ? readLines(address) : new LineSet());
+        });
+    }
+
+    private List<Ticket> readPage(Boolean checked, long afterKey, int limit) {
+        return withReadLock(() -> {
+            List<Ticket> page = new ArrayList<>(Math.min(limit, 1024));
+            for (int i = firstIndexAfter(afterKey); i < ticketCount && page.size() < limit; i++) {
+                long address = index.get(orderedKeys[i]);
+                boolean ticketChecked = isChecked(address);
+                if (checked == null || checked == ticketChecked) {
+                    page.add(new Ticket(toId(orderedKeys[i]), ticketChecked, readLines(address)));
+                }
+            }
+            return page;
+        });
+    }
+
+    private Void insert(Ticket ticket) {
+        long key;
+        if (ticket.getId() == null) {
+            key = nextKey;
+        } else {
+            key = toKey(ticket.getId());
+            if (key == LongLongHashMap.MISSING) {
+                logger.error("Cannot insert ticket with ID {}, it was not given by this store", ticket.getId());
+                throw new IllegalArgumentException("Invalid ticket ID: " + ticket.getId());
+            }
+            if (index.get(key) != LongLongHashMap.MISSING) {
+                logger.error("Cannot insert ticket with ID {}, it already exists", ticket.getId());
+                throw new DuplicateKeyException("Duplicate ticket ID: " + ticket.getId());
+            }
+        }
+        index(key, writeRecord(key, LongLongHashMap.MISSING, ticket.isChecked(), ticket.getLines()));
+        if (ticket.getId() == null) {
+            ticket.setId(toId(key));
+        }
+        return null;
+    }
+
+    private long write(long key, long address, boolean checked, LineSet lines) {
+        // the record may be written in place, so its stats are read first
+        TicketStats previous = statsOf(address);
+        long written = writeRecord(key, address, checked, lines);
+        if (written != address) {
+            index.put(key, written);
+        }
+        stats.subtract(previous);
+        stats.add(statsOf(written));
+        addWinner(key, written);
+        return written;
+    }
+
+    private TicketStats statsOf(long address) {
+        boolean checked = isChecked(address);
+        return TicketStats.ofTicket(checked, checked ? readLines(address) : null);
+    }
+
+    /**
+     * Adds the ticket to the winners if it is checked and has a payout. A ticket
+     * indexed again (e.g. when its record is moved) is already in the winners.
+     */
+    private void addWinner(long key, long address) {
+        if (!isChecked(address)) {
+            return;
+        }
+        int payout = readLines(address).totalOutcome();
+        if (payout > 0 && winners.add(new Winner(key, payout))) {
+            totalPayout += payout;
+        }
+    }
+
+    private void addOrderedKey(long key) {
+        if (ticketCount == orderedKeys.length) {
+            orderedKeys = Arrays.copyOf(orderedKeys, ticketCount * 2);
+        }
+        // keys are given in increasing order, unless a ticket is inserted with the ID of a removed one
+        int position = firstIndexAfter(key);
+        System.arraycopy(orderedKeys, position, orderedKeys, position + 1, ticketCount - position);
+        orderedKeys[position] = key;
+        ticketCount++;
+    }
+
+    private int firstIndexAfter(long key) {
+        if (ticketCount == 0 || orderedKeys[ticketCount - 1] <= key) {
+            return ticketCount;
+        }
+        int position = Arrays.binarySearch(orderedKeys, 0, ticketCount, key);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    private String toId(long key) {
+        char[] id = new char[ID_CHARS];
+        for (int i = ID_PREFIX_CHARS - 1, value = idPrefix; i >= 0; i--, value >>>= 4) {
+            id[i] = HEX_DIGITS[value & 0xF];
+        }
+        long value = key;
+        for (int i = ID_CHARS - 1; i >= ID_PREFIX_CHARS; i--, value >>>= 4) {
+            id[i] = HEX_DIGITS[(int) value & 0xF];
+        }
+        return new String(id);
+    }
+
+    /**
+     * @return Key of the ticket with the given ID, or {@link LongLongHashMap#MISSING}
+     *          if the ID was not given by this store
+     */
+    private long toKey(String ticketId) {
+        if (ticketId == null || ticketId.length() != ID_CHARS
+                || parseHex(ticketId, 0, ID_PREFIX_CHARS) != Integer.toUnsignedLong(idPrefix)) {
+            return LongLongHashMap.MISSING;
+        }
+        long key = parseHex(ticketId, ID_PREFIX_CHARS, ID_CHARS);
+        return key > 0 ? key : LongLongHashMap.MISSING;
+    }
+
+    /**
+     * @param ticketId Valid ObjectId
+     * @return Largest key of this store which sorts before or at the given ID
+     */
+    private long keyAfter(String ticketId) {
+        int prefixOrder = Long.compare(parseHex(ticketId, 0, ID_PREFIX_CHARS), Integer.toUnsignedLong(idPrefix));
+        if (prefixOrder != 0) {
+            return prefixOrder < 0 ? 0 : Long.MAX_VALUE;
+        }
+        long key = parseHex(ticketId, ID_PREFIX_CHARS, ID_CHARS);
+        // a sequence above the range of the keys wraps around
+        return key < 0 ? Long.MAX_VALUE : key;
+    }
+
+    /**
+     * @return Value of the hexadecimal digits, or -1 if there is an invalid digit (or the value wraps around)
+     */
+    private static long parseHex(String text, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char digit = text.charAt(i);
+            int digitValue;
+            if (digit >= '0' && digit <= '9') {
+                digitValue = digit - '0';
+            } else if (digit >= 'a' && digit <= 'f') {
+                digitValue = digit - 'a' + 10;
+            } else if (digit >= 'A' && digit <= 'F') {
+                digitValue = digit - 'A' + 10;
+            } else {
+                return -1;
+            }
+            value = (value << 4) | digitValue;
+        }
+        return value;
+    }
+
+    /**
+     * Winning ticket, ordered by highest payout first, and then by key.
+     */
+    private static class Winner implements Comparable<Winner> {
+
+        private final long key;
+        private final int payout;
+
+        Winner(long key, int payout) {
+            this.key = key;
+            this.payout = payout;
+        }
+
+        @Override
+        public int compareTo(Winner other) {
+            int payoutOrder = Integer.compare(other.payout, payout);
+            return payoutOrder != 0 ? payoutOrder : Long.compare(key, other.key);
+        }
+    }
+
+    /**
+     * Iterator which reads the tickets in batches, after the key of the last ticket read.
+     */
+    private class TicketIterator implements CloseableIterator<Ticket> {
+
+        private final Boolean checked;
+        private List<Ticket> batch;
+        private int position;
+        private long lastKey;
+        private boolean exhausted;
+
+        TicketIterator(Boolean checked) {
+            this.checked = checked;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (batch != null && position < batch.size()) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+            batch = readPage(checked, lastKey, STREAM_BATCH_SIZE);
+            position = 0;
+            exhausted = batch.size() < STREAM_BATCH_SIZE;
+            if (!batch.isEmpty()) {
+                lastKey = toKey(batch.get(batch.size() - 1).getId());
+            }
+            return !batch.isEmpty();
+        }
+
+        @Override
+        public Ticket next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.get(position++);
+        }
+
+        @Override
+        public void close() {
+            exhausted = true;
+            batch = null;
+        }
+    }
+}
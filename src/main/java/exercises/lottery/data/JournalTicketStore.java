@@ -0,0 +1,691 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.LineSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * TicketStore which appends the tickets to a journal on disk, for single node and edge
+ * deployments without MongoDB which need to keep the tickets when the process stops.
+ *
+ * The journal is a sequence of segment files of a fixed size, mapped into memory. Each write
+ * of a ticket (creating, amending or checking it) appends a record with its whole state: its key,
+ * its checked flag and the packed codes of its lines (see {@link exercises.lottery.domain.LineCodes}).
+ * Records start with their length and a CRC32 checksum, so that a record which was only partly
+ * written when the process stopped is detected. The index points to the last record of each
+ * ticket, and is rebuilt on startup by replaying the segments in order, up to the last complete
+ * record. The checkpoints of the jobs are appended as records as well.
+ *
+ * Writes return once their records are forced to disk. Concurrent writers share the same force
+ * (group commit): one of them forces the segment for all the records appended so far, while the
+ * others wait for it. Forcing can be turned off, leaving it to the operating system.
+ *
+ * Records replaced by later ones are garbage. In the background, the segments with more garbage
+ * than the threshold are compacted: their live records are copied to the end of the journal,
+ * and the segment file is deleted once the copies are on disk.
+ */
+@Component
+@Profile(JournalTicketStore.PROFILE)
+public class JournalTicketStore extends IndexedTicketStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalTicketStore.class);
+
+    public static final String PROFILE = "journal";
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    // magic number, version, ID prefix and sequence number of the segment
+    static final int SEGMENT_HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int MAGIC = 0x4c4a524e;
+    private static final int VERSION = 1;
+
+    // length and checksum of the payload
+    static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final byte TICKET_RECORD = 1;
+    private static final byte CHECKPOINT_RECORD = 2;
+    private static final byte CHECKPOINT_REMOVED_RECORD = 3;
+    // type, key, checked flag and number of lines of a ticket record, before the codes of the lines
+    private static final int TYPE_OFFSET = RECORD_HEADER_BYTES;
+    private static final int KEY_OFFSET = TYPE_OFFSET + 1;
+    private static final int CHECKED_OFFSET = KEY_OFFSET + Long.BYTES;
+    private static final int SIZE_OFFSET = CHECKED_OFFSET + 1;
+    private static final int CODES_OFFSET = SIZE_OFFSET + Integer.BYTES;
+
+    // records copied at a time by the compaction, holding the lock
+    private static final int COMPACTION_BATCH_SIZE = 1000;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean syncWrites;
+    private final double compactionThreshold;
+    private final ScheduledExecutorService compactor;
+
+    // slots of deleted segments are left empty, so the addresses of the other records do not change
+    private final List<Segment> segments = new ArrayList<>();
+    private int nextSequence;
+    private volatile Segment activeSegment;
+
+    // bytes appended to the journal since it was opened, and bytes known to be forced to disk
+    private volatile long appendedBytes;
+    private final Object syncMonitor = new Object();
+    private long syncedBytes;
+    private boolean syncing;
+
+    /**
+     * Opens the journal in the given directory, replaying its segments, or creates a new one.
+     * @param directory Directory of the segment files
+     * @param segmentBytes Size of each segment file
+     * @param syncWrites Whether writes wait for their records to be forced to disk
+     * @param compactionThreshold Fraction of garbage in a segment above which it is compacted
+     * @param compactionIntervalMillis Interval between the compactions in the background (0 for none)
+     */
+    @Autowired
+    JournalTicketStore(@Qualifier("journalDirectory") String directory,
+                       @Qualifier("journalSegmentBytes") int segmentBytes,
+                       @Qualifier("journalSyncWrites") boolean syncWrites,
+                       @Qualifier("journalCompactionThreshold") double compactionThreshold,
+                       @Qualifier("journalCompactionIntervalMillis") long compactionIntervalMillis) {
+        super(0);
+        if (segmentBytes < SEGMENT_HEADER_BYTES + ticketRecordBytes(1)
+                || compactionThreshold <= 0 || compactionThreshold > 1 || compactionIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid journal configuration.");
+        }
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.syncWrites = syncWrites;
+        this.compactionThreshold = compactionThreshold;
+        try {
+            Files.createDirectories(this.directory);
+            open();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (compactionIntervalMillis > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(() -> {
+                try {
+                    compact();
+                } catch (RuntimeException ex) {
+                    logger.error("Error compacting the journal", ex);
+                }
+            }, compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    @Override
+    public void saveCheckpoint(String jobName, String lastId) {
+        logger.debug("Saving checkpoint of job {} at ticket ID {}", jobName, lastId);
+        withWriteLock(() -> {
+            appendCheckpoint(jobName, lastId);
+            getCheckpoints().put(jobName, lastId);
+            return null;
+        });
+        afterWrite();
+    }
+
+    @Override
+    public void removeCheckpoint(String jobName) {
+        withWriteLock(() -> {
+            appendCheckpoint(jobName, null);
+            getCheckpoints().remove(jobName);
+            return null;
+        });
+        afterWrite();
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        afterWrite();
+    }
+
+    /**
+     * Compacts the segments, except the one being written, with more garbage than the threshold.
+     * @return Number of segments compacted
+     */
+    public int compact() {
+        List<Segment> candidates = withReadLock(() -> {
+            List<Segment> sealed = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (segment != null && segment != activeSegment && segment.garbageRatio() >= compactionThreshold) {
+                    sealed.add(segment);
+                }
+            }
+            return sealed;
+        });
+        int compacted = 0;
+        for (Segment segment : candidates) {
+            if (compact(segment)) {
+                compacted++;
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * Forces the records to disk, stops the compaction and closes the segment files.
+     */
+    @PreDestroy
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        withWriteLock(() -> {
+            if (activeSegment != null) {
+                activeSegment.buffer.force();
+            }
+            segments.stream().filter(segment -> segment != null).forEach(Segment::close);
+            return null;
+        });
+    }
+
+    public int segmentCount() {
+        return withReadLock(() -> (int) segments.stream().filter(segment -> segment != null).count());
+    }
+
+    /**
+     * @return Bytes of the segment files
+     */
+    public long fileBytes() {
+        return withReadLock(() -> segments.stream().filter(segment -> segment != null)
+                .mapToLong(segment -> segment.buffer.capacity()).sum());
+    }
+
+    /**
+     * @return Bytes of the last records of the tickets, without the records they replaced
+     */
+    public long liveBytes() {
+        return withReadLock(() -> segments.stream().filter(segment -> segment != null)
+                .mapToLong(segment -> segment.liveBytes).sum());
+    }
+
+    @Override
+    protected long writeRecord(long key, long address, boolean checked, LineSet lines) {
+        int recordBytes = ticketRecordBytes(lines.size());
+        long newAddress = reserve(recordBytes);
+        ByteBuffer buffer = activeSegment.buffer;
+        int offset = offset(newAddress);
+        buffer.put(offset + TYPE_OFFSET, TICKET_RECORD);
+        buffer.putLong(offset + KEY_OFFSET, key);
+        buffer.put(offset + CHECKED_OFFSET, (byte) (checked ? 1 : 0));
+        buffer.putInt(offset + SIZE_OFFSET, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            buffer.putLong(offset + CODES_OFFSET + i * Long.BYTES, lines.codeAt(i));
+        }
+        seal(newAddress, recordBytes);
+        activeSegment.liveBytes += recordBytes;
+        if (address != LongLongHashMap.MISSING) {
+            segment(address).liveBytes -= recordBytes(address);
+        }
+        return newAddress;
+    }
+
+    @Override
+    protected boolean isChecked(long address) {
+        return segment(address).buffer.get(offset(address) + CHECKED_OFFSET) != 0;
+    }
+
+    @Override
+    protected LineSet readLines(long address) {
+        ByteBuffer buffer = segment(address).buffer;
+        int offset = offset(address);
+        int size = buffer.getInt(offset + SIZE_OFFSET);
+        LineSet lines = new LineSet(size);
+        for (int i = 0; i < size; i++) {
+            lines.addCode(buffer.getLong(offset + CODES_OFFSET + i * Long.BYTES));
+        }
+        return lines;
+    }
+
+    /**
+     * Deletes the segment files and starts a new journal, with a new ID prefix,
+     * so that the IDs of the removed tickets are not given to new tickets,
+     * even after a restart. The checkpoints are kept.
+     */
+    @Override
+    protected void clearRecords() {
+        for (Segment segment : segments) {
+            if (segment != null) {
+                segment.delete();
+            }
+        }
+        segments.clear();
+        activeSegment = null;
+        setIdPrefix(Math.max((int) (System.currentTimeMillis() / 1000), getIdPrefix() + 1));
+        try {
+            roll();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        getCheckpoints().forEach(this::appendCheckpoint);
+    }
+
+    /**
+     * Waits until the records appended so far are forced to disk, unless forcing is turned off.
+     */
+    @Override
+    protected void afterWrite() {
+        if (syncWrites) {
+            sync();
+        }
+    }
+
+
+    private void open() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        // the sequence numbers have a fixed number of digits, so the names sort in sequence order
+        files.sort(null);
+        logger.info("Opening journal in {} with {} segments", directory, files.size());
+        for (int i = 0; i < files.size(); i++) {
+            replay(files.get(i), i == files.size() - 1);
+        }
+        if (activeSegment == null) {
+            setIdPrefix((int) (System.currentTimeMillis() / 1000));
+            roll();
+        }
+        logger.info("Opened journal in {} with {} tickets", directory, ticketCount());
+    }
+
+    private void replay(Path file, boolean last) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (last && (size < SEGMENT_HEADER_BYTES || buffer.getInt(0) == 0)) {
+            // the process stopped while the segment was created
+            logger.warn("Discarding journal segment {}, it was not initialized", file);
+            channel.close();
+            Files.delete(file);
+            return;
+        }
+        if (size < SEGMENT_HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION
+                || (!segments.isEmpty() && buffer.getInt(2 * Integer.BYTES) != getIdPrefix())) {
+            channel.close();
+            throw new IllegalStateException("Invalid journal segment: " + file);
+        }
+        Segment segment = new Segment(file, channel, buffer);
+        int slot = segments.size();
+        segments.add(segment);
+        setIdPrefix(buffer.getInt(2 * Integer.BYTES));
+        nextSequence = buffer.getInt(3 * Integer.BYTES) + 1;
+
+        int offset = SEGMENT_HEADER_BYTES;
+        while (offset + RECORD_HEADER_BYTES <= size) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                // the record was never written to disk, so neither were the records appended after it
+                // acknowledged (forcing them forces it too): they must not come back once it is overwritten
+                if (discardFrom(buffer, offset)) {
+                    logger.warn("Discarding records after unwritten record at offset {} of journal segment {}", offset, file);
+                }
+                break;
+            }
+            if (length < 0 || offset + RECORD_HEADER_BYTES + (long) length > size
+                    || buffer.getInt(offset + Integer.BYTES) != checksum(buffer, offset, length)) {
+                if (!last) {
+                    throw new IllegalStateException("Corrupt record at offset " + offset + " of journal segment: " + file);
+                }
+                // the process stopped while the record was written, it was never acknowledged
+                logger.warn("Discarding incomplete record at offset {} of journal segment {}", offset, file);
+                discardFrom(buffer, offset);
+                break;
+            }
+            apply(((long) slot << 32) | offset);
+            offset += RECORD_HEADER_BYTES + length;
+        }
+        segment.writeOffset = offset;
+        activeSegment = segment;
+    }
+
+    private void apply(long address) {
+        Segment segment = segment(address);
+        int offset = offset(address);
+        switch (segment.buffer.get(offset + TYPE_OFFSET)) {
+            case TICKET_RECORD:
+                long previous = index(segment.buffer.getLong(offset + KEY_OFFSET), address);
+                if (previous != LongLongHashMap.MISSING) {
+                    segment(previous).liveBytes -= recordBytes(previous);
+                }
+                segment.liveBytes += recordBytes(address);
+                break;
+            case CHECKPOINT_RECORD:
+                String jobName = readString(segment.buffer, offset + TYPE_OFFSET + 1);
+                String lastId = readString(segment.buffer, offset + TYPE_OFFSET + 1 + stringBytes(jobName));
+                getCheckpoints().put(jobName, lastId);
+                break;
+            case CHECKPOINT_REMOVED_RECORD:
+                getCheckpoints().remove(readString(segment.buffer, offset + TYPE_OFFSET + 1));
+                break;
+            default:
+                throw new IllegalStateException("Invalid record at offset " + offset + " of journal segment: " + segment.file);
+        }
+    }
+
+    /**
+     * Copies the live records of the segment to the end of the journal, in batches,
+     * and deletes it once the copies are forced to disk. The segment is not written
+     * anymore, so its records are read without the lock.
+     * @return false if the segment was removed in the meantime
+     */
+    private boolean compact(Segment segment) {
+        logger.debug("Compacting journal segment {}, {}% garbage", segment.file, (int) (segment.garbageRatio() * 100));
+        Set<String> jobNames = new HashSet<>();
+        int offset = SEGMENT_HEADER_BYTES;
+        while (offset < segment.writeOffset) {
+            int batchStart = offset;
+            Integer batchEnd = withWriteLock(() -> {
+                int slot = segments.indexOf(segment);
+                if (slot < 0) {
+                    return null;
+                }
+                int recordOffset = batchStart;
+                for (int i = 0; i < COMPACTION_BATCH_SIZE && recordOffset < segment.writeOffset; i++) {
+                    long address = ((long) slot << 32) | recordOffset;
+                    byte type = segment.buffer.get(recordOffset + TYPE_OFFSET);
+                    if (type == TICKET_RECORD) {
+                        long key = segment.buffer.getLong(recordOffset + KEY_OFFSET);
+                        if (addressOf(key) == address) {
+                            index(key, copy(address));
+                        }
+                    } else {
+                        jobNames.add(readString(segment.buffer, recordOffset + TYPE_OFFSET + 1));
+                    }
+                    recordOffset += recordBytes(address);
+                }
+                return recordOffset;
+            });
+            if (batchEnd == null) {
+                return false;
+            }
+            offset = batchEnd;
+        }
+        Boolean removed = withWriteLock(() -> {
+            if (!segments.contains(segment)) {
+                return false;
+            }
+            // the removal of a checkpoint has to outlive the records of the checkpoint in older segments
+            Map<String, String> checkpoints = getCheckpoints();
+            jobNames.forEach(jobName -> appendCheckpoint(jobName, checkpoints.get(jobName)));
+            activeSegment.buffer.force();
+            segments.set(segments.indexOf(segment), null);
+            segment.delete();
+            return true;
+        });
+        if (removed) {
+            logger.info("Compacted journal segment {}", segment.file);
+        }
+        return removed;
+    }
+
+    /**
+     * Appends a copy of a ticket record, which is still live, and moves it to the copy.
+     * @return Address of the copy
+     */
+    private long copy(long address) {
+        int recordBytes = recordBytes(address);
+        long newAddress = reserve(recordBytes);
+        ByteBuffer source = segment(address).buffer.duplicate();
+        source.position(offset(address)).limit(offset(address) + recordBytes);
+        ByteBuffer target = activeSegment.buffer.duplicate();
+        target.position(offset(newAddress));
+        target.put(source);
+        activeSegment.writeOffset += recordBytes;
+        appendedBytes += recordBytes;
+        activeSegment.liveBytes += recordBytes;
+        segment(address).liveBytes -= recordBytes;
+        return newAddress;
+    }
+
+    /**
+     * Appends the record of a checkpoint, or of its removal if the ID is null.
+     */
+    private void appendCheckpoint(String jobName, String lastId) {
+        int recordBytes = RECORD_HEADER_BYTES + 1 + stringBytes(jobName) + (lastId != null ? stringBytes(lastId) : 0);
+        long address = reserve(recordBytes);
+        ByteBuffer buffer = activeSegment.buffer;
+        int offset = offset(address) + TYPE_OFFSET;
+        buffer.put(offset, lastId != null ? CHECKPOINT_RECORD : CHECKPOINT_REMOVED_RECORD);
+        offset = writeString(buffer, offset + 1, jobName);
+        if (lastId != null) {
+            writeString(buffer, offset, lastId);
+        }
+        seal(address, recordBytes);
+    }
+
+    /**
+     * Makes room for a record at the end of the journal, starting a new segment if it does not fit.
+     * @return Address of the record
+     */
+    private long reserve(int recordBytes) {
+        if (recordBytes > segmentBytes - SEGMENT_HEADER_BYTES) {
+            logger.error("A record of {} bytes does not fit in a journal segment of {} bytes", recordBytes, segmentBytes);
+            throw new IllegalArgumentException("Invalid number of lines.");
+        }
+        if (activeSegment.writeOffset + recordBytes > activeSegment.buffer.capacity()) {
+            try {
+                roll();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return ((long) (segments.size() - 1) << 32) | activeSegment.writeOffset;
+    }
+
+    /**
+     * Writes the length and checksum of a record whose payload was written,
+     * which completes it, and moves the end of the journal after it.
+     */
+    private void seal(long address, int recordBytes) {
+        ByteBuffer buffer = activeSegment.buffer;
+        int offset = offset(address);
+        int length = recordBytes - RECORD_HEADER_BYTES;
+        buffer.putInt(offset + Integer.BYTES, checksum(buffer, offset, length));
+        buffer.putInt(offset, length);
+        activeSegment.writeOffset += recordBytes;
+        appendedBytes += recordBytes;
+    }
+
+    /**
+     * Starts a new segment. The records of the previous one are forced to disk first,
+     * as the writers waiting for them only force the new one.
+     */
+    private void roll() throws IOException {
+        if (activeSegment != null) {
+            activeSegment.buffer.force();
+        }
+        Path file = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        logger.debug("Starting journal segment {}", file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(Integer.BYTES, VERSION);
+        buffer.putInt(2 * Integer.BYTES, getIdPrefix());
+        buffer.putInt(3 * Integer.BYTES, nextSequence++);
+        buffer.force();
+        Segment segment = new Segment(file, channel, buffer);
+        segment.writeOffset = SEGMENT_HEADER_BYTES;
+        segments.add(segment);
+        activeSegment = segment;
+    }
+
+    /**
+     * Forces the records appended so far to disk. If another writer is already forcing
+     * the segment, waits for it, and forces the records appended since then after it.
+     */
+    private void sync() {
+        long appended = appendedBytes;
+        while (true) {
+            synchronized (syncMonitor) {
+                while (syncing && syncedBytes < appended) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for the journal to be forced.", ex);
+                    }
+                }
+                if (syncedBytes >= appended) {
+                    return;
+                }
+                syncing = true;
+            }
+            // read before the segment, as the records of a previous segment were forced when it was replaced
+            long target = appendedBytes;
+            boolean forced = false;
+            try {
+                activeSegment.buffer.force();
+                forced = true;
+            } finally {
+                synchronized (syncMonitor) {
+                    syncing = false;
+                    if (forced) {
+                        syncedBytes = Math.max(syncedBytes, target);
+                    }
+                    syncMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    private Segment segment(long address) {
+        return segments.get((int) (address >>> 32));
+    }
+
+    private int recordBytes(long address) {
+        return RECORD_HEADER_BYTES + segment(address).buffer.getInt(offset(address));
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static int ticketRecordBytes(int size) {
+        return CODES_OFFSET + size * Long.BYTES;
+    }
+
+    /**
+     * Zeroes the segment from the offset to its end, forcing it to disk if anything was written there.
+     * @return true if anything was written there
+     */
+    private static boolean discardFrom(MappedByteBuffer buffer, int offset) {
+        boolean discarded = false;
+        for (int i = offset; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+                discarded = true;
+            }
+        }
+        if (discarded) {
+            buffer.force();
+        }
+        return discarded;
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(offset + RECORD_HEADER_BYTES).limit(offset + RECORD_HEADER_BYTES + length);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static int stringBytes(String value) {
+        return Short.BYTES + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * @return Offset after the string
+     */
+    private static int writeString(ByteBuffer buffer, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort(offset, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(offset + Short.BYTES + i, bytes[i]);
+        }
+        return offset + Short.BYTES + bytes.length;
+    }
+
+    private static String readString(ByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[buffer.getShort(offset) & 0xFFFF];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + Short.BYTES + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Segment file of the journal, mapped into memory.
+     */
+    private static final class Segment {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writeOffset;
+        private long liveBytes;
+
+        Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        double garbageRatio() {
+            int recordBytes = writeOffset - SEGMENT_HEADER_BYTES;
+            return recordBytes > 0 ? 1 - (double) liveBytes / recordBytes : 0;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                logger.warn("Error closing journal segment {}", file, ex);
+            }
+        }
+
+        void delete() {
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package exercises.lottery.data;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the size of the journal of the {@link JournalTicketStore} through the actuator metrics endpoint.
+ */
+@Component
+@Profile(JournalTicketStore.PROFILE)
+public class JournalTicketStoreMetrics implements PublicMetrics {
+
+    private final JournalTicketStore ticketStore;
+
+    @Autowired
+    JournalTicketStoreMetrics(JournalTicketStore ticketStore) {
+        this.ticketStore = ticketStore;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("store.journal.tickets", ticketStore.ticketCount()));
+        metrics.add(new Metric<>("store.journal.segments", ticketStore.segmentCount()));
+        metrics.add(new Metric<>("store.journal.fileBytes", ticketStore.fileBytes()));
+        metrics.add(new Metric<>("store.journal.liveBytes", ticketStore.liveBytes()));
+        metrics.add(new Metric<>("store.journal.indexBytes", ticketStore.indexBytes()));
+        return metrics;
+    }
+}
@@ -0,0 +1,136 @@
+package exercises.lottery.data;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from positive long keys to long values, stored in two
+ * primitive arrays with open addressing and linear probing, so that
+ * entries are neither boxed nor wrapped in node objects.
+ * Entries cannot be removed one by one. Not thread safe.
+ */
+final class LongLongHashMap {
+
+    static final long MISSING = -1;
+
+    private static final long EMPTY_KEY = 0;
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.5;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private int resizeThreshold;
+
+    LongLongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize Number of entries which fit before the arrays are grown
+     */
+    LongLongHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * @param key Key of the entry, which must be positive
+     * @return Value of the entry with the given key, or {@link #MISSING} if there is none
+     */
+    long get(long key) {
+        if (key <= EMPTY_KEY) {
+            return MISSING;
+        }
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); keys[slot] != EMPTY_KEY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * @param key Key of the entry, which must be positive
+     * @param value Value of the entry
+     * @return Previous value of the entry, or {@link #MISSING} if there was none
+     */
+    long put(long key, long value) {
+        if (key <= EMPTY_KEY) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        for (; keys[slot] != EMPTY_KEY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length * 2);
+        }
+        return MISSING;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        size = 0;
+    }
+
+    /**
+     * @return Bytes used by the arrays of the map
+     */
+    long sizeInBytes() {
+        return (long) keys.length * Long.BYTES * 2;
+    }
+
+
+    private void rehash(int tableSize) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(tableSize);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                int slot = slot(oldKeys[i], mask);
+                while (keys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int tableSize) {
+        keys = new long[tableSize];
+        values = new long[tableSize];
+        resizeThreshold = (int) (tableSize * MAX_LOAD);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int tableSize = Integer.highestOneBit(Math.max((int) (expectedSize / MAX_LOAD), 2) - 1) << 1;
+        if (tableSize <= 0) {
+            throw new IllegalArgumentException("Too many entries: " + expectedSize);
+        }
+        return tableSize;
+    }
+
+    private static int slot(long key, int mask) {
+        // finalizer of MurmurHash3, so that sequential keys are spread over the table
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+}
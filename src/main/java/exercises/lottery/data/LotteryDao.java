@@ -1,17 +1,46 @@
 package exercises.lottery.data;
 
+import com.mongodb.AggregationOutput;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import exercises.lottery.domain.LineSet;
 import exercises.lottery.domain.Ticket;
+import exercises.lottery.metrics.LotteryMetrics;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 /**
  * DAO class for MongoDB.
@@ -19,90 +48,873 @@ import java.util.List;
  * Created by guisil on 25/07/2016.
  */
 @Component
-public class LotteryDao {
+@ConditionalOnExpression(LotteryDao.MONGO_STORE_CONDITION)
+public class LotteryDao implements TicketStore {
 
     private static final Logger logger = LoggerFactory.getLogger(LotteryDao.class);
 
+    // the tickets are stored in MongoDB unless one of the embedded stores is selected
+    public static final String MONGO_STORE_CONDITION = "!environment.acceptsProfiles('"
+            + OffHeapTicketStore.PROFILE + "', '" + JournalTicketStore.PROFILE + "')";
+
+    private static final String CHECKPOINTS_COLLECTION = "checkpoints";
+    // single document with the stats of the tickets, incremented as they are written
+    static final String STATS_COLLECTION = "stats";
+    static final String STATS_ID = "tickets";
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+    // only present when the lines are stored as sub-documents
+    private static final String DOCUMENT_LINES_FIELD = "lines.numbers";
+    // stored when a ticket is checked: the sum of the outcomes of its lines, and the highest one
+    static final String PAYOUT_FIELD = "payout";
+    static final String BEST_OUTCOME_FIELD = "bestOutcome";
+    // set by each bulk write which checks tickets, to find which tickets it checked
+    static final String CHECK_TOKEN_FIELD = "checkToken";
+
+    // listing of tickets by their checked value, in ID order
+    static final String CHECKED_INDEX = "checked_id";
+    // the same for unchecked tickets only, which shrinks as tickets are checked
+    static final String UNCHECKED_INDEX = "unchecked_id";
+    // checked tickets by payout, for the top winners, and covering the total payout
+    static final String PAYOUT_INDEX = "checked_payout_id";
+
     private final MongoTemplate mongoTemplate;
+    private final QueryDiagnostics queryDiagnostics;
+
+    private final LotteryMetrics.Timer getAllTicketsTimer;
+    private final LotteryMetrics.Timer getTicketByIdTimer;
+    private final LotteryMetrics.Timer getTicketStatusByIdTimer;
+    private final LotteryMetrics.Timer getTicketsByCheckedTimer;
+    private final LotteryMetrics.Timer streamAllTicketsTimer;
+    private final LotteryMetrics.Timer streamTicketsByCheckedTimer;
+    private final LotteryMetrics.Timer getTicketsPageTimer;
+    private final LotteryMetrics.Timer createTicketTimer;
+    private final LotteryMetrics.Timer createTicketsTimer;
+    private final LotteryMetrics.Timer amendTicketTimer;
+    private final LotteryMetrics.Timer addLinesTimer;
+    private final LotteryMetrics.Timer checkTicketTimer;
+    private final LotteryMetrics.Timer checkTicketsTimer;
+    private final LotteryMetrics.Timer writeTicketsTimer;
+    private final LotteryMetrics.Timer getTopWinnersTimer;
+    private final LotteryMetrics.Timer getTotalPayoutTimer;
+    private final LotteryMetrics.Timer getTicketStatsTimer;
 
-    @Autowired
     LotteryDao(MongoTemplate mongoTemplate) {
+        this(mongoTemplate, LotteryMetrics.disabled(), QueryDiagnostics.disabled());
+    }
+
+    @Autowired
+    LotteryDao(MongoTemplate mongoTemplate, LotteryMetrics metrics, QueryDiagnostics queryDiagnostics) {
         this.mongoTemplate = mongoTemplate;
+        this.queryDiagnostics = queryDiagnostics;
+        this.getAllTicketsTimer = metrics.timer("lottery.dao.getAllTickets");
+        this.getTicketByIdTimer = metrics.timer("lottery.dao.getTicketById");
+        this.getTicketStatusByIdTimer = metrics.timer("lottery.dao.getTicketStatusById");
+        this.getTicketsByCheckedTimer = metrics.timer("lottery.dao.getTicketsByChecked");
+        this.streamAllTicketsTimer = metrics.timer("lottery.dao.streamAllTickets");
+        this.streamTicketsByCheckedTimer = metrics.timer("lottery.dao.streamTicketsByChecked");
+        this.getTicketsPageTimer = metrics.timer("lottery.dao.getTicketsPage");
+        this.createTicketTimer = metrics.timer("lottery.dao.createTicket");
+        this.createTicketsTimer = metrics.timer("lottery.dao.createTickets");
+        this.amendTicketTimer = metrics.timer("lottery.dao.amendTicket");
+        this.addLinesTimer = metrics.timer("lottery.dao.addLines");
+        this.checkTicketTimer = metrics.timer("lottery.dao.checkTicket");
+        this.checkTicketsTimer = metrics.timer("lottery.dao.checkTickets");
+        this.writeTicketsTimer = metrics.timer("lottery.dao.writeTickets");
+        this.getTopWinnersTimer = metrics.timer("lottery.dao.getTopWinners");
+        this.getTotalPayoutTimer = metrics.timer("lottery.dao.getTotalPayout");
+        this.getTicketStatsTimer = metrics.timer("lottery.dao.getTicketStats");
+    }
+
+    /**
+     * Creates the indexes used by the queries on tickets, if they do not exist yet.
+     */
+    @PostConstruct
+    void ensureIndexes() {
+        mongoTemplate.execute(Ticket.class, collection -> {
+            collection.createIndex(new BasicDBObject("checked", 1).append("_id", 1),
+                    new BasicDBObject("name", CHECKED_INDEX));
+            collection.createIndex(new BasicDBObject("_id", 1).append("checked", 1),
+                    new BasicDBObject("name", UNCHECKED_INDEX)
+                            .append("partialFilterExpression", new BasicDBObject("checked", false)));
+            collection.createIndex(new BasicDBObject("checked", 1).append(PAYOUT_FIELD, -1).append("_id", 1),
+                    new BasicDBObject("name", PAYOUT_INDEX));
+            logger.info("Indexes on {}: {}", collection.getName(), collection.getIndexInfo());
+            return null;
+        });
     }
 
     /**
      * @return All tickets in the database.
      */
+    @Override
     public List<Ticket> getAllTickets() {
-        logger.info("Retrieving all tickets in the database");
-        return mongoTemplate.findAll(Ticket.class);
+        logger.debug("Retrieving all tickets in the database");
+        long start = getAllTicketsTimer.start();
+        try {
+            return find(withTicketFields(new Query()));
+        } finally {
+            getAllTicketsTimer.stop(start);
+        }
     }
 
     /**
      * @param ticketId ID of the ticket to retrieve
      * @return Ticket with the given ID
      */
+    @Override
     public Ticket getTicketById(String ticketId) {
-        logger.info("Retrieving ticket with ID {} from the database", ticketId);
-        Query findTicketQuery = new Query(Criteria.where("_id").is(ticketId));
-        return mongoTemplate.findOne(findTicketQuery, Ticket.class);
+        logger.debug("Retrieving ticket with ID {} from the database", ticketId);
+        long start = getTicketByIdTimer.start();
+        try {
+            Query findTicketQuery = withTicketFields(new Query(Criteria.where("_id").is(ticketId)));
+            return mongoTemplate.findOne(findTicketQuery, Ticket.class);
+        } finally {
+            getTicketByIdTimer.stop(start);
+        }
+    }
+
+    /**
+     * Retrieves only the ID and checked value of a ticket,
+     * for the checks which do not need its lines.
+     * @param ticketId ID of the ticket to retrieve
+     * @return Ticket with the given ID, without its lines
+     */
+    @Override
+    public Ticket getTicketStatusById(String ticketId) {
+        logger.debug("Retrieving status of ticket with ID {} from the database", ticketId);
+        long start = getTicketStatusByIdTimer.start();
+        try {
+            Query findTicketQuery = new Query(Criteria.where("_id").is(ticketId));
+            findTicketQuery.fields().include("checked");
+            return mongoTemplate.findOne(findTicketQuery, Ticket.class);
+        } finally {
+            getTicketStatusByIdTimer.stop(start);
+        }
     }
 
     /**
      * @param checked Checked parameter of the tickets to retrieve
      * @return Tickets with the given checked value
      */
+    @Override
     public List<Ticket> getTicketsByChecked(boolean checked) {
-        logger.info("Retrieving all {} tickets from the database", checked ? "checked" : "unchecked");
-        Query findTicketQuery = new Query(Criteria.where("checked").is(checked));
-        return mongoTemplate.find(findTicketQuery, Ticket.class);
+        logger.debug("Retrieving all {} tickets from the database", checked ? "checked" : "unchecked");
+        long start = getTicketsByCheckedTimer.start();
+        try {
+            return find(checkedQuery(checked));
+        } finally {
+            getTicketsByCheckedTimer.stop(start);
+        }
+    }
+
+    /**
+     * Streams all the tickets in the database from a cursor,
+     * which must be closed by the caller.
+     * @return Iterator over all the tickets in the database
+     */
+    @Override
+    public CloseableIterator<Ticket> streamAllTickets() {
+        logger.debug("Streaming all tickets in the database");
+        long start = streamAllTicketsTimer.start();
+        try {
+            return mongoTemplate.stream(withTicketFields(new Query()), Ticket.class);
+        } finally {
+            streamAllTicketsTimer.stop(start);
+        }
+    }
+
+    /**
+     * Streams the tickets with the given checked value from a cursor,
+     * which must be closed by the caller.
+     * @param checked Checked parameter of the tickets to retrieve
+     * @return Iterator over the tickets with the given checked value
+     */
+    @Override
+    public CloseableIterator<Ticket> streamTicketsByChecked(boolean checked) {
+        logger.debug("Streaming all {} tickets from the database", checked ? "checked" : "unchecked");
+        long start = streamTicketsByCheckedTimer.start();
+        try {
+            return mongoTemplate.stream(checkedQuery(checked), Ticket.class);
+        } finally {
+            streamTicketsByCheckedTimer.stop(start);
+        }
+    }
+
+    /**
+     * Retrieves a page of tickets, in ID order, starting after the given ID.
+     * Uses a range query on the ID (instead of skipping documents), so the cost
+     * of a page does not depend on how deep it is.
+     * @param checked Checked parameter of the tickets to retrieve (null for all tickets)
+     * @param afterId ID of the last ticket of the previous page (null for the first page)
+     * @param limit Maximum number of tickets to retrieve
+     * @return Tickets in the page
+     */
+    @Override
+    public List<Ticket> getTicketsPage(Boolean checked, String afterId, int limit) {
+        logger.debug("Retrieving page of {} tickets after ID {} from the database", limit, afterId);
+        long start = getTicketsPageTimer.start();
+        try {
+            return find(pageQuery(checked, afterId, limit));
+        } finally {
+            getTicketsPageTimer.stop(start);
+        }
     }
 
     /**
      * @param ticket Ticket to insert in the database
      * @return Inserted Ticket
      */
+    @Override
     public Ticket createTicket(Ticket ticket) {
-        logger.info("Inserting ticket in the database: {}", ticket);
-        mongoTemplate.insert(ticket);
-        return ticket;
+        logger.debug("Inserting ticket with {} lines in the database", ticket.getLines().size());
+        long start = createTicketTimer.start();
+        try {
+            if (ticket.isChecked()) {
+                insertWithPayouts(Collections.singletonList(ticket));
+            } else {
+                mongoTemplate.insert(ticket);
+            }
+            incrementStats(TicketStats.ofCreated(ticket));
+            return ticket;
+        } finally {
+            createTicketTimer.stop(start);
+        }
+    }
+
+    /**
+     * Inserts the given tickets in a single batch.
+     * @param tickets Tickets to insert in the database
+     * @return Inserted tickets, with their IDs
+     */
+    @Override
+    public List<Ticket> createTickets(List<Ticket> tickets) {
+        logger.debug("Inserting {} tickets in the database", tickets.size());
+        long start = createTicketsTimer.start();
+        try {
+            if (tickets.stream().anyMatch(Ticket::isChecked)) {
+                insertWithPayouts(tickets);
+            } else {
+                mongoTemplate.insert(tickets, Ticket.class);
+            }
+            incrementStats(tickets.stream().map(TicketStats::ofCreated).reduce(TicketStats.empty(), TicketStats::plus));
+            return tickets;
+        } finally {
+            createTicketsTimer.stop(start);
+        }
     }
 
     /**
+     * Replaces the lines of the ticket, which only succeeds if the ticket is not checked yet.
      * @param ticket Ticket to amend
      * @return Amended ticket
+     * @throws IllegalArgumentException if the ticket was checked
+     * @throws EmptyResultDataAccessException if the ticket does not exist
      */
+    @Override
     public Ticket amendTicket(Ticket ticket) {
-        logger.info("Amending ticket in the database: ", ticket);
-        Query query = new Query(Criteria.where("_id").is(ticket.getId()));
-        Update update = new Update();
-        update.set("lines", ticket.getLines());
-        if (mongoTemplate.updateFirst(query, update, Ticket.class).getN() != 1) {
-            logger.error("Error amending ticket {}", ticket);
-            throw new EmptyResultDataAccessException("Error amending ticket.", 1);
+        logger.debug("Amending ticket with ID {} in the database", ticket.getId());
+        long start = amendTicketTimer.start();
+        try {
+            Query query = new Query(Criteria.where("_id").is(ticket.getId()).and("checked").is(false));
+            Update update = new Update();
+            update.set("lines", ticket.getLines());
+            if (mongoTemplate.updateFirst(query, update, Ticket.class).getN() != 1) {
+                Ticket stored = getTicketStatusById(ticket.getId());
+                if (stored != null && stored.isChecked()) {
+                    logger.error("Error amending ticket with ID {}, it was already checked", ticket.getId());
+                    throw new IllegalArgumentException("Checked tickets cannot be amended.");
+                }
+                logger.error("Error amending ticket with ID {}", ticket.getId());
+                throw new EmptyResultDataAccessException("Error amending ticket.", 1);
+            }
+            return ticket;
+        } finally {
+            amendTicketTimer.stop(start);
+        }
+    }
+
+    /**
+     * Appends the given lines to the lines of the ticket, in a single atomic operation
+     * which only succeeds if the ticket is not checked yet and would not end up with
+     * more than the given number of lines. Lines which the ticket already has are not
+     * added again, but are counted against the limit. Only the new lines are sent,
+     * and concurrent amendments do not overwrite each other. Lines still stored as
+     * sub-documents are rewritten in the layout of the new lines first, so they are compared.
+     * @param ticketId ID of the ticket to amend
+     * @param newLines Lines to add to the ticket
+     * @param maxNumberOfLines Maximum number of lines of a ticket
+     * @return Amended ticket, as stored in the database
+     * @throws IllegalArgumentException if the ticket was checked or would have too many lines
+     * @throws EmptyResultDataAccessException if the ticket does not exist
+     */
+    @Override
+    public Ticket addLines(String ticketId, LineSet newLines, int maxNumberOfLines) {
+        logger.debug("Adding {} lines to ticket with ID {} in the database", newLines.size(), ticketId);
+        long start = addLinesTimer.start();
+        try {
+            if (newLines.size() > maxNumberOfLines) {
+                logger.error("Cannot add {} lines to a ticket, the maximum is {}", newLines.size(), maxNumberOfLines);
+                throw new IllegalArgumentException("Invalid number of lines.");
+            }
+            if (!ObjectId.isValid(ticketId)) {
+                logger.error("Error amending ticket with ID {}, not a valid ID", ticketId);
+                throw new EmptyResultDataAccessException("Error amending ticket.", 1);
+            }
+            // a ticket with at most (maximum - new) lines has no line in that position
+            DBObject query = new BasicDBObject("_id", new ObjectId(ticketId))
+                    .append("checked", false)
+                    .append("lines." + (maxNumberOfLines - newLines.size()), new BasicDBObject("$exists", false));
+            Object convertedLines = mongoTemplate.getConverter().convertToMongoType(newLines);
+            boolean addsCodes = containsCodes(convertedLines);
+            if (addsCodes) {
+                // codes are not told apart from the same lines stored as sub-documents,
+                // so a ticket stored in the older layout is migrated before adding to it
+                query.put(DOCUMENT_LINES_FIELD, new BasicDBObject("$exists", false));
+            }
+            DBObject update = new BasicDBObject("$addToSet", new BasicDBObject("lines",
+                    new BasicDBObject("$each", convertedLines)));
+            DBObject fields = withTicketFields(new Query()).getFieldsObject();
+            DBObject amended;
+            while ((amended = mongoTemplate.execute(Ticket.class, collection ->
+                    collection.findAndModify(query, fields, null, false, update, true, false))) == null
+                    && addsCodes && migrateDocumentLines(ticketId)) {
+                logger.debug("Migrated lines of ticket with ID {} before adding to them", ticketId);
+            }
+            if (amended == null) {
+                Ticket stored = getTicketStatusById(ticketId);
+                if (stored == null) {
+                    logger.error("Error amending ticket with ID {}, not found", ticketId);
+                    throw new EmptyResultDataAccessException("Error amending ticket.", 1);
+                }
+                if (stored.isChecked()) {
+                    logger.error("Error amending ticket with ID {}, it was already checked", ticketId);
+                    throw new IllegalArgumentException("Checked tickets cannot be amended.");
+                }
+                logger.error("Error amending ticket with ID {}, it would have more than {} lines", ticketId, maxNumberOfLines);
+                throw new IllegalArgumentException("Invalid number of lines.");
+            }
+            return mongoTemplate.getConverter().read(Ticket.class, amended);
+        } finally {
+            addLinesTimer.stop(start);
         }
-        return ticket;
     }
 
     /**
-     * @param ticket Ticket to check
-     * @return Checked ticket
+     * Marks the ticket as checked and stores the outcomes of its lines, and its payout,
+     * in a single atomic operation, which only succeeds if the ticket is not checked yet.
+     * @param ticket Ticket to check, containing the outcomes of its lines
+     * @return Checked ticket, as stored in the database
+     * @throws EmptyResultDataAccessException if the ticket does not exist or was already checked
      */
+    @Override
     public Ticket checkTicket(Ticket ticket) {
-        logger.info("Checking ticket in the database: {}", ticket);
-        Query query = new Query(Criteria.where("_id").is(ticket.getId()));
-        Update updateChecked = new Update();
-        updateChecked.set("checked", ticket.isChecked());
-        if (mongoTemplate.updateFirst(query, updateChecked, Ticket.class).getN() != 1) {
-            logger.error("Error checking ticket {}", ticket);
-            throw new EmptyResultDataAccessException("Error checking ticket.", 1);
-        }
-        Update updateLines = new Update();
-        updateLines.set("lines", ticket.getLines());
-        if (mongoTemplate.updateFirst(query, updateLines, Ticket.class).getN() != 1) {
-            logger.error("Error updating checked lines in ticket {}", ticket);
-            throw new EmptyResultDataAccessException("Error updating checked lines in ticket.", 1);
-        }
-        return ticket;
+        logger.debug("Checking ticket with ID {} in the database", ticket.getId());
+        long start = checkTicketTimer.start();
+        try {
+            Query query = withTicketFields(new Query(Criteria.where("_id").is(ticket.getId()).and("checked").is(false)));
+            Update update = new Update();
+            update.set("checked", true);
+            update.set("lines", ticket.getLines());
+            update.set(PAYOUT_FIELD, ticket.getLines().totalOutcome());
+            update.set(BEST_OUTCOME_FIELD, ticket.getLines().bestOutcome());
+            Ticket checked = mongoTemplate.findAndModify(query, update, new FindAndModifyOptions().returnNew(true), Ticket.class);
+            if (checked == null) {
+                logger.error("Error checking ticket with ID {}, not found or already checked", ticket.getId());
+                throw new EmptyResultDataAccessException("Error checking ticket.", 1);
+            }
+            incrementStats(TicketStats.ofChecked(checked.getLines()));
+            return checked;
+        } finally {
+            checkTicketTimer.stop(start);
+        }
+    }
+
+    /**
+     * Marks the given tickets as checked and stores the outcomes of their lines, and their payouts,
+     * using a single unordered bulk write. As in {@link #checkTicket(Ticket)},
+     * tickets which were already checked are left untouched. As the bulk write only tells how many
+     * tickets were checked, when some were not, the tickets are read again to find which ones
+     * were stored with the check token of this write, and only those are added to the stats.
+     * @param tickets Tickets to check, containing the outcomes of their lines
+     * @return Number of tickets which were checked by this operation
+     */
+    @Override
+    public int checkTickets(List<Ticket> tickets) {
+        logger.debug("Checking {} tickets in the database", tickets.size());
+        long start = checkTicketsTimer.start();
+        try {
+            if (tickets.isEmpty()) {
+                return 0;
+            }
+            ObjectId checkToken = new ObjectId();
+            int checked = mongoTemplate.execute(Ticket.class, collection -> {
+                BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+                for (Ticket ticket : tickets) {
+                    DBObject query = new BasicDBObject("_id", new ObjectId(ticket.getId())).append("checked", false);
+                    bulk.find(query).updateOne(checkUpdate(ticket, checkToken));
+                }
+                return bulk.execute().getModifiedCount();
+            });
+            Set<String> checkedIds = null;
+            if (checked < tickets.size()) {
+                checkedIds = findCheckedWith(checkToken, tickets.stream().map(Ticket::getId).collect(Collectors.toSet()));
+            }
+            TicketStats stats = TicketStats.empty();
+            for (Ticket ticket : tickets) {
+                // a ticket given twice is only checked once
+                if (checkedIds == null || checkedIds.remove(ticket.getId())) {
+                    stats = stats.plus(TicketStats.ofChecked(ticket.getLines()));
+                }
+            }
+            incrementStats(stats);
+            return checked;
+        } finally {
+            checkTicketsTimer.stop(start);
+        }
+    }
+
+    /**
+     * Creates and checks tickets with a single unordered bulk write, each as {@link #createTicket(Ticket)}
+     * and {@link #checkTicket(Ticket)} would, so that the writes of concurrent requests share a round trip.
+     * The created tickets are given their IDs. As the bulk write only tells how many tickets were checked,
+     * when some were not, the tickets are read again to find which ones were stored with the check token
+     * of this write, so that a ticket checked concurrently by another write fails here, even with the same lines.
+     * @param toCreate Tickets to create
+     * @param toCheck Tickets to check, with the outcomes of their lines
+     * @return Error of each ticket to create, followed by the error of each ticket to check, or null if it was written
+     */
+    public List<RuntimeException> writeTickets(List<Ticket> toCreate, List<Ticket> toCheck) {
+        logger.debug("Creating {} tickets and checking {} tickets in the database", toCreate.size(), toCheck.size());
+        long start = writeTicketsTimer.start();
+        try {
+            RuntimeException[] errors = new RuntimeException[toCreate.size() + toCheck.size()];
+            List<DBObject> documents = new ArrayList<>(toCreate.size());
+            for (Ticket ticket : toCreate) {
+                DBObject document = toDocument(ticket);
+                if (!document.containsField("_id")) {
+                    document.put("_id", new ObjectId());
+                }
+                documents.add(document);
+            }
+            ObjectId checkToken = new ObjectId();
+            // position in the errors of each operation of the bulk write
+            List<Integer> positions = new ArrayList<>(errors.length);
+            Set<String> checkedIds = new HashSet<>();
+            BulkWriteResult result = mongoTemplate.execute(Ticket.class, collection -> {
+                BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+                for (int i = 0; i < documents.size(); i++) {
+                    bulk.insert(documents.get(i));
+                    positions.add(i);
+                }
+                for (int i = 0; i < toCheck.size(); i++) {
+                    Ticket ticket = toCheck.get(i);
+                    // a ticket checked twice in the batch is only checked once, as one after the other
+                    if (!ObjectId.isValid(ticket.getId()) || !checkedIds.add(ticket.getId())) {
+                        errors[toCreate.size() + i] = notChecked(ticket);
+                        continue;
+                    }
+                    DBObject query = new BasicDBObject("_id", new ObjectId(ticket.getId())).append("checked", false);
+                    bulk.find(query).updateOne(checkUpdate(ticket, checkToken));
+                    positions.add(toCreate.size() + i);
+                }
+                if (positions.isEmpty()) {
+                    return null;
+                }
+                try {
+                    return bulk.execute();
+                } catch (BulkWriteException ex) {
+                    for (BulkWriteError error : ex.getWriteErrors()) {
+                        errors[positions.get(error.getIndex())] = error.getCode() == DUPLICATE_KEY_ERROR
+                                ? new DuplicateKeyException(error.getMessage())
+                                : new DataIntegrityViolationException(error.getMessage());
+                    }
+                    return ex.getWriteResult();
+                }
+            });
+
+            int checksWritten = 0;
+            for (int i = toCreate.size(); i < errors.length; i++) {
+                checksWritten += errors[i] == null ? 1 : 0;
+            }
+            if (result != null && result.getModifiedCount() < checksWritten) {
+                Set<String> checkedByThisWrite = findCheckedWith(checkToken, checkedIds);
+                for (int i = 0; i < toCheck.size(); i++) {
+                    Ticket ticket = toCheck.get(i);
+                    if (errors[toCreate.size() + i] == null && !checkedByThisWrite.contains(ticket.getId())) {
+                        errors[toCreate.size() + i] = notChecked(ticket);
+                    }
+                }
+            }
+            TicketStats written = TicketStats.empty();
+            for (int i = 0; i < toCreate.size(); i++) {
+                if (errors[i] == null) {
+                    toCreate.get(i).setId(documents.get(i).get("_id").toString());
+                    written = written.plus(TicketStats.ofCreated(toCreate.get(i)));
+                }
+            }
+            for (int i = 0; i < toCheck.size(); i++) {
+                if (errors[toCreate.size() + i] == null) {
+                    written = written.plus(TicketStats.ofChecked(toCheck.get(i).getLines()));
+                }
+            }
+            incrementStats(written);
+            return Arrays.asList(errors);
+        } finally {
+            writeTicketsTimer.stop(start);
+        }
+    }
+
+    /**
+     * Retrieves the checked tickets with the highest payouts, walking the payout index
+     * from its highest payout, so only the returned tickets are read.
+     * @param limit Maximum number of tickets to retrieve
+     * @return Winning tickets with the highest payouts
+     */
+    @Override
+    public List<Ticket> getTopWinners(int limit) {
+        logger.debug("Retrieving the {} top winning tickets from the database", limit);
+        long start = getTopWinnersTimer.start();
+        try {
+            return find(topWinnersQuery(limit));
+        } finally {
+            getTopWinnersTimer.stop(start);
+        }
+    }
+
+    /**
+     * Sums the payouts of the checked tickets in the database. Only the indexed
+     * fields are projected, so the payouts are read from the payout index,
+     * without fetching the tickets.
+     * @return Sum of the payouts of all the checked tickets
+     */
+    @Override
+    public long getTotalPayout() {
+        logger.debug("Summing the payouts of the checked tickets in the database");
+        long start = getTotalPayoutTimer.start();
+        try {
+            List<DBObject> pipeline = Arrays.asList(
+                    new BasicDBObject("$match", new BasicDBObject("checked", true)),
+                    new BasicDBObject("$project", new BasicDBObject("_id", 0).append(PAYOUT_FIELD, 1)),
+                    new BasicDBObject("$group", new BasicDBObject("_id", null)
+                            .append("total", new BasicDBObject("$sum", "$" + PAYOUT_FIELD))));
+            AggregationOutput output = mongoTemplate.execute(Ticket.class, collection -> collection.aggregate(pipeline));
+            Iterator<DBObject> results = output.results().iterator();
+            return results.hasNext() ? ((Number) results.next().get("total")).longValue() : 0;
+        } finally {
+            getTotalPayoutTimer.stop(start);
+        }
+    }
+
+    /**
+     * Retrieves the stats of the tickets from their stats document,
+     * which is incremented after each ticket is created or checked.
+     * @return Stats of the tickets
+     */
+    @Override
+    public TicketStats getTicketStats() {
+        logger.debug("Retrieving the stats of the tickets from the database");
+        long start = getTicketStatsTimer.start();
+        try {
+            DBObject stats = mongoTemplate.findOne(new Query(Criteria.where("_id").is(STATS_ID)), DBObject.class, STATS_COLLECTION);
+            if (stats == null) {
+                return TicketStats.empty();
+            }
+            Map<Integer, Long> linesByOutcome = new TreeMap<>();
+            DBObject lines = (DBObject) stats.get("linesByOutcome");
+            if (lines != null) {
+                for (String outcome : lines.keySet()) {
+                    linesByOutcome.put(Integer.valueOf(outcome), ((Number) lines.get(outcome)).longValue());
+                }
+            }
+            return new TicketStats(longValue(stats, "checkedTickets"), longValue(stats, "uncheckedTickets"), linesByOutcome);
+        } finally {
+            getTicketStatsTimer.stop(start);
+        }
+    }
+
+    /**
+     * Counts the unchecked tickets, streams the checked ones to count their lines,
+     * and replaces the stats document. Tickets written while they are counted
+     * may be counted twice or not at all, so it must only run while no tickets are written.
+     * @return Stats counted from the tickets
+     */
+    @Override
+    public TicketStats rebuildTicketStats() {
+        logger.info("Counting the stats of the tickets in the database");
+        long uncheckedTickets = mongoTemplate.count(checkedQuery(false), Ticket.class);
+        TicketStats counted = new TicketStats(0, uncheckedTickets, Collections.emptyMap());
+        try (CloseableIterator<Ticket> checked = streamTicketsByChecked(true)) {
+            while (checked.hasNext()) {
+                counted = counted.plus(TicketStats.ofTicket(true, checked.next().getLines()));
+            }
+        }
+        BasicDBObject linesByOutcome = new BasicDBObject();
+        counted.getLinesByOutcome().forEach((outcome, lines) -> linesByOutcome.append(outcome.toString(), lines));
+        Update update = new Update()
+                .set("checkedTickets", counted.getCheckedTickets())
+                .set("uncheckedTickets", counted.getUncheckedTickets())
+                .set("linesByOutcome", linesByOutcome);
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(STATS_ID)), update, STATS_COLLECTION);
+        return counted;
+    }
+
+    /**
+     * Retrieves a page of the tickets stored in an older layout, in ID order, starting after
+     * the given ID: the tickets whose lines are stored as sub-documents (see {@link TicketConversions}),
+     * and the checked tickets which were stored without their payout.
+     * @param afterId ID of the last ticket of the previous page (null for the first page)
+     * @param limit Maximum number of tickets to retrieve
+     * @return Tickets in the page
+     */
+    public List<Ticket> getTicketsToMigrate(String afterId, int limit) {
+        logger.debug("Retrieving page of {} tickets to migrate after ID {} from the database", limit, afterId);
+        Query pageQuery = withTicketFields(new Query(toMigrateCriteria()));
+        if (afterId != null) {
+            pageQuery.addCriteria(Criteria.where("_id").gt(new ObjectId(afterId)));
+        }
+        pageQuery.with(new Sort(Sort.Direction.ASC, "_id")).limit(limit);
+        return mongoTemplate.find(pageQuery, Ticket.class);
+    }
+
+    /**
+     * Writes the lines of the given tickets again, in the layout of the configured
+     * converter, with the payouts of the checked ones, using a single unordered bulk write.
+     * Only the tickets which are still stored in an older layout, with the lines they were
+     * read with, are written: the stored lines are read again, and each update only matches
+     * them as read, so lines which were amended or checked since the tickets were read,
+     * or while they are written, are left untouched.
+     * @param tickets Tickets which should be written again
+     * @return Number of tickets which were written
+     */
+    public int rewriteTickets(List<Ticket> tickets) {
+        logger.debug("Rewriting {} tickets in the database", tickets.size());
+        if (tickets.isEmpty()) {
+            return 0;
+        }
+        Map<String, BasicDBList> storedLines = findStoredLines(tickets);
+        DBObject toMigrate = toMigrateCriteria().getCriteriaObject();
+        return mongoTemplate.execute(Ticket.class, collection -> {
+            BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+            int queued = 0;
+            for (Ticket ticket : tickets) {
+                BasicDBList lines = storedLines.get(ticket.getId());
+                if (lines == null || !ticket.getLines().equals(TicketConversions.LinesReadingConverter.INSTANCE.convert(lines))) {
+                    continue;
+                }
+                DBObject query = new BasicDBObject("_id", new ObjectId(ticket.getId())).append("lines", lines);
+                query.putAll(toMigrate);
+                DBObject set = new BasicDBObject("lines", mongoTemplate.getConverter().convertToMongoType(ticket.getLines()));
+                if (ticket.isChecked()) {
+                    set.put(PAYOUT_FIELD, ticket.getLines().totalOutcome());
+                    set.put(BEST_OUTCOME_FIELD, ticket.getLines().bestOutcome());
+                }
+                bulk.find(query).updateOne(new BasicDBObject("$set", set));
+                queued++;
+            }
+            return queued == 0 ? 0 : bulk.execute().getModifiedCount();
+        });
+    }
+
+    /**
+     * @param jobName Name of the job
+     * @return ID of the last ticket processed by the job, or null if there is no checkpoint
+     */
+    @Override
+    public String getCheckpoint(String jobName) {
+        logger.debug("Retrieving checkpoint of job {} from the database", jobName);
+        DBObject checkpoint = mongoTemplate.findOne(new Query(Criteria.where("_id").is(jobName)), DBObject.class, CHECKPOINTS_COLLECTION);
+        return checkpoint == null ? null : (String) checkpoint.get("lastId");
+    }
+
+    /**
+     * @param jobName Name of the job
+     * @param lastId ID of the last ticket processed by the job
+     */
+    @Override
+    public void saveCheckpoint(String jobName, String lastId) {
+        logger.debug("Saving checkpoint of job {} at ticket ID {}", jobName, lastId);
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(jobName)), Update.update("lastId", lastId), CHECKPOINTS_COLLECTION);
+    }
+
+    /**
+     * @param jobName Name of the job whose checkpoint should be removed
+     */
+    @Override
+    public void removeCheckpoint(String jobName) {
+        logger.debug("Removing checkpoint of job {} from the database", jobName);
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(jobName)), CHECKPOINTS_COLLECTION);
+    }
+
+
+    Query checkedQuery(boolean checked) {
+        return withTicketFields(new Query(Criteria.where("checked").is(checked)));
+    }
+
+    Query pageQuery(Boolean checked, String afterId, int limit) {
+        Query pageQuery = withTicketFields(new Query());
+        if (checked != null) {
+            pageQuery.addCriteria(Criteria.where("checked").is(checked));
+        }
+        if (afterId != null) {
+            if (!ObjectId.isValid(afterId)) {
+                logger.error("Invalid ticket ID {} for pagination", afterId);
+                throw new IllegalArgumentException("Invalid ticket ID: " + afterId);
+            }
+            pageQuery.addCriteria(Criteria.where("_id").gt(new ObjectId(afterId)));
+        }
+        pageQuery.with(new Sort(Sort.Direction.ASC, "_id")).limit(limit);
+        return pageQuery;
+    }
+
+    Query topWinnersQuery(int limit) {
+        Query query = withTicketFields(new Query(Criteria.where("checked").is(true).and(PAYOUT_FIELD).gt(0)));
+        query.with(new Sort(Sort.Direction.DESC, PAYOUT_FIELD).and(new Sort(Sort.Direction.ASC, "_id"))).limit(limit);
+        return query;
+    }
+
+    /**
+     * Converts the ticket to the document which is stored, with its payout if it is checked.
+     */
+    private DBObject toDocument(Ticket ticket) {
+        DBObject document = new BasicDBObject();
+        mongoTemplate.getConverter().write(ticket, document);
+        if (ticket.isChecked()) {
+            document.put(PAYOUT_FIELD, ticket.getLines().totalOutcome());
+            document.put(BEST_OUTCOME_FIELD, ticket.getLines().bestOutcome());
+        }
+        return document;
+    }
+
+    private DBObject checkUpdate(Ticket ticket, ObjectId checkToken) {
+        DBObject set = new BasicDBObject("checked", true)
+                .append("lines", mongoTemplate.getConverter().convertToMongoType(ticket.getLines()))
+                .append(PAYOUT_FIELD, ticket.getLines().totalOutcome())
+                .append(BEST_OUTCOME_FIELD, ticket.getLines().bestOutcome())
+                .append(CHECK_TOKEN_FIELD, checkToken);
+        return new BasicDBObject("$set", set);
+    }
+
+    /**
+     * @return IDs of the given tickets which are stored with the check token, that is, which were checked
+     * by the write which set it (a concurrent check of the same ticket sets another token, or none)
+     */
+    private Set<String> findCheckedWith(ObjectId checkToken, Set<String> ticketIds) {
+        List<ObjectId> ids = new ArrayList<>(ticketIds.size());
+        for (String ticketId : ticketIds) {
+            ids.add(new ObjectId(ticketId));
+        }
+        DBObject query = new BasicDBObject("_id", new BasicDBObject("$in", ids)).append(CHECK_TOKEN_FIELD, checkToken);
+        List<?> checkedObjectIds = mongoTemplate.execute(Ticket.class, collection -> collection.distinct("_id", query));
+        Set<String> checkedIds = new HashSet<>();
+        for (Object id : checkedObjectIds) {
+            checkedIds.add(id.toString());
+        }
+        return checkedIds;
+    }
+
+    private static EmptyResultDataAccessException notChecked(Ticket ticket) {
+        logger.error("Error checking ticket with ID {}, not found or already checked", ticket.getId());
+        return new EmptyResultDataAccessException("Error checking ticket.", 1);
+    }
+
+    /**
+     * Adds the change to the stats document, creating it if needed.
+     * It is a separate write from the one of the tickets, so a failure
+     * in between leaves the stats off until they are rebuilt.
+     */
+    private void incrementStats(TicketStats change) {
+        if (change.isEmpty()) {
+            return;
+        }
+        Update update = new Update()
+                .inc("checkedTickets", change.getCheckedTickets())
+                .inc("uncheckedTickets", change.getUncheckedTickets());
+        change.getLinesByOutcome().forEach((outcome, lines) -> update.inc("linesByOutcome." + outcome, lines));
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(STATS_ID)), update, STATS_COLLECTION);
+    }
+
+    private static long longValue(DBObject document, String field) {
+        Number value = (Number) document.get(field);
+        return value == null ? 0 : value.longValue();
+    }
+
+    private static Criteria toMigrateCriteria() {
+        return new Criteria().orOperator(
+                Criteria.where(DOCUMENT_LINES_FIELD).exists(true),
+                Criteria.where("checked").is(true).and(PAYOUT_FIELD).exists(false));
+    }
+
+    /**
+     * Reads the lines of the given tickets as stored, without converting them.
+     * @return Stored lines by ticket ID, of the tickets which still exist
+     */
+    private Map<String, BasicDBList> findStoredLines(List<Ticket> tickets) {
+        List<ObjectId> ids = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets) {
+            ids.add(new ObjectId(ticket.getId()));
+        }
+        DBObject query = new BasicDBObject("_id", new BasicDBObject("$in", ids));
+        DBObject fields = new BasicDBObject("lines", 1);
+        Map<String, BasicDBList> storedLines = new HashMap<>();
+        mongoTemplate.execute(Ticket.class, collection -> {
+            try (DBCursor cursor = collection.find(query, fields)) {
+                for (DBObject document : cursor) {
+                    storedLines.put(document.get("_id").toString(), (BasicDBList) document.get("lines"));
+                }
+            }
+            return null;
+        });
+        return storedLines;
+    }
+
+    /**
+     * Rewrites the lines of the ticket in the layout of the configured converter,
+     * if they are still stored as sub-documents.
+     * @return true if the ticket was stored with lines as sub-documents
+     */
+    private boolean migrateDocumentLines(String ticketId) {
+        Query query = withTicketFields(new Query(Criteria.where("_id").is(ticketId).and(DOCUMENT_LINES_FIELD).exists(true)));
+        Ticket stored = mongoTemplate.findOne(query, Ticket.class);
+        if (stored == null) {
+            return false;
+        }
+        rewriteTickets(Collections.singletonList(stored));
+        return true;
+    }
+
+    private static boolean containsCodes(Object convertedLines) {
+        return convertedLines instanceof List && !((List<?>) convertedLines).isEmpty()
+                && ((List<?>) convertedLines).get(0) instanceof Number;
+    }
+
+    /**
+     * Inserts the tickets with the payouts of the ones which are already checked,
+     * converting them to documents first, and gives them the IDs generated on insert.
+     */
+    private void insertWithPayouts(List<Ticket> tickets) {
+        List<DBObject> documents = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets) {
+            documents.add(toDocument(ticket));
+        }
+        mongoTemplate.execute(Ticket.class, collection -> collection.insert(documents));
+        for (int i = 0; i < tickets.size(); i++) {
+            tickets.get(i).setId(documents.get(i).get("_id").toString());
+        }
+    }
+
+    /**
+     * Restricts the query to the fields serialized by the views of the tickets,
+     * leaving out the type hint written by the converter and any other stored field.
+     */
+    private static Query withTicketFields(Query query) {
+        query.fields().include("checked").include("lines");
+        return query;
+    }
+
+    private List<Ticket> find(Query query) {
+        long start = queryDiagnostics.start();
+        List<Ticket> found = mongoTemplate.find(query, Ticket.class);
+        queryDiagnostics.finished(mongoTemplate, Ticket.class, query, start);
+        return found;
     }
 }
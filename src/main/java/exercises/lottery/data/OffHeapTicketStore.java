@@ -0,0 +1,159 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.LineSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TicketStore which keeps the tickets in the memory of the process, outside of the heap,
+ * for single node and edge deployments without MongoDB. The tickets are lost when the
+ * process stops.
+ *
+ * Each ticket is a record in a direct buffer: its capacity, its checked flag and number
+ * of lines, and the packed codes of its lines (see {@link exercises.lottery.domain.LineCodes}).
+ * Records are appended to fixed size segments, and moved to the end when their lines outgrow
+ * them, leaving the old record unused. The ID prefix is the time at which the store was
+ * created, so the IDs sort after the IDs of a previous store.
+ */
+@Component
+@Profile(OffHeapTicketStore.PROFILE)
+public class OffHeapTicketStore extends IndexedTicketStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapTicketStore.class);
+
+    public static final String PROFILE = "offheap";
+
+    // capacity, then checked flag and number of lines
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int CHECKED_FLAG = 1 << 31;
+    private static final int MIN_CAPACITY = 2;
+
+    private final int segmentBytes;
+
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private int writeOffset;
+    private long liveBytes;
+
+    /**
+     * @param segmentBytes Size of each buffer in which the tickets are stored
+     */
+    @Autowired
+    OffHeapTicketStore(@Qualifier("offHeapSegmentBytes") int segmentBytes) {
+        super((int) (System.currentTimeMillis() / 1000));
+        if (segmentBytes < HEADER_BYTES + MIN_CAPACITY * Long.BYTES || segmentBytes % Long.BYTES != 0) {
+            throw new IllegalArgumentException("Invalid off-heap segment size.");
+        }
+        this.segmentBytes = segmentBytes;
+    }
+
+    public int segmentCount() {
+        return withReadLock(segments::size);
+    }
+
+    /**
+     * @return Bytes of the buffers allocated for the tickets
+     */
+    public long allocatedBytes() {
+        return withReadLock(() -> (long) segments.size() * segmentBytes);
+    }
+
+    /**
+     * @return Bytes of the records of the tickets, without the records left by tickets which grew
+     */
+    public long liveBytes() {
+        return withReadLock(() -> liveBytes);
+    }
+
+    @Override
+    protected long writeRecord(long key, long address, boolean checked, LineSet lines) {
+        // the lines are written in the record of the ticket, or in a new one if they do not fit anymore
+        if (address == LongLongHashMap.MISSING) {
+            address = allocate(capacityFor(lines.size()));
+        } else if (lines.size() > capacity(address)) {
+            long newAddress = allocate(capacityFor(lines.size()));
+            liveBytes -= recordBytes(capacity(address));
+            address = newAddress;
+        }
+        ByteBuffer segment = segment(address);
+        int offset = offset(address);
+        segment.putInt(offset + Integer.BYTES, (checked ? CHECKED_FLAG : 0) | lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            segment.putLong(offset + HEADER_BYTES + i * Long.BYTES, lines.codeAt(i));
+        }
+        return address;
+    }
+
+    @Override
+    protected boolean isChecked(long address) {
+        return (segment(address).getInt(offset(address) + Integer.BYTES) & CHECKED_FLAG) != 0;
+    }
+
+    @Override
+    protected LineSet readLines(long address) {
+        ByteBuffer segment = segment(address);
+        int offset = offset(address);
+        int size = segment.getInt(offset + Integer.BYTES) & ~CHECKED_FLAG;
+        LineSet lines = new LineSet(size);
+        for (int i = 0; i < size; i++) {
+            lines.addCode(segment.getLong(offset + HEADER_BYTES + i * Long.BYTES));
+        }
+        return lines;
+    }
+
+    /**
+     * Releases the buffers of the tickets.
+     */
+    @Override
+    protected void clearRecords() {
+        segments.clear();
+        writeOffset = 0;
+        liveBytes = 0;
+    }
+
+
+    private long allocate(int capacity) {
+        int bytes = recordBytes(capacity);
+        if (bytes > segmentBytes) {
+            logger.error("A ticket with {} lines does not fit in a segment of {} bytes", capacity, segmentBytes);
+            throw new IllegalArgumentException("Invalid number of lines.");
+        }
+        if (segments.isEmpty() || writeOffset + bytes > segmentBytes) {
+            logger.debug("Allocating segment {} of {} bytes", segments.size(), segmentBytes);
+            segments.add(ByteBuffer.allocateDirect(segmentBytes));
+            writeOffset = 0;
+        }
+        long address = ((long) (segments.size() - 1) << 32) | writeOffset;
+        segment(address).putInt(offset(address), capacity);
+        writeOffset += bytes;
+        liveBytes += bytes;
+        return address;
+    }
+
+    private int capacity(long address) {
+        return segment(address).getInt(offset(address));
+    }
+
+    private ByteBuffer segment(long address) {
+        return segments.get((int) (address >>> 32));
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static int recordBytes(int capacity) {
+        return HEADER_BYTES + capacity * Long.BYTES;
+    }
+
+    private static int capacityFor(int size) {
+        return size <= MIN_CAPACITY ? MIN_CAPACITY : Integer.highestOneBit(size - 1) << 1;
+    }
+}
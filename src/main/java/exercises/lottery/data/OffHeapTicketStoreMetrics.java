@@ -0,0 +1,37 @@
+package exercises.lottery.data;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the memory used by the {@link OffHeapTicketStore} through the actuator metrics endpoint.
+ */
+@Component
+@Profile(OffHeapTicketStore.PROFILE)
+public class OffHeapTicketStoreMetrics implements PublicMetrics {
+
+    private final OffHeapTicketStore ticketStore;
+
+    @Autowired
+    OffHeapTicketStoreMetrics(OffHeapTicketStore ticketStore) {
+        this.ticketStore = ticketStore;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("store.offheap.tickets", ticketStore.ticketCount()));
+        metrics.add(new Metric<>("store.offheap.segments", ticketStore.segmentCount()));
+        metrics.add(new Metric<>("store.offheap.allocatedBytes", ticketStore.allocatedBytes()));
+        metrics.add(new Metric<>("store.offheap.liveBytes", ticketStore.liveBytes()));
+        metrics.add(new Metric<>("store.offheap.indexBytes", ticketStore.indexBytes()));
+        return metrics;
+    }
+}
@@ -0,0 +1,120 @@
+package exercises.lottery.data;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diagnostics of the queries which take longer than a threshold.
+ *
+ * Slow queries are explained by MongoDB and logged with the stages of their
+ * winning plan, so that queries which scan the collection (COLLSCAN) instead
+ * of an index (IXSCAN) are easy to spot. When disabled, queries are not timed.
+ */
+public class QueryDiagnostics {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryDiagnostics.class);
+
+    private static final QueryDiagnostics DISABLED = new QueryDiagnostics(0);
+
+    private final long slowQueryThresholdNanos;
+
+    /**
+     * @param slowQueryThresholdMillis Duration from which a query is explained, in milliseconds (0 disables the diagnostics)
+     */
+    public QueryDiagnostics(long slowQueryThresholdMillis) {
+        if (slowQueryThresholdMillis < 0) {
+            throw new IllegalArgumentException("Invalid slow query threshold.");
+        }
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+    }
+
+    /**
+     * @return Diagnostics which explain no query
+     */
+    public static QueryDiagnostics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return slowQueryThresholdNanos > 0;
+    }
+
+    /**
+     * @return Start of the query, to give to {@link #finished(MongoTemplate, Class, Query, long)}
+     */
+    long start() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Explains and logs the given query if it was slow.
+     * @param mongoTemplate Template used to run the query
+     * @param entityClass Class of the documents queried
+     * @param query Query which finished
+     * @param startNanos Value returned by {@link #start()} when the query started
+     */
+    void finished(MongoTemplate mongoTemplate, Class<?> entityClass, Query query, long startNanos) {
+        if (!isEnabled()) {
+            return;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        if (elapsedNanos < slowQueryThresholdNanos) {
+            return;
+        }
+        try {
+            DBObject explained = explain(mongoTemplate, entityClass, query);
+            logger.warn("Slow query on {} took {} ms, winning plan {}: {}", mongoTemplate.getCollectionName(entityClass),
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), winningPlanStages(explained), query);
+            logger.debug("Explained slow query: {}", explained);
+        } catch (RuntimeException ex) {
+            logger.warn("Error explaining slow query: {}", query, ex);
+        }
+    }
+
+    /**
+     * @param mongoTemplate Template with which to run the query
+     * @param entityClass Class of the documents queried
+     * @param query Query to explain
+     * @return Output of the explain of the query by MongoDB
+     */
+    static DBObject explain(MongoTemplate mongoTemplate, Class<?> entityClass, Query query) {
+        return mongoTemplate.execute(entityClass, collection -> {
+            DBCursor cursor = collection.find(query.getQueryObject(), query.getFieldsObject());
+            if (query.getSortObject() != null) {
+                cursor.sort(query.getSortObject());
+            }
+            if (query.getLimit() > 0) {
+                cursor.limit(query.getLimit());
+            }
+            return cursor.explain();
+        });
+    }
+
+    /**
+     * @param explained Output of the explain of a query
+     * @return Stages of the winning plan, from the last one to the first (e.g. [FETCH, IXSCAN])
+     */
+    static List<String> winningPlanStages(DBObject explained) {
+        List<String> stages = new ArrayList<>();
+        DBObject queryPlanner = (DBObject) explained.get("queryPlanner");
+        DBObject stage = queryPlanner == null ? null : (DBObject) queryPlanner.get("winningPlan");
+        while (stage != null) {
+            stages.add((String) stage.get("stage"));
+            Object input = stage.get("inputStage");
+            if (input == null && stage.get("inputStages") instanceof List && !((List<?>) stage.get("inputStages")).isEmpty()) {
+                // a stage merging several inputs, the first one is enough to tell how the documents are found
+                input = ((List<?>) stage.get("inputStages")).get(0);
+            }
+            stage = (DBObject) input;
+        }
+        return stages;
+    }
+}
@@ -0,0 +1,345 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.LineSet;
+import exercises.lottery.domain.Ticket;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-memory cache of tickets, by ID.
+ *
+ * The cache is bounded by the total weight of its tickets (one per ticket plus
+ * one per line) and evicts the least recently used tickets first.
+ * Unchecked tickets expire after a time to live, since they can still be amended
+ * or checked elsewhere. Checked tickets never change, so they are kept until
+ * evicted, but only softly referenced, so that memory pressure can clear them.
+ * A cached checked ticket is therefore never replaced by an unchecked one.
+ *
+ * The tickets are split by ID into segments, each with its own lock and share of the
+ * maximum weight, so that readers of different tickets do not contend on a single lock.
+ * The eviction order is least recently used within each segment.
+ *
+ * Tickets read from the database are cached with {@link #putRead(Ticket, long)},
+ * which does not cache them if a write may have changed them since they were read.
+ *
+ * Tickets are copied in and out of the cache, so callers cannot modify its contents.
+ */
+public class TicketCache {
+
+    static final int MAX_SEGMENTS = 16;
+    // smallest share of the maximum weight given to a segment, so small caches keep a single LRU order
+    static final long MIN_SEGMENT_WEIGHT = 1000;
+
+    private final long uncheckedTtlNanos;
+    private final LongSupplier nanoClock;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxWeight Maximum total weight of the cached tickets (0 disables the cache)
+     * @param uncheckedTtlMillis Time to live of unchecked tickets, in milliseconds (0 to not cache them)
+     */
+    public TicketCache(long maxWeight, long uncheckedTtlMillis) {
+        this(maxWeight, uncheckedTtlMillis, System::nanoTime);
+    }
+
+    TicketCache(long maxWeight, long uncheckedTtlMillis, LongSupplier nanoClock) {
+        this(maxWeight, uncheckedTtlMillis, defaultSegments(maxWeight), nanoClock);
+    }
+
+    TicketCache(long maxWeight, long uncheckedTtlMillis, int numberOfSegments, LongSupplier nanoClock) {
+        if (maxWeight < 0 || uncheckedTtlMillis < 0 || numberOfSegments <= 0) {
+            throw new IllegalArgumentException("Invalid ticket cache configuration.");
+        }
+        this.uncheckedTtlNanos = TimeUnit.MILLISECONDS.toNanos(uncheckedTtlMillis);
+        this.nanoClock = nanoClock;
+        this.segments = new Segment[numberOfSegments];
+        for (int i = 0; i < numberOfSegments; i++) {
+            // the remainder of the division goes to the first segments
+            segments[i] = new Segment(maxWeight / numberOfSegments + (i < maxWeight % numberOfSegments ? 1 : 0));
+        }
+    }
+
+    /**
+     * @param ticketId ID of the ticket
+     * @return Copy of the cached ticket, or null if it is not cached
+     */
+    public Ticket get(String ticketId) {
+        Segment segment = segmentFor(ticketId);
+        Ticket cached;
+        synchronized (segment) {
+            segment.purgeCollected();
+            Entry entry = segment.entries.get(ticketId);
+            cached = entry == null ? null : entry.get();
+            if (entry != null && (cached == null || entry.isExpired(nanoClock.getAsLong()))) {
+                segment.remove(ticketId);
+                evictions.increment();
+                cached = null;
+            }
+        }
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(cached);
+    }
+
+    /**
+     * Caches a copy of a ticket which was just written, replacing any previous one with
+     * the same ID, unless that one is checked and the given one is not (it is older).
+     * @param ticket Ticket to cache, with its ID
+     */
+    public void put(Ticket ticket) {
+        if (ticket.getId() == null) {
+            return;
+        }
+        Segment segment = segmentFor(ticket.getId());
+        Entry entry = newEntry(ticket, segment);
+        synchronized (segment) {
+            segment.writes++;
+            putEntry(segment, ticket.getId(), entry);
+        }
+    }
+
+    /**
+     * Marks the start of a read of a ticket from the database, to be cached with {@link #putRead(Ticket, long)}.
+     * @param ticketId ID of the ticket which is read
+     * @return Stamp of the writes to the cache so far
+     */
+    public long readStamp(String ticketId) {
+        Segment segment = segmentFor(ticketId);
+        synchronized (segment) {
+            return segment.writes;
+        }
+    }
+
+    /**
+     * Caches a copy of a ticket read from the database, unless the cache was written for its
+     * segment since the read started (the ticket may have been written meanwhile, and what was
+     * read may be stale) or the ticket is already cached.
+     * @param ticket Ticket read from the database, with its ID
+     * @param stamp Stamp obtained with {@link #readStamp(String)} before reading the ticket
+     */
+    public void putRead(Ticket ticket, long stamp) {
+        if (ticket.getId() == null) {
+            return;
+        }
+        Segment segment = segmentFor(ticket.getId());
+        Entry entry = newEntry(ticket, segment);
+        synchronized (segment) {
+            if (segment.writes != stamp || segment.entries.containsKey(ticket.getId())) {
+                return;
+            }
+            putEntry(segment, ticket.getId(), entry);
+        }
+    }
+
+    /**
+     * @param ticketId ID of the ticket to remove from the cache
+     */
+    public void invalidate(String ticketId) {
+        Segment segment = segmentFor(ticketId);
+        synchronized (segment) {
+            segment.writes++;
+            segment.remove(ticketId);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.writes++;
+                segment.entries.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of tickets removed because of the weight bound, their expiry or memory pressure
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+
+    private static int defaultSegments(long maxWeight) {
+        int numberOfSegments = 1;
+        while (numberOfSegments < MAX_SEGMENTS && maxWeight / (numberOfSegments * 2) >= MIN_SEGMENT_WEIGHT) {
+            numberOfSegments *= 2;
+        }
+        return numberOfSegments;
+    }
+
+    private Segment segmentFor(String ticketId) {
+        int hash = ticketId.hashCode();
+        return segments[((hash ^ (hash >>> 16)) & 0x7FFFFFFF) % segments.length];
+    }
+
+    /**
+     * @return Entry with a copy of the ticket, or null if the ticket cannot be cached
+     */
+    private Entry newEntry(Ticket ticket, Segment segment) {
+        long ticketWeight = weightOf(ticket);
+        if (ticketWeight > segment.maxWeight || (!ticket.isChecked() && uncheckedTtlNanos == 0)) {
+            return null;
+        }
+        return ticket.isChecked()
+                ? new Entry(ticket.getId(), copy(ticket), ticketWeight, Long.MAX_VALUE, segment.collected)
+                : new Entry(ticket.getId(), copy(ticket), ticketWeight, nanoClock.getAsLong() + uncheckedTtlNanos, null);
+    }
+
+    private void putEntry(Segment segment, String ticketId, Entry entry) {
+        segment.purgeCollected();
+        Entry previous = segment.entries.get(ticketId);
+        if (previous != null && previous.isChecked() && (entry == null || !entry.isChecked())
+                && previous.get() != null) {
+            return;
+        }
+        segment.remove(ticketId);
+        if (entry != null) {
+            segment.entries.put(ticketId, entry);
+            segment.weight += entry.weight;
+            segment.evictEldest();
+        }
+    }
+
+    private static long weightOf(Ticket ticket) {
+        return 1 + ticket.getLines().size();
+    }
+
+    private static Ticket copy(Ticket ticket) {
+        return new Ticket(ticket.getId(), ticket.isChecked(), LineSet.copyOf(ticket.getLines()));
+    }
+
+    /**
+     * Tickets of a share of the IDs, guarded by the lock of the segment.
+     */
+    private final class Segment {
+
+        private final long maxWeight;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final ReferenceQueue<Ticket> collected = new ReferenceQueue<>();
+        private long weight;
+        // incremented by each write, to detect the reads which raced with one
+        private long writes;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        private void evictEldest() {
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        private void purgeCollected() {
+            Reference<? extends Ticket> reference;
+            while ((reference = collected.poll()) != null) {
+                Entry entry = ((SoftEntryReference) reference).entry;
+                if (entries.get(entry.ticketId) == entry) {
+                    remove(entry.ticketId);
+                    evictions.increment();
+                }
+            }
+        }
+
+        private void remove(String ticketId) {
+            Entry removed = entries.remove(ticketId);
+            if (removed != null) {
+                weight -= removed.weight;
+            }
+        }
+    }
+
+    /**
+     * Cached ticket, strongly referenced until it expires if unchecked,
+     * or softly referenced if checked.
+     */
+    private static final class Entry {
+
+        private final String ticketId;
+        private final Ticket strongTicket;
+        private final SoftEntryReference softTicket;
+        private final long weight;
+        private final long expiresAtNanos;
+
+        Entry(String ticketId, Ticket ticket, long weight, long expiresAtNanos, ReferenceQueue<Ticket> queue) {
+            this.ticketId = ticketId;
+            this.weight = weight;
+            this.expiresAtNanos = expiresAtNanos;
+            if (queue == null) {
+                this.strongTicket = ticket;
+                this.softTicket = null;
+            } else {
+                this.strongTicket = null;
+                this.softTicket = new SoftEntryReference(ticket, queue, this);
+            }
+        }
+
+        Ticket get() {
+            return softTicket == null ? strongTicket : softTicket.get();
+        }
+
+        boolean isChecked() {
+            return softTicket != null;
+        }
+
+        boolean isExpired(long nowNanos) {
+            return expiresAtNanos != Long.MAX_VALUE && nowNanos - expiresAtNanos >= 0;
+        }
+    }
+
+    private static final class SoftEntryReference extends SoftReference<Ticket> {
+
+        private final Entry entry;
+
+        SoftEntryReference(Ticket ticket, ReferenceQueue<Ticket> queue, Entry entry) {
+            super(ticket, queue);
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package exercises.lottery.data;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the statistics of the {@link TicketCache} through the actuator metrics endpoint.
+ */
+@Component
+public class TicketCacheMetrics implements PublicMetrics {
+
+    private final TicketCache ticketCache;
+
+    @Autowired
+    TicketCacheMetrics(TicketCache ticketCache) {
+        this.ticketCache = ticketCache;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("cache.tickets.hits", ticketCache.hitCount()));
+        metrics.add(new Metric<>("cache.tickets.misses", ticketCache.missCount()));
+        metrics.add(new Metric<>("cache.tickets.evictions", ticketCache.evictionCount()));
+        metrics.add(new Metric<>("cache.tickets.size", ticketCache.size()));
+        metrics.add(new Metric<>("cache.tickets.weight", ticketCache.weight()));
+        return metrics;
+    }
+}
@@ -0,0 +1,101 @@
+package exercises.lottery.data;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.DBObject;
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineSet;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Conversions of the lines of the tickets stored in MongoDB.
+ *
+ * With the 'documents' layout, each line is stored as a sub-document with an array
+ * of numbers and an outcome, as mapped by default. With the 'compact' layout, each
+ * line is stored as its packed code (see {@link exercises.lottery.domain.LineCodes}),
+ * a single int64 which also holds the outcome, so the lines of a ticket are an array
+ * of longs under the same field. Lines are read in either layout, so tickets stored
+ * before switching layouts can still be read, and migrated at any time.
+ */
+public final class TicketConversions {
+
+    public static final String DOCUMENTS_LAYOUT = "documents";
+    public static final String COMPACT_LAYOUT = "compact";
+
+    private TicketConversions() {
+    }
+
+    /**
+     * @param layout Layout in which to write the lines ('documents' or 'compact')
+     * @return Conversions to register in the MongoDB converter
+     */
+    public static CustomConversions customConversions(String layout) {
+        switch (layout) {
+            case DOCUMENTS_LAYOUT:
+                return new CustomConversions(Collections.singletonList(LinesReadingConverter.INSTANCE));
+            case COMPACT_LAYOUT:
+                return new CustomConversions(Arrays.asList(LinesReadingConverter.INSTANCE, CompactLinesWritingConverter.INSTANCE));
+            default:
+                throw new IllegalArgumentException("Unknown ticket storage layout: " + layout);
+        }
+    }
+
+    /**
+     * Reads lines stored in either layout.
+     */
+    @ReadingConverter
+    enum LinesReadingConverter implements Converter<BasicDBList, LineSet> {
+
+        INSTANCE;
+
+        @Override
+        public LineSet convert(BasicDBList source) {
+            LineSet lines = new LineSet(source.size());
+            for (Object element : source) {
+                if (element instanceof Number) {
+                    lines.addCode(((Number) element).longValue());
+                } else if (element instanceof DBObject) {
+                    lines.add(toLine((DBObject) element));
+                } else {
+                    throw new IllegalArgumentException("Unexpected stored line: " + element);
+                }
+            }
+            return lines;
+        }
+
+        private static Line toLine(DBObject document) {
+            List<?> storedNumbers = (List<?>) document.get("numbers");
+            int[] numbers = new int[storedNumbers.size()];
+            for (int i = 0; i < numbers.length; i++) {
+                numbers[i] = ((Number) storedNumbers.get(i)).intValue();
+            }
+            // the outcome is missing when it was not fetched
+            Object outcome = document.get("outcome");
+            return outcome == null ? new Line(numbers) : new Line(numbers, ((Number) outcome).intValue());
+        }
+    }
+
+    /**
+     * Writes lines as an array of their codes.
+     */
+    @WritingConverter
+    enum CompactLinesWritingConverter implements Converter<LineSet, BasicDBList> {
+
+        INSTANCE;
+
+        @Override
+        public BasicDBList convert(LineSet source) {
+            BasicDBList codes = new BasicDBList();
+            for (int i = 0; i < source.size(); i++) {
+                codes.add(source.codeAt(i));
+            }
+            return codes;
+        }
+    }
+}
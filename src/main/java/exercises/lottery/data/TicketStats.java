@@ -0,0 +1,153 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.LineCodes;
+import exercises.lottery.domain.LineSet;
+import exercises.lottery.domain.Ticket;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Aggregates of the stored tickets: how many are checked and unchecked,
+ * and how many lines of the checked tickets have each outcome.
+ * Also used for the changes made to them by a write.
+ */
+public class TicketStats {
+
+    private static final TicketStats EMPTY = new TicketStats(0, 0, Collections.emptyMap());
+
+    private final long checkedTickets;
+    private final long uncheckedTickets;
+    private final SortedMap<Integer, Long> linesByOutcome;
+
+    /**
+     * @param checkedTickets Number of checked tickets
+     * @param uncheckedTickets Number of unchecked tickets
+     * @param linesByOutcome Number of lines of the checked tickets with each outcome
+     */
+    public TicketStats(long checkedTickets, long uncheckedTickets, Map<Integer, Long> linesByOutcome) {
+        this.checkedTickets = checkedTickets;
+        this.uncheckedTickets = uncheckedTickets;
+        SortedMap<Integer, Long> nonZero = new TreeMap<>();
+        linesByOutcome.forEach((outcome, lines) -> {
+            if (lines != 0) {
+                nonZero.put(outcome, lines);
+            }
+        });
+        this.linesByOutcome = Collections.unmodifiableSortedMap(nonZero);
+    }
+
+    public static TicketStats empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param checked Whether the ticket is checked
+     * @param lines Lines of the ticket
+     * @return Stats of a single ticket, the lines being counted only if it is checked
+     */
+    public static TicketStats ofTicket(boolean checked, LineSet lines) {
+        if (!checked) {
+            return new TicketStats(0, 1, Collections.emptyMap());
+        }
+        return new TicketStats(1, 0, countOutcomes(lines));
+    }
+
+    /**
+     * @param ticket Ticket which is stored
+     * @return Change made to the stats by storing the ticket
+     */
+    public static TicketStats ofCreated(Ticket ticket) {
+        return ofTicket(ticket.isChecked(), ticket.getLines());
+    }
+
+    /**
+     * @param lines Lines of a ticket which was unchecked, with their outcomes
+     * @return Change made to the stats by checking the ticket
+     */
+    public static TicketStats ofChecked(LineSet lines) {
+        return new TicketStats(1, -1, countOutcomes(lines));
+    }
+
+    /**
+     * @return Sum of these stats and the given ones
+     */
+    public TicketStats plus(TicketStats other) {
+        Map<Integer, Long> lines = new TreeMap<>(linesByOutcome);
+        other.linesByOutcome.forEach((outcome, count) -> lines.merge(outcome, count, Long::sum));
+        return new TicketStats(checkedTickets + other.checkedTickets, uncheckedTickets + other.uncheckedTickets, lines);
+    }
+
+    /**
+     * @return Stats with the opposite counts, to undo these
+     */
+    public TicketStats negate() {
+        Map<Integer, Long> lines = new TreeMap<>();
+        linesByOutcome.forEach((outcome, count) -> lines.put(outcome, -count));
+        return new TicketStats(-checkedTickets, -uncheckedTickets, lines);
+    }
+
+    public boolean isEmpty() {
+        return checkedTickets == 0 && uncheckedTickets == 0 && linesByOutcome.isEmpty();
+    }
+
+    public long getCheckedTickets() {
+        return checkedTickets;
+    }
+
+    public long getUncheckedTickets() {
+        return uncheckedTickets;
+    }
+
+    /**
+     * @return Number of lines with each outcome, in increasing order of outcome (outcomes without lines are left out)
+     */
+    public SortedMap<Integer, Long> getLinesByOutcome() {
+        return linesByOutcome;
+    }
+
+    public long getLinesWithOutcome(int outcome) {
+        return linesByOutcome.getOrDefault(outcome, 0L);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TicketStats)) {
+            return false;
+        }
+        TicketStats other = (TicketStats) obj;
+        return checkedTickets == other.checkedTickets
+                && uncheckedTickets == other.uncheckedTickets
+                && linesByOutcome.equals(other.linesByOutcome);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(checkedTickets);
+        result = 31 * result + Long.hashCode(uncheckedTickets);
+        return 31 * result + linesByOutcome.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "TicketStats{checkedTickets=" + checkedTickets + ", uncheckedTickets=" + uncheckedTickets
+                + ", linesByOutcome=" + linesByOutcome + "}";
+    }
+
+
+    private static Map<Integer, Long> countOutcomes(LineSet lines) {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            int outcome = LineCodes.outcome(lines.codeAt(i));
+            if (outcome >= 0) {
+                counts.merge(outcome, 1L, Long::sum);
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,45 @@
+package exercises.lottery.data;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process counters of the {@link TicketStats} of a store, updated as tickets are written.
+ * The counters are striped, so writers do not contend on them, and they are read
+ * without locking: a snapshot taken while tickets are written may be off by those writes.
+ */
+public class TicketStatsCounters {
+
+    private final LongAdder checkedTickets = new LongAdder();
+    private final LongAdder uncheckedTickets = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> linesByOutcome = new ConcurrentHashMap<>();
+
+    public void add(TicketStats stats) {
+        checkedTickets.add(stats.getCheckedTickets());
+        uncheckedTickets.add(stats.getUncheckedTickets());
+        stats.getLinesByOutcome().forEach((outcome, lines) ->
+                linesByOutcome.computeIfAbsent(outcome, ignored -> new LongAdder()).add(lines));
+    }
+
+    public void subtract(TicketStats stats) {
+        add(stats.negate());
+    }
+
+    public void reset() {
+        checkedTickets.reset();
+        uncheckedTickets.reset();
+        linesByOutcome.clear();
+    }
+
+    /**
+     * @return Current values of the counters
+     */
+    public TicketStats snapshot() {
+        Map<Integer, Long> lines = new TreeMap<>();
+        linesByOutcome.forEach((outcome, count) -> lines.put(outcome, count.sum()));
+        return new TicketStats(checkedTickets.sum(), uncheckedTickets.sum(), lines);
+    }
+}
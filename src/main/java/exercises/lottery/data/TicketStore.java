@@ -0,0 +1,166 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.LineSet;
+import exercises.lottery.domain.Ticket;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.List;
+
+/**
+ * Storage of the tickets, and of the checkpoints of the jobs which process them.
+ *
+ * Tickets are identified by IDs in the format of MongoDB ObjectIds, and listed in ID order,
+ * which is also the order in which they were created. The implementation is selected
+ * with a Spring profile: {@link LotteryDao} stores the tickets in MongoDB, with the
+ * 'offheap' profile {@link OffHeapTicketStore} keeps them in the memory of the process,
+ * and with the 'journal' profile {@link JournalTicketStore} appends them to files on disk.
+ */
+public interface TicketStore {
+
+    /**
+     * @return All the tickets
+     */
+    List<Ticket> getAllTickets();
+
+    /**
+     * @param ticketId ID of the ticket to retrieve
+     * @return Ticket with the given ID, or null if it does not exist
+     */
+    Ticket getTicketById(String ticketId);
+
+    /**
+     * Retrieves only the ID and checked value of a ticket,
+     * for the checks which do not need its lines.
+     * @param ticketId ID of the ticket to retrieve
+     * @return Ticket with the given ID, without its lines, or null if it does not exist
+     */
+    Ticket getTicketStatusById(String ticketId);
+
+    /**
+     * @param checked Checked parameter of the tickets to retrieve
+     * @return Tickets with the given checked value
+     */
+    List<Ticket> getTicketsByChecked(boolean checked);
+
+    /**
+     * @return Iterator over all the tickets, which must be closed by the caller
+     */
+    CloseableIterator<Ticket> streamAllTickets();
+
+    /**
+     * @param checked Checked parameter of the tickets to retrieve
+     * @return Iterator over the tickets with the given checked value, which must be closed by the caller
+     */
+    CloseableIterator<Ticket> streamTicketsByChecked(boolean checked);
+
+    /**
+     * Retrieves a page of tickets, in ID order, starting after the given ID.
+     * @param checked Checked parameter of the tickets to retrieve (null for all tickets)
+     * @param afterId ID of the last ticket of the previous page (null for the first page)
+     * @param limit Maximum number of tickets to retrieve
+     * @return Tickets in the page
+     * @throws IllegalArgumentException if the given ID is not a valid ticket ID
+     */
+    List<Ticket> getTicketsPage(Boolean checked, String afterId, int limit);
+
+    /**
+     * @param ticket Ticket to store, which gets its ID if it does not have one yet
+     * @return Stored Ticket
+     * @throws DuplicateKeyException if a ticket with the same ID already exists
+     */
+    Ticket createTicket(Ticket ticket);
+
+    /**
+     * @param tickets Tickets to store, which get their IDs if they do not have one yet
+     * @return Stored tickets, with their IDs
+     */
+    List<Ticket> createTickets(List<Ticket> tickets);
+
+    /**
+     * Replaces the lines of the ticket, which only succeeds if the ticket is not checked yet.
+     * @param ticket Ticket to amend
+     * @return Amended ticket
+     * @throws IllegalArgumentException if the ticket was checked
+     * @throws EmptyResultDataAccessException if the ticket does not exist
+     */
+    Ticket amendTicket(Ticket ticket);
+
+    /**
+     * Appends the given lines to the lines of the ticket, atomically, which only succeeds
+     * if the ticket is not checked yet and would not end up with more than the given number
+     * of lines. Lines which the ticket already has are not added again, but are counted
+     * against the limit.
+     * @param ticketId ID of the ticket to amend
+     * @param newLines Lines to add to the ticket
+     * @param maxNumberOfLines Maximum number of lines of a ticket
+     * @return Amended ticket, as stored
+     * @throws IllegalArgumentException if the ticket was checked or would have too many lines
+     * @throws EmptyResultDataAccessException if the ticket does not exist
+     */
+    Ticket addLines(String ticketId, LineSet newLines, int maxNumberOfLines);
+
+    /**
+     * Marks the ticket as checked and stores the outcomes of its lines, atomically,
+     * which only succeeds if the ticket is not checked yet.
+     * @param ticket Ticket to check, containing the outcomes of its lines
+     * @return Checked ticket, as stored
+     * @throws EmptyResultDataAccessException if the ticket does not exist or was already checked
+     */
+    Ticket checkTicket(Ticket ticket);
+
+    /**
+     * Marks the given tickets as checked and stores the outcomes of their lines.
+     * As in {@link #checkTicket(Ticket)}, tickets which were already checked are left untouched.
+     * @param tickets Tickets to check, containing the outcomes of their lines
+     * @return Number of tickets which were checked by this operation
+     */
+    int checkTickets(List<Ticket> tickets);
+
+    /**
+     * Retrieves the checked tickets with the highest payouts, highest first, and in ID order
+     * for the same payout. The payout of a ticket is the sum of the outcomes of its lines,
+     * stored with the ticket when it is checked. Tickets which did not win are left out.
+     * @param limit Maximum number of tickets to retrieve
+     * @return Winning tickets with the highest payouts
+     */
+    List<Ticket> getTopWinners(int limit);
+
+    /**
+     * @return Sum of the payouts of all the checked tickets
+     */
+    long getTotalPayout();
+
+    /**
+     * Retrieves the stats of the tickets, which are kept up to date as tickets
+     * are created and checked, so they are read without going through the tickets.
+     * @return Number of checked and unchecked tickets, and of lines with each outcome
+     */
+    TicketStats getTicketStats();
+
+    /**
+     * Counts the stats of the tickets again from all the stored tickets,
+     * and replaces the stats kept up to date with them. Unless the store is locked meanwhile,
+     * it should only be done while no tickets are written.
+     * @return Stats counted from the tickets
+     */
+    TicketStats rebuildTicketStats();
+
+    /**
+     * @param jobName Name of the job
+     * @return ID of the last ticket processed by the job, or null if there is no checkpoint
+     */
+    String getCheckpoint(String jobName);
+
+    /**
+     * @param jobName Name of the job
+     * @param lastId ID of the last ticket processed by the job
+     */
+    void saveCheckpoint(String jobName, String lastId);
+
+    /**
+     * @param jobName Name of the job whose checkpoint should be removed
+     */
+    void removeCheckpoint(String jobName);
+}
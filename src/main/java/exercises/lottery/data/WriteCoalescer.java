@@ -0,0 +1,217 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.metrics.LotteryMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the tickets created and checked by concurrent requests into batches,
+ * each written by {@link CachingLotteryDao#writeTickets(List, List)} with a single bulk write,
+ * so that they share a round trip to the database and keep the ticket cache up to date.
+ *
+ * A single thread takes the queued writes: a batch is written once the first write in it
+ * has waited for the window, or once it has the maximum number of writes. With a window
+ * of zero, the writes queued while the previous batch was written are written together.
+ * The future of each write is completed with its own result or error, on another
+ * executor, so that the callers do not delay the next batch.
+ */
+@Component
+@ConditionalOnExpression("${writeCoalescing:false} and " + LotteryDao.MONGO_STORE_CONDITION)
+public class WriteCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteCoalescer.class);
+    // how often an idle flusher checks whether it was closed
+    private static final long CLOSE_CHECK_MILLIS = 100;
+
+    private final CachingLotteryDao lotteryDao;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Executor completionExecutor;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    private final LotteryMetrics.Summary batchSizes;
+    private final LotteryMetrics.Timer flushTimer;
+
+    @Autowired
+    WriteCoalescer(CachingLotteryDao lotteryDao,
+                   @Qualifier("writeCoalescingWindowMicros") long windowMicros,
+                   @Qualifier("writeCoalescingMaxBatchSize") int maxBatchSize,
+                   @Qualifier("writeCoalescingQueueSize") int queueSize,
+                   LotteryMetrics metrics) {
+        this(lotteryDao, windowMicros, maxBatchSize, queueSize, ForkJoinPool.commonPool(), metrics);
+    }
+
+    /**
+     * @param lotteryDao DAO which writes the batches
+     * @param windowMicros Time the first write of a batch waits for others
+     * @param maxBatchSize Maximum number of writes in a batch
+     * @param queueSize Maximum number of writes waiting to be written, beyond which writes are rejected
+     * @param completionExecutor Executor on which the futures of the writes are completed
+     * @param metrics Metrics in which the batch sizes and write times are recorded
+     */
+    WriteCoalescer(CachingLotteryDao lotteryDao, long windowMicros, int maxBatchSize, int queueSize,
+                   Executor completionExecutor, LotteryMetrics metrics) {
+        if (windowMicros < 0 || maxBatchSize <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("Invalid write coalescing configuration.");
+        }
+        this.lotteryDao = lotteryDao;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+        this.completionExecutor = completionExecutor;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSizes = metrics.summary("lottery.coalescer.batchSize");
+        this.flushTimer = metrics.timer("lottery.coalescer.flush");
+        flusher = new Thread(this::flushUntilClosed, "write-coalescer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * @see TicketStore#createTicket(Ticket)
+     */
+    public CompletableFuture<Ticket> createTicket(Ticket ticket) {
+        return enqueue(ticket, false);
+    }
+
+    /**
+     * @see TicketStore#checkTicket(Ticket)
+     */
+    public CompletableFuture<Ticket> checkTicket(Ticket ticket) {
+        return enqueue(ticket, true);
+    }
+
+    /**
+     * Stops taking writes, and writes the ones which are already queued.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        closed = true;
+        flusher.join();
+        // writes queued after the last batch was taken
+        PendingWrite write;
+        while ((write = queue.poll()) != null) {
+            write.future.completeExceptionally(new IllegalStateException("Write coalescer is closed."));
+        }
+    }
+
+
+    private CompletableFuture<Ticket> enqueue(Ticket ticket, boolean check) {
+        PendingWrite write = new PendingWrite(ticket, check);
+        if (closed) {
+            write.future.completeExceptionally(new IllegalStateException("Write coalescer is closed."));
+        } else if (!queue.offer(write)) {
+            logger.error("Cannot queue write of ticket, {} writes are already waiting", queue.size());
+            write.future.completeExceptionally(new RejectedExecutionException("Too many writes waiting to be written."));
+        } else if (closed && queue.remove(write)) {
+            // closed while queued, after the queue may have been drained for the last time
+            write.future.completeExceptionally(new IllegalStateException("Write coalescer is closed."));
+        }
+        return write.future;
+    }
+
+    private void flushUntilClosed() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                // the flusher is not interrupted on close, as that could abort a batch being written
+                PendingWrite first = closed ? queue.poll() : queue.poll(CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fill(batch, first.queuedNanos + windowNanos);
+            } catch (InterruptedException ex) {
+                logger.error("Write coalescer interrupted, writing the queued tickets without waiting");
+                closed = true;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds the writes queued until the deadline to the batch, up to its maximum size.
+     */
+    private void fill(List<PendingWrite> batch, long deadlineNanos) throws InterruptedException {
+        while (batch.size() < maxBatchSize) {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            PendingWrite next = remainingNanos > 0 && !closed
+                    ? queue.poll(remainingNanos, TimeUnit.NANOSECONDS)
+                    : queue.poll();
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        List<PendingWrite> creates = new ArrayList<>(batch.size());
+        List<PendingWrite> checks = new ArrayList<>(batch.size());
+        List<Ticket> toCreate = new ArrayList<>(batch.size());
+        List<Ticket> toCheck = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            (write.check ? checks : creates).add(write);
+            (write.check ? toCheck : toCreate).add(write.ticket);
+        }
+        batchSizes.record(batch.size());
+        long start = flushTimer.start();
+        try {
+            List<RuntimeException> errors = lotteryDao.writeTickets(toCreate, toCheck);
+            for (int i = 0; i < creates.size(); i++) {
+                complete(creates.get(i), errors.get(i));
+            }
+            for (int i = 0; i < checks.size(); i++) {
+                complete(checks.get(i), errors.get(creates.size() + i));
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Error writing batch of {} tickets", batch.size(), ex);
+            batch.forEach(write -> complete(write, ex));
+        } finally {
+            flushTimer.stop(start);
+        }
+    }
+
+    private void complete(PendingWrite write, RuntimeException error) {
+        completionExecutor.execute(() -> {
+            if (error == null) {
+                write.future.complete(write.ticket);
+            } else {
+                write.future.completeExceptionally(error);
+            }
+        });
+    }
+
+    private static class PendingWrite {
+
+        private final Ticket ticket;
+        private final boolean check;
+        private final long queuedNanos = System.nanoTime();
+        private final CompletableFuture<Ticket> future = new CompletableFuture<>();
+
+        PendingWrite(Ticket ticket, boolean check) {
+            this.ticket = ticket;
+            this.check = check;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package exercises.lottery.domain;
+
+/**
+ * Utility class to pack lines into a single long code.
+ *
+ * Layout of a code (least significant bits first):
+ * <ul>
+ *     <li>bits 0-47: up to six numbers, 8 bits each (values 0 to 255)</li>
+ *     <li>bits 48-51: size of the line</li>
+ *     <li>bits 52-63: outcome of the line plus one (-1 to 4094)</li>
+ * </ul>
+ * Two packed lines are equal if and only if their codes are equal.
+ */
+public final class LineCodes {
+
+    public static final int MAX_LINE_SIZE = 6;
+    public static final int MAX_NUMBER = 0xFF;
+    public static final int MAX_OUTCOME = 0xFFF - 1;
+
+    private static final int NUMBER_BITS = 8;
+    private static final int SIZE_SHIFT = 48;
+    private static final int OUTCOME_SHIFT = 52;
+    private static final long NUMBERS_AND_SIZE_MASK = (1L << OUTCOME_SHIFT) - 1;
+
+    private LineCodes() {
+    }
+
+    /**
+     * @param numbers Numbers of the line
+     * @param outcome Outcome of the line (-1 if not checked)
+     * @return Code of the line
+     */
+    public static long encode(int[] numbers, int outcome) {
+        if (!isEncodable(numbers, outcome)) {
+            throw new IllegalArgumentException("Line cannot be packed.");
+        }
+        long code = 0;
+        for (int i = 0; i < numbers.length; i++) {
+            code |= ((long) numbers[i]) << (NUMBER_BITS * i);
+        }
+        code |= ((long) numbers.length) << SIZE_SHIFT;
+        return withOutcome(code, outcome);
+    }
+
+    /**
+     * @param line Line to encode
+     * @return Code of the line
+     */
+    public static long encode(Line line) {
+        return encode(line.getNumbers(), line.getOutcome());
+    }
+
+    /**
+     * @param numbers Numbers of the line
+     * @param outcome Outcome of the line
+     * @return true if the line fits in a code
+     */
+    public static boolean isEncodable(int[] numbers, int outcome) {
+        if (numbers == null || numbers.length > MAX_LINE_SIZE || outcome < -1 || outcome > MAX_OUTCOME) {
+            return false;
+        }
+        for (int number : numbers) {
+            if (number < 0 || number > MAX_NUMBER) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param code Code of a line
+     * @return Size of the line
+     */
+    public static int size(long code) {
+        return (int) ((code >>> SIZE_SHIFT) & 0xF);
+    }
+
+    /**
+     * @param code Code of a line
+     * @param position Position of the number in the line
+     * @return Number of the line in the given position
+     */
+    public static int number(long code, int position) {
+        return (int) ((code >>> (NUMBER_BITS * position)) & MAX_NUMBER);
+    }
+
+    /**
+     * @param code Code of a line
+     * @return Numbers of the line
+     */
+    public static int[] numbers(long code) {
+        int[] numbers = new int[size(code)];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = number(code, i);
+        }
+        return numbers;
+    }
+
+    /**
+     * @param code Code of a line
+     * @return Outcome of the line (-1 if not checked)
+     */
+    public static int outcome(long code) {
+        return (int) (code >>> OUTCOME_SHIFT) - 1;
+    }
+
+    /**
+     * @param code Code of a line
+     * @param outcome Outcome to set
+     * @return Code of the same line with the given outcome
+     */
+    public static long withOutcome(long code, int outcome) {
+        if (outcome < -1 || outcome > MAX_OUTCOME) {
+            throw new IllegalArgumentException("Line cannot be packed.");
+        }
+        return (code & NUMBERS_AND_SIZE_MASK) | (((long) outcome + 1) << OUTCOME_SHIFT);
+    }
+
+    /**
+     * @param code Code of a line
+     * @return Line object for the given code
+     */
+    public static Line toLine(long code) {
+        return new Line(numbers(code), outcome(code));
+    }
+
+    /**
+     * @param code Code of a line
+     * @return Same value as the hashCode of the corresponding Line object
+     */
+    public static int hashCode(long code) {
+        int numbersHash = 1;
+        int size = size(code);
+        for (int i = 0; i < size; i++) {
+            numbersHash = 31 * numbersHash + number(code, i);
+        }
+        int result = 17;
+        result = 31 * result + numbersHash;
+        result = 31 * result + outcome(code);
+        return result;
+    }
+}
@@ -0,0 +1,247 @@
+package exercises.lottery.domain;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Set of lines backed by an array of packed line codes (see {@link LineCodes}).
+ *
+ * Iteration follows insertion order. Membership is checked with a linear
+ * scan over the codes, which is faster than hashing for the small number
+ * of lines a ticket can hold. Line objects are only created when iterating.
+ */
+public class LineSet extends AbstractSet<Line> {
+
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private long[] codes;
+    private int size;
+    private int modifications;
+
+    public LineSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LineSet(int initialCapacity) {
+        codes = new long[Math.max(initialCapacity, 1)];
+    }
+
+    /**
+     * @param lines Lines to copy
+     * @return New LineSet containing the given lines
+     */
+    public static LineSet copyOf(Collection<Line> lines) {
+        LineSet copy = new LineSet(lines.size());
+        copy.addAll(lines);
+        return copy;
+    }
+
+    /**
+     * @param code Code of a line
+     * @return true if the set contains the line with the given code
+     */
+    public boolean containsCode(long code) {
+        for (int i = 0; i < size; i++) {
+            if (codes[i] == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param code Code of the line to add
+     * @return true if the line was not yet in the set
+     */
+    public boolean addCode(long code) {
+        if (containsCode(code)) {
+            return false;
+        }
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, size * 2);
+        }
+        codes[size++] = code;
+        modifications++;
+        return true;
+    }
+
+    /**
+     * @param code Code of the line to remove
+     * @return true if the line was in the set
+     */
+    public boolean removeCode(long code) {
+        for (int i = 0; i < size; i++) {
+            if (codes[i] == code) {
+                removeAt(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param index Position of the line, in insertion order
+     * @return Code of the line in the given position
+     */
+    public long codeAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return codes[index];
+    }
+
+    /**
+     * @return Copy of the codes of the lines in the set, in insertion order
+     */
+    public long[] toCodeArray() {
+        return Arrays.copyOf(codes, size);
+    }
+
+    /**
+     * @return Sum of the outcomes of the lines, which is what the ticket pays out once it is checked
+     */
+    public int totalOutcome() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += Math.max(LineCodes.outcome(codes[i]), 0);
+        }
+        return total;
+    }
+
+    /**
+     * @return Highest outcome of the lines (-1 if there are no lines or they are not checked)
+     */
+    public int bestOutcome() {
+        int best = -1;
+        for (int i = 0; i < size; i++) {
+            best = Math.max(best, LineCodes.outcome(codes[i]));
+        }
+        return best;
+    }
+
+    @Override
+    public boolean add(Line line) {
+        return addCode(LineCodes.encode(line));
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Line> lines) {
+        if (lines instanceof LineSet) {
+            LineSet other = (LineSet) lines;
+            boolean changed = false;
+            for (int i = 0; i < other.size; i++) {
+                changed |= addCode(other.codes[i]);
+            }
+            return changed;
+        }
+        return super.addAll(lines);
+    }
+
+    @Override
+    public boolean contains(Object obj) {
+        if (!(obj instanceof Line)) {
+            return false;
+        }
+        Line line = (Line) obj;
+        return LineCodes.isEncodable(line.getNumbers(), line.getOutcome())
+                && containsCode(LineCodes.encode(line));
+    }
+
+    @Override
+    public boolean remove(Object obj) {
+        if (!(obj instanceof Line)) {
+            return false;
+        }
+        Line line = (Line) obj;
+        return LineCodes.isEncodable(line.getNumbers(), line.getOutcome())
+                && removeCode(LineCodes.encode(line));
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modifications++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Line> iterator() {
+        return new Iterator<Line>() {
+
+            private int next;
+            private int last = -1;
+            private int expectedModifications = modifications;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Line next() {
+                if (expectedModifications != modifications) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                last = next++;
+                return LineCodes.toLine(codes[last]);
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                if (expectedModifications != modifications) {
+                    throw new ConcurrentModificationException();
+                }
+                removeAt(last);
+                next = last;
+                last = -1;
+                expectedModifications = modifications;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof LineSet) {
+            LineSet other = (LineSet) obj;
+            if (other.size != size) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (!other.containsCode(codes[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for (int i = 0; i < size; i++) {
+            result += LineCodes.hashCode(codes[i]);
+        }
+        return result;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(codes, index + 1, codes, index, size - index - 1);
+        size--;
+        modifications++;
+    }
+}
@@ -0,0 +1,62 @@
+package exercises.lottery.domain;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import exercises.lottery.views.CheckedTicketView;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * JSON serializer which writes the lines of a ticket straight from their
+ * packed codes, producing the same output as the default Line serialization.
+ * The outcome is only included when no view is active or when serializing
+ * with the CheckedTicketView.
+ */
+public class LineSetSerializer extends JsonSerializer<Set<Line>> {
+
+    @Override
+    public void serialize(Set<Line> lines, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        Class<?> activeView = provider.getActiveView();
+        boolean includeOutcome = activeView == null || CheckedTicketView.class.isAssignableFrom(activeView);
+
+        generator.writeStartArray();
+        if (lines instanceof LineSet) {
+            LineSet lineSet = (LineSet) lines;
+            for (int i = 0; i < lineSet.size(); i++) {
+                long code = lineSet.codeAt(i);
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("numbers");
+                int lineSize = LineCodes.size(code);
+                for (int position = 0; position < lineSize; position++) {
+                    generator.writeNumber(LineCodes.number(code, position));
+                }
+                generator.writeEndArray();
+                if (includeOutcome) {
+                    generator.writeNumberField("outcome", LineCodes.outcome(code));
+                }
+                generator.writeEndObject();
+            }
+        } else {
+            for (Line line : lines) {
+                generator.writeStartObject();
+                generator.writeFieldName("numbers");
+                if (line.getNumbers() == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeStartArray();
+                    for (int number : line.getNumbers()) {
+                        generator.writeNumber(number);
+                    }
+                    generator.writeEndArray();
+                }
+                if (includeOutcome) {
+                    generator.writeNumberField("outcome", line.getOutcome());
+                }
+                generator.writeEndObject();
+            }
+        }
+        generator.writeEndArray();
+    }
+}
@@ -1,11 +1,11 @@
 package exercises.lottery.domain;
 
 import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import exercises.lottery.views.CheckedTicketView;
 import exercises.lottery.views.UncheckedTicketView;
 import org.springframework.data.annotation.Id;
 
-import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -23,26 +23,27 @@ public class Ticket {
     private boolean checked;
 
     @JsonView({UncheckedTicketView.class, CheckedTicketView.class})
-    private Set<Line> lines;
+    @JsonSerialize(using = LineSetSerializer.class)
+    private LineSet lines;
 
 
     public Ticket() {
-        lines = new LinkedHashSet<>();
+        lines = new LineSet();
     }
 
     public Ticket(Set<Line> lines) {
-        this.lines = lines;
+        this.lines = toLineSet(lines);
     }
 
     public Ticket(boolean checked, Set<Line> lines) {
         this.checked = checked;
-        this.lines = lines;
+        this.lines = toLineSet(lines);
     }
 
     public Ticket(String id, boolean checked, Set<Line> lines) {
         this.id = id;
         this.checked = checked;
-        this.lines = lines;
+        this.lines = toLineSet(lines);
     }
 
     public String getId() {
@@ -61,18 +62,22 @@ public class Ticket {
         this.checked = checked;
     }
 
-    public Set<Line> getLines() {
+    public LineSet getLines() {
         return lines;
     }
 
     public void setLines(Set<Line> lines) {
-        this.lines = lines;
+        this.lines = toLineSet(lines);
     }
 
     public void addLines(Set<Line> newLines) {
         lines.addAll(newLines);
     }
 
+    private static LineSet toLineSet(Set<Line> lines) {
+        return lines instanceof LineSet ? (LineSet) lines : LineSet.copyOf(lines);
+    }
+
 
     @Override
     public boolean equals(Object obj) {
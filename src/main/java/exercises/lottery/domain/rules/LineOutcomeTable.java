@@ -0,0 +1,138 @@
+package exercises.lottery.domain.rules;
+
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineCodes;
+import exercises.lottery.domain.LotteryRules;
+
+import java.util.Arrays;
+
+/**
+ * Dense table with the outcomes of every possible line for a set of rules.
+ *
+ * Each line is encoded as an integer index, reading its numbers as
+ * the digits of a base-(max - min + 1) number (first number being the
+ * most significant digit). The table is generated once from the
+ * given rules, so any lookup afterwards is a single array read.
+ */
+public final class LineOutcomeTable {
+
+    private final int lineSize;
+    private final int minLineValue;
+    private final int maxLineValue;
+    private final int base;
+
+    private final int[] outcomes;
+
+    private LineOutcomeTable(LotteryRules rules) {
+        lineSize = rules.getLineSize();
+        minLineValue = rules.getMinLineValue();
+        maxLineValue = rules.getMaxLineValue();
+        base = maxLineValue - minLineValue + 1;
+
+        long size = 1;
+        for (int i = 0; i < lineSize; i++) {
+            size *= base;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Line domain is too large to be precomputed.");
+            }
+        }
+
+        outcomes = new int[(int) size];
+        for (int index = 0; index < outcomes.length; index++) {
+            outcomes[index] = rules.getLineOutcome(new Line(numbersOf(index)));
+        }
+    }
+
+    /**
+     * @param rules Rules used to determine the outcome of each line
+     * @return Table containing the outcomes of all the lines allowed by the given rules
+     */
+    public static LineOutcomeTable of(LotteryRules rules) {
+        return new LineOutcomeTable(rules);
+    }
+
+    /**
+     * @param rules Rules used to determine the outcome of each line
+     * @return The table of the given rules if they are precomputed, otherwise a new table
+     */
+    public static LineOutcomeTable forRules(LotteryRules rules) {
+        if (rules instanceof PrecomputedLotteryRules) {
+            return ((PrecomputedLotteryRules) rules).getTable();
+        }
+        return new LineOutcomeTable(rules);
+    }
+
+    /**
+     * @return Number of possible lines (size of the table).
+     */
+    public int size() {
+        return outcomes.length;
+    }
+
+    /**
+     * @param numbers Numbers of a line
+     * @return Index of the line in the table, or -1 if the line is not valid
+     */
+    public int indexOf(int[] numbers) {
+        if (numbers == null || numbers.length != lineSize) {
+            return -1;
+        }
+        int index = 0;
+        for (int number : numbers) {
+            if (number < minLineValue || number > maxLineValue) {
+                return -1;
+            }
+            index = index * base + (number - minLineValue);
+        }
+        return index;
+    }
+
+    /**
+     * @param code Packed line (see {@link LineCodes}), the outcome being ignored
+     * @return Index of the line in the table, or -1 if the line is not valid
+     */
+    public int indexOfCode(long code) {
+        if (LineCodes.size(code) != lineSize) {
+            return -1;
+        }
+        int index = 0;
+        for (int position = 0; position < lineSize; position++) {
+            int number = LineCodes.number(code, position);
+            if (number < minLineValue || number > maxLineValue) {
+                return -1;
+            }
+            index = index * base + (number - minLineValue);
+        }
+        return index;
+    }
+
+    /**
+     * @param index Index of a line in the table
+     * @return Numbers of the line with the given index
+     */
+    public int[] numbersOf(int index) {
+        if (index < 0 || index >= outcomes.length) {
+            throw new IllegalArgumentException("Invalid line index.");
+        }
+        int[] numbers = new int[lineSize];
+        int remaining = index;
+        for (int i = lineSize - 1; i >= 0; i--) {
+            numbers[i] = remaining % base + minLineValue;
+            remaining /= base;
+        }
+        return numbers;
+    }
+
+    /**
+     * @param index Index of a line in the table
+     * @return Outcome of the line with the given index
+     */
+    public int outcomeOf(int index) {
+        return outcomes[index];
+    }
+
+    @Override
+    public String toString() {
+        return "LineOutcomeTable: " + Arrays.toString(outcomes);
+    }
+}
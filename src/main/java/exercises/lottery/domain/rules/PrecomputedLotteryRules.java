@@ -0,0 +1,85 @@
+package exercises.lottery.domain.rules;
+
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LotteryRules;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+/**
+ * Implementation of LotteryRules which answers line validation and
+ * outcome requests from a table precomputed from other rules.
+ */
+@Primary
+@Component
+public class PrecomputedLotteryRules implements LotteryRules {
+
+    private final LotteryRules rules;
+    private final LineOutcomeTable table;
+
+    @Autowired
+    public PrecomputedLotteryRules(@Qualifier("simpleLotteryRules") LotteryRules rules) {
+        this.rules = rules;
+        this.table = LineOutcomeTable.of(rules);
+    }
+
+    /**
+     * @return Table with the outcomes of all possible lines
+     */
+    public LineOutcomeTable getTable() {
+        return table;
+    }
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public int getLineSize() {
+        return rules.getLineSize();
+    }
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public int getMinLineValue() {
+        return rules.getMinLineValue();
+    }
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public int getMaxLineValue() {
+        return rules.getMaxLineValue();
+    }
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public int getMaxNumberOfLines() {
+        return table.size();
+    }
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public boolean isLineValid(Line line) {
+        return table.indexOf(line.getNumbers()) >= 0;
+    }
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public int getLineOutcome(Line line) {
+        int index = table.indexOf(line.getNumbers());
+        if (index < 0) {
+            throw new IllegalArgumentException("Line contains invalid numbers.");
+        }
+        return table.outcomeOf(index);
+    }
+}
@@ -0,0 +1,185 @@
+package exercises.lottery.metrics;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.SlidingTimeWindowReservoir;
+import com.codahale.metrics.UniformReservoir;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Timers, counters and distribution summaries of the application,
+ * registered in a Dropwizard MetricRegistry, which the actuator
+ * publishes on its metrics endpoint (with the percentiles of the
+ * timers and summaries).
+ *
+ * The metrics should be obtained once, when the instrumented class is built.
+ * When disabled, the metrics are shared no-op instances, and timers do not
+ * even read the clock.
+ */
+public class LotteryMetrics {
+
+    /**
+     * Reservoir used for the percentiles of timers and summaries:
+     * 'exponential' (biased towards the last five minutes),
+     * 'slidingWindow' (all the values of the last minute) or 'uniform'.
+     */
+    public static final String DEFAULT_RESERVOIR = "exponential";
+
+    private static final LotteryMetrics DISABLED = new LotteryMetrics();
+    private static final Timer NO_OP_TIMER = new Timer() {
+        @Override
+        public long start() {
+            return 0;
+        }
+
+        @Override
+        public void stop(long startNanos) {
+        }
+    };
+    private static final Counter NO_OP_COUNTER = amount -> { };
+    private static final Summary NO_OP_SUMMARY = value -> { };
+
+    private final MetricRegistry registry;
+    private final Supplier<Reservoir> reservoirs;
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Summary> summaries = new ConcurrentHashMap<>();
+
+    /**
+     * @param registry Registry in which to create the metrics
+     * @param reservoir Reservoir used for the percentiles ('exponential', 'slidingWindow' or 'uniform')
+     */
+    public LotteryMetrics(MetricRegistry registry, String reservoir) {
+        this.registry = registry;
+        switch (reservoir) {
+            case "exponential":
+                reservoirs = ExponentiallyDecayingReservoir::new;
+                break;
+            case "slidingWindow":
+                reservoirs = () -> new SlidingTimeWindowReservoir(1, TimeUnit.MINUTES);
+                break;
+            case "uniform":
+                reservoirs = UniformReservoir::new;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown metrics reservoir: " + reservoir);
+        }
+    }
+
+    private LotteryMetrics() {
+        this.registry = null;
+        this.reservoirs = null;
+    }
+
+    /**
+     * @return Metrics which record nothing
+     */
+    public static LotteryMetrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return registry != null;
+    }
+
+    /**
+     * @param name Name of the timer
+     * @return Timer with the given name, created if needed
+     */
+    public Timer timer(String name) {
+        if (!isEnabled()) {
+            return NO_OP_TIMER;
+        }
+        return timers.computeIfAbsent(name, timerName -> {
+            com.codahale.metrics.Timer timer = register(timerName, com.codahale.metrics.Timer.class,
+                    ignored -> new com.codahale.metrics.Timer(reservoirs.get()));
+            return new Timer() {
+                @Override
+                public long start() {
+                    return System.nanoTime();
+                }
+
+                @Override
+                public void stop(long startNanos) {
+                    timer.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                }
+            };
+        });
+    }
+
+    /**
+     * @param name Name of the counter
+     * @return Counter with the given name, created if needed
+     */
+    public Counter counter(String name) {
+        if (!isEnabled()) {
+            return NO_OP_COUNTER;
+        }
+        return counters.computeIfAbsent(name, counterName -> registry.counter(counterName)::inc);
+    }
+
+    /**
+     * @param name Name of the distribution summary
+     * @return Distribution summary with the given name, created if needed
+     */
+    public Summary summary(String name) {
+        if (!isEnabled()) {
+            return NO_OP_SUMMARY;
+        }
+        return summaries.computeIfAbsent(name, summaryName ->
+                register(summaryName, Histogram.class, ignored -> new Histogram(reservoirs.get()))::update);
+    }
+
+    private <T extends Metric> T register(String name, Class<T> type, Function<String, T> factory) {
+        synchronized (registry) {
+            Metric existing = registry.getMetrics().get(name);
+            if (existing == null) {
+                return registry.register(name, factory.apply(name));
+            }
+            if (!type.isInstance(existing)) {
+                throw new IllegalArgumentException(name + " is already used for a different type of metric.");
+            }
+            return type.cast(existing);
+        }
+    }
+
+    /**
+     * Timer of an operation, used as:
+     * <pre>
+     * long start = timer.start();
+     * try { ... } finally { timer.stop(start); }
+     * </pre>
+     */
+    public interface Timer {
+
+        /**
+         * @return Start of the operation, to give to {@link #stop(long)}
+         */
+        long start();
+
+        /**
+         * @param startNanos Value returned by {@link #start()} when the operation started
+         */
+        void stop(long startNanos);
+    }
+
+    @FunctionalInterface
+    public interface Counter {
+
+        void increment(long amount);
+    }
+
+    @FunctionalInterface
+    public interface Summary {
+
+        void record(long value);
+    }
+}
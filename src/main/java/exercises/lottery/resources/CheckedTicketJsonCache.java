@@ -0,0 +1,167 @@
+package exercises.lottery.resources;
+
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.views.CheckedTicketView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bounded cache of the JSON of checked tickets, by ID.
+ *
+ * Checked tickets never change, so their JSON (with the checked view) is serialized
+ * once, optionally gzipped as well, and served from then on as a byte array,
+ * along with a strong ETag computed from its contents (with a suffix for the
+ * gzipped copy, as it is a different representation). The least recently used
+ * tickets are evicted first when the total size exceeds the maximum.
+ */
+public class CheckedTicketJsonCache {
+
+    private static final String GZIP_TAG_SUFFIX = "-gzip";
+
+    private final TicketJsonWriter ticketJsonWriter;
+    private final long maxBytes;
+    private final boolean gzip;
+
+    private final LinkedHashMap<String, SerializedTicket> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @param ticketJsonWriter Writer used to serialize the tickets
+     * @param maxBytes Maximum total size of the cached JSON (0 disables the cache)
+     * @param gzip true to also keep a gzipped copy of the JSON
+     */
+    public CheckedTicketJsonCache(TicketJsonWriter ticketJsonWriter, long maxBytes, boolean gzip) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Invalid checked ticket JSON cache size.");
+        }
+        this.ticketJsonWriter = ticketJsonWriter;
+        this.maxBytes = maxBytes;
+        this.gzip = gzip;
+    }
+
+    /**
+     * @param ticketId ID of the ticket
+     * @return Serialized ticket, or null if it is not cached
+     */
+    public synchronized SerializedTicket get(String ticketId) {
+        return entries.get(ticketId);
+    }
+
+    /**
+     * Serializes the given checked ticket and caches the result.
+     * @param ticket Checked ticket to serialize
+     * @return Serialized ticket
+     */
+    public SerializedTicket put(Ticket ticket) {
+        if (!ticket.isChecked()) {
+            throw new IllegalArgumentException("Only checked tickets can be cached.");
+        }
+        SerializedTicket serialized = serialize(ticket);
+        if (serialized.size() > maxBytes) {
+            return serialized;
+        }
+        synchronized (this) {
+            SerializedTicket previous = entries.put(ticket.getId(), serialized);
+            if (previous != null) {
+                bytes -= previous.size();
+            }
+            bytes += serialized.size();
+            Iterator<SerializedTicket> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().size();
+                eldest.remove();
+            }
+        }
+        return serialized;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+
+    private SerializedTicket serialize(Ticket ticket) {
+        try {
+            byte[] json = ticketJsonWriter.writerForView(CheckedTicketView.class).writeValueAsBytes(ticket);
+            return new SerializedTicket(json, gzip ? gzip(json) : null, entityTag(json));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length);
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(json);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String entityTag(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * JSON of a checked ticket, with its entity tag.
+     */
+    public static final class SerializedTicket {
+
+        private final byte[] json;
+        private final byte[] gzippedJson;
+        private final String entityTag;
+
+        SerializedTicket(byte[] json, byte[] gzippedJson, String entityTag) {
+            this.json = json;
+            this.gzippedJson = gzippedJson;
+            this.entityTag = entityTag;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        /**
+         * @return Gzipped JSON, or null if it is not kept
+         */
+        public byte[] getGzippedJson() {
+            return gzippedJson;
+        }
+
+        /**
+         * @return Value of the strong entity tag of the JSON (without quotes)
+         */
+        public String getEntityTag() {
+            return entityTag;
+        }
+
+        /**
+         * @return Value of the strong entity tag of the gzipped JSON (without quotes),
+         * which differs from the one of the JSON, as strong validators do between content codings
+         */
+        public String getGzippedEntityTag() {
+            return entityTag + GZIP_TAG_SUFFIX;
+        }
+
+        long size() {
+            return json.length + (gzippedJson == null ? 0 : gzippedJson.length);
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package exercises.lottery.resources;
 
-import com.fasterxml.jackson.annotation.JsonView;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import exercises.lottery.data.LotteryDao;
+import exercises.lottery.data.AsyncLotteryDao;
+import exercises.lottery.data.TicketStats;
+import exercises.lottery.data.TicketStore;
 import exercises.lottery.domain.Line;
 import exercises.lottery.domain.Ticket;
+import exercises.lottery.resources.CheckedTicketJsonCache.SerializedTicket;
+import exercises.lottery.service.BulkCheckJob;
+import exercises.lottery.service.BulkCheckProgress;
+import exercises.lottery.service.StatsReconciliationJob;
 import exercises.lottery.service.TicketService;
 import exercises.lottery.views.CheckedTicketView;
 import exercises.lottery.views.UncheckedTicketView;
@@ -13,18 +16,36 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.json.Json;
+import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 import java.net.URI;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 /**
  * Class providing the REST interface.
@@ -37,108 +58,263 @@ public class LotteryResource {
 
     private static final Logger logger = LoggerFactory.getLogger(LotteryResource.class);
 
-    private final LotteryDao lotteryDao;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BULK_TICKETS = 100000;
+
+    private final TicketStore ticketStore;
+    private final AsyncLotteryDao asyncLotteryDao;
     private final TicketService ticketService;
+    private final TicketJsonWriter ticketJsonWriter;
+    private final CheckedTicketJsonCache checkedTicketJsonCache;
+    private final BulkCheckJob bulkCheckJob;
+    private final StatsReconciliationJob statsReconciliationJob;
 
     @Autowired
     @Qualifier("defaultNumberOfLines")
     private int defaultNumberOfLines;
 
     @Autowired
-    public LotteryResource(LotteryDao lotteryDao, TicketService ticketService) {
-        this.lotteryDao = lotteryDao;
+    @Qualifier("bulkInsertChunkSize")
+    private int bulkInsertChunkSize;
+
+    @Autowired
+    public LotteryResource(TicketStore ticketStore, AsyncLotteryDao asyncLotteryDao, TicketService ticketService,
+                           TicketJsonWriter ticketJsonWriter, CheckedTicketJsonCache checkedTicketJsonCache,
+                           BulkCheckJob bulkCheckJob, StatsReconciliationJob statsReconciliationJob) {
+        this.ticketStore = ticketStore;
+        this.asyncLotteryDao = asyncLotteryDao;
         this.ticketService = ticketService;
+        this.ticketJsonWriter = ticketJsonWriter;
+        this.checkedTicketJsonCache = checkedTicketJsonCache;
+        this.bulkCheckJob = bulkCheckJob;
+        this.statsReconciliationJob = statsReconciliationJob;
+    }
+
+    @PostConstruct
+    void validateConfiguration() {
+        if (bulkInsertChunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid bulk insert configuration.");
+        }
     }
 
 
     /**
      * GET method that retrieves all tickets.
+     * The tickets are streamed, as a JSON array or as newline delimited JSON.
      * @return all tickets in the database
      */
     @GET
     @Path("")
+    @Produces({MediaType.APPLICATION_JSON, TicketJsonWriter.APPLICATION_NDJSON})
+    public Response getAllTickets(@Context HttpHeaders headers) {
+        logger.debug("Received GET request to retrieve all tickets");
+        return streamTickets(ticketStore::streamAllTickets, null, headers);
+    }
+
+    /**
+     * GET method that retrieves a page of tickets, in ID order.
+     * @param limit maximum number of tickets in the page
+     * @param after ID of the last ticket of the previous page (the 'next' value of its response)
+     * @param checked optional filter on the checked value of the tickets
+     * @param asyncResponse resumed with the page with the tickets and the 'next' cursor (null if this is the last page)
+     */
+    @GET
+    @Path("page")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<Ticket> getAllTickets() {
-        logger.info("Received GET request to retrieve all tickets");
-        return lotteryDao.getAllTickets();
+    public void getTicketsPage(@QueryParam("limit") @DefaultValue("100") int limit,
+                               @QueryParam("after") String after,
+                               @QueryParam("checked") Boolean checked,
+                               @Suspended AsyncResponse asyncResponse) {
+        logger.debug("Received GET request to retrieve {} tickets after 'id' {}", limit, after);
+        resume(asyncResponse, "Error retrieving page of tickets", () -> {
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("Invalid page size, must be between 1 and " + MAX_PAGE_SIZE + ".");
+            }
+            return asyncLotteryDao.getTicketsPage(checked, after, limit + 1).thenApply(tickets -> {
+                String next = null;
+                if (tickets.size() > limit) {
+                    tickets = tickets.subList(0, limit);
+                    next = tickets.get(limit - 1).getId();
+                }
+                Class<?> view = checked == null ? null : checked ? CheckedTicketView.class : UncheckedTicketView.class;
+                return Response.ok().entity(ticketJsonWriter.toStreamingOutput(tickets, next, view)).build();
+            });
+        });
     }
 
     /**
-     * GET method that retrieves the ticket with the given ID
+     * GET method that retrieves the ticket with the given ID.
+     * Checked tickets are served from their cached JSON, with a strong ETag,
+     * and a request with a matching If-None-Match gets a 304 with no body.
      * @param id path parameter with the ID of the ticket to retrieve
-     * @return ticket with the given ID
+     * @param asyncResponse resumed with the ticket with the given ID
      */
     @GET
     @Path("{id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getTicket(@PathParam("id") String id) {
-        logger.info("Received GET request to retrieve ticket with 'id' {}", id);
-        try {
-            Ticket retrieved = lotteryDao.getTicketById(id);
+    public void getTicket(@PathParam("id") String id, @Context Request request, @Context HttpHeaders headers,
+                          @Suspended AsyncResponse asyncResponse) {
+        logger.debug("Received GET request to retrieve ticket with 'id' {}", id);
+        SerializedTicket cached = checkedTicketJsonCache.get(id);
+        if (cached != null) {
+            asyncResponse.resume(checkedTicketResponse(cached, request, headers));
+            return;
+        }
+        resume(asyncResponse, "Error processing request", () -> asyncLotteryDao.getTicketById(id).thenApply(retrieved -> {
             if (retrieved == null) {
                 logger.error("Ticket not found for 'id' {}", id);
                 JsonObject errorObject = createJsonErrorObject(null, "Ticket not found for 'id': " + id);
                 return Response.status(Response.Status.NOT_FOUND).entity(errorObject).build();
             }
-            String result = getJsonObjectWithAppropriateView(retrieved);
-            return Response.ok().entity(result).build();
-        } catch (Exception ex) {
-            logger.error("Error processing request", ex);
-            JsonObject errorObject = createJsonErrorObject(ex, null);
-            return Response.serverError().entity(errorObject).build();
-        }
+            if (retrieved.isChecked()) {
+                return checkedTicketResponse(checkedTicketJsonCache.put(retrieved), request, headers);
+            }
+            return Response.ok().entity(ticketJsonWriter.toStreamingOutput(retrieved)).build();
+        }));
     }
 
     /**
-     * GET method that retrieves all the unchecked tickets
+     * GET method that retrieves all the unchecked tickets.
+     * The tickets are streamed, as a JSON array or as newline delimited JSON.
      * @return all the unchecked tickets in the database
      */
-    @JsonView(UncheckedTicketView.class)
     @GET
     @Path("unchecked")
-    @Produces(MediaType.APPLICATION_JSON)
-    public List<Ticket> getUncheckedTickets() {
-        logger.info("Received GET request to retrieve all unchecked tickets");
-        return lotteryDao.getTicketsByChecked(false);
+    @Produces({MediaType.APPLICATION_JSON, TicketJsonWriter.APPLICATION_NDJSON})
+    public Response getUncheckedTickets(@Context HttpHeaders headers) {
+        logger.debug("Received GET request to retrieve all unchecked tickets");
+        return streamTickets(() -> ticketStore.streamTicketsByChecked(false), UncheckedTicketView.class, headers);
     }
 
     /**
-     * GET method that retrieves all the checked tickets
+     * GET method that retrieves all the checked tickets.
+     * The tickets are streamed, as a JSON array or as newline delimited JSON.
      * @return all the checked tickets in the database
      */
-    @JsonView(CheckedTicketView.class)
     @GET
     @Path("checked")
+    @Produces({MediaType.APPLICATION_JSON, TicketJsonWriter.APPLICATION_NDJSON})
+    public Response getCheckedTickets(@Context HttpHeaders headers) {
+        logger.debug("Received GET request to retrieve all checked tickets");
+        return streamTickets(() -> ticketStore.streamTicketsByChecked(true), CheckedTicketView.class, headers);
+    }
+
+    /**
+     * GET method that retrieves the checked tickets with the highest payouts.
+     * The payout of a ticket is the sum of the outcomes of its lines, stored when it is checked.
+     * @param limit maximum number of tickets to retrieve
+     * @param asyncResponse resumed with a JSON array with the ID, payout and best outcome of each ticket,
+     *                      highest payout first
+     */
+    @GET
+    @Path("winners")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<Ticket> getCheckedTickets() {
-        logger.info("Received GET request to retrieve all checked tickets");
-        return lotteryDao.getTicketsByChecked(true);
+    public void getTopWinners(@QueryParam("limit") @DefaultValue("10") int limit,
+                              @Suspended AsyncResponse asyncResponse) {
+        logger.debug("Received GET request to retrieve the {} top winning tickets", limit);
+        resume(asyncResponse, "Error retrieving the top winning tickets", () -> {
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("Invalid number of tickets, must be between 1 and " + MAX_PAGE_SIZE + ".");
+            }
+            return asyncLotteryDao.getTopWinners(limit).thenApply(winners -> {
+                JsonArrayBuilder builder = Json.createArrayBuilder();
+                for (Ticket winner : winners) {
+                    builder.add(Json.createObjectBuilder()
+                            .add("id", winner.getId())
+                            .add("payout", winner.getLines().totalOutcome())
+                            .add("bestOutcome", winner.getLines().bestOutcome()));
+                }
+                return Response.ok().entity(builder.build()).build();
+            });
+        });
+    }
+
+    /**
+     * GET method that retrieves the total payout of the checked tickets.
+     * @param asyncResponse resumed with a JSON object with the sum of the payouts of all the checked tickets
+     */
+    @GET
+    @Path("liability")
+    @Produces(MediaType.APPLICATION_JSON)
+    public void getTotalPayout(@Suspended AsyncResponse asyncResponse) {
+        logger.debug("Received GET request to retrieve the total payout");
+        resume(asyncResponse, "Error retrieving the total payout", () -> asyncLotteryDao.getTotalPayout()
+                .thenApply(totalPayout -> Response.ok()
+                        .entity(Json.createObjectBuilder().add("totalPayout", totalPayout).build()).build()));
     }
 
     /**
      * POST method that receives a number and generates a ticket
      * with that amount of lines.
      * @param numberOfLines number of lines to generate
-     * @return generated ticket
+     * @param asyncResponse resumed with the generated ticket
      */
     @POST
     @Path("{numberOfLines}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response generateTicket(@PathParam("numberOfLines") int numberOfLines, @Context UriInfo uriInfo) {
-        logger.info("Received POST request to generate a ticket with {} lines", numberOfLines);
-        try {
+    public void generateTicket(@PathParam("numberOfLines") int numberOfLines, @Context UriInfo uriInfo,
+                               @Suspended AsyncResponse asyncResponse) {
+        logger.debug("Received POST request to generate a ticket with {} lines", numberOfLines);
+        UriBuilder ticketsUri = uriInfo.getBaseUriBuilder().path(uriInfo.getPathSegments().get(0).toString());
+        resume(asyncResponse, "Error generating the ticket", () -> {
             Ticket generated = ticketService.generateNewTicket(numberOfLines <= 0 ? defaultNumberOfLines : numberOfLines);
-            Ticket stored = lotteryDao.createTicket(generated);
-            String ticketsPathSegment = uriInfo.getPathSegments().get(0).toString();
-            URI uri = uriInfo.getBaseUriBuilder().path(ticketsPathSegment).path(stored.getId()).build();
-            String result = getJsonObjectWithAppropriateView(stored);
-            return Response.created(uri).entity(result).build();
+            return asyncLotteryDao.createTicket(generated).thenApply(stored -> {
+                URI uri = ticketsUri.clone().path(stored.getId()).build();
+                return Response.created(uri).entity(ticketJsonWriter.toStreamingOutput(stored)).build();
+            });
+        });
+    }
+
+    /**
+     * POST method that generates tickets in bulk. The tickets are generated
+     * and inserted in chunks, and their IDs are streamed as each chunk is stored.
+     * @param numberOfTickets number of tickets to generate
+     * @param numberOfLines number of lines to generate in each ticket
+     * @return JSON array with the IDs of the generated tickets
+     */
+    @POST
+    @Path("bulk")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response generateTickets(@QueryParam("count") int numberOfTickets, @QueryParam("lines") int numberOfLines) {
+        logger.debug("Received POST request to generate {} tickets with {} lines", numberOfTickets, numberOfLines);
+        try {
+            if (numberOfTickets <= 0 || numberOfTickets > MAX_BULK_TICKETS) {
+                throw new IllegalArgumentException("Invalid number of tickets, must be between 1 and " + MAX_BULK_TICKETS + ".");
+            }
+            int linesPerTicket = numberOfLines <= 0 ? defaultNumberOfLines : numberOfLines;
+            // the first chunk is generated before responding, so that invalid requests are reported
+            List<Ticket> firstChunk = ticketService.generateNewTickets(Math.min(numberOfTickets, bulkInsertChunkSize), linesPerTicket);
+            Iterator<List<Ticket>> storedChunks = new Iterator<List<Ticket>>() {
+
+                private List<Ticket> generated = firstChunk;
+                private int remaining = numberOfTickets - firstChunk.size();
+
+                @Override
+                public boolean hasNext() {
+                    return generated != null || remaining > 0;
+                }
+
+                @Override
+                public List<Ticket> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    List<Ticket> chunk = generated;
+                    if (chunk == null) {
+                        chunk = ticketService.generateNewTickets(Math.min(remaining, bulkInsertChunkSize), linesPerTicket);
+                        remaining -= chunk.size();
+                    }
+                    generated = null;
+                    return ticketStore.createTickets(chunk);
+                }
+            };
+            return Response.status(Response.Status.CREATED).entity(ticketJsonWriter.toIdStreamingOutput(storedChunks)).build();
         } catch (IllegalArgumentException ex) {
-            logger.error("Error generating the ticket", ex);
+            logger.error("Error generating the tickets", ex);
             JsonObject errorObject = createJsonErrorObject(ex, null);
             return Response.status(Response.Status.BAD_REQUEST).entity(errorObject).build();
         } catch (Exception ex) {
-            logger.error("Error generating the ticket", ex);
+            logger.error("Error generating the tickets", ex);
             JsonObject errorObject = createJsonErrorObject(ex, null);
             return Response.serverError().entity(errorObject).build();
         }
@@ -147,68 +323,295 @@ public class LotteryResource {
     /**
      * PUT method that receives an ID of a ticket and a JSON representation
      * of a set of lines, and adds those lines to the ticket.
+     * The lines are appended to the stored ticket in a single operation,
+     * so concurrent amendments of the same ticket are all kept.
      * @param id ID of the ticket to amend
      * @param lines Set of lines to add to the ticket
-     * @return ticket with the added lines
+     * @param asyncResponse resumed with the ticket with the added lines
      */
     @PUT
     @Path("{id}")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response amendTicket(@PathParam("id") String id, Set<Line> lines) {
-        logger.info("Received PUT request to amend ticket with 'id' {}", id);
+    public void amendTicket(@PathParam("id") String id, Set<Line> lines, @Suspended AsyncResponse asyncResponse) {
+        logger.debug("Received PUT request to amend ticket with 'id' {}", id);
+        resume(asyncResponse, "Error amending ticket", () -> asyncLotteryDao
+                .addLines(id, ticketService.validateAmendment(lines), ticketService.getMaxNumberOfLines())
+                .thenApply(stored -> Response.ok().entity(ticketJsonWriter.toStreamingOutput(stored)).build()));
+    }
+
+    /**
+     * PUT method that receives an ID of a ticket
+     * and checks the ticket, including the outcome of each line.
+     * A ticket which was already checked is served from its cached JSON, if it is there.
+     * @param id ID of the ticket to check
+     * @param asyncResponse resumed with the checked ticket
+     */
+    @PUT
+    @Path("{id}/check")
+    @Produces(MediaType.APPLICATION_JSON)
+    public void checkTicket(@PathParam("id") String id, @Suspended AsyncResponse asyncResponse) {
+        logger.debug("Received PUT request to check ticket with 'id' {}", id);
+        SerializedTicket cached = checkedTicketJsonCache.get(id);
+        if (cached != null) {
+            asyncResponse.resume(checkedTicketResponse(cached));
+            return;
+        }
+        resume(asyncResponse, "Error checking ticket", () -> asyncLotteryDao.getTicketById(id)
+                .thenCompose(existing -> {
+                    if (existing == null) {
+                        throw new IllegalStateException("Ticket not found");
+                    }
+                    return existing.isChecked()
+                            ? CompletableFuture.completedFuture(existing)
+                            : storeCheckedTicket(ticketService.checkTicket(existing));
+                })
+                .thenApply(stored -> checkedTicketResponse(checkedTicketJsonCache.put(stored))));
+    }
+
+    /**
+     * POST method that starts checking all the unchecked tickets in the background.
+     * @return progress of the bulk check (409 if it was already running)
+     */
+    @POST
+    @Path("check")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response startBulkCheck() {
+        logger.debug("Received POST request to check all unchecked tickets");
         try {
-            Ticket existing = lotteryDao.getTicketById(id);
-            if (existing == null) {
-                throw new IllegalStateException("Ticket not found");
+            if (!bulkCheckJob.start()) {
+                JsonObject errorObject = createJsonErrorObject(null, "Bulk check is already running.");
+                return Response.status(Response.Status.CONFLICT).entity(errorObject).build();
             }
-            Ticket amended = ticketService.amendTicket(existing, lines);
-            Ticket stored = lotteryDao.amendTicket(amended);
-            String result = getJsonObjectWithAppropriateView(stored);
-            return Response.ok().entity(result).build();
-        } catch (IllegalArgumentException ex) {
-            logger.error("Error amending ticket", ex);
+            return Response.accepted().entity(createJsonProgressObject(bulkCheckJob.getProgress())).build();
+        } catch (Exception ex) {
+            logger.error("Error starting bulk check", ex);
             JsonObject errorObject = createJsonErrorObject(ex, null);
-            return Response.status(Response.Status.BAD_REQUEST).entity(errorObject).build();
+            return Response.serverError().entity(errorObject).build();
+        }
+    }
+
+    /**
+     * GET method that retrieves the progress of the bulk check.
+     * @return progress of the running bulk check, or of the last one
+     */
+    @GET
+    @Path("check")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getBulkCheckProgress() {
+        logger.debug("Received GET request to retrieve the progress of the bulk check");
+        return Response.ok().entity(createJsonProgressObject(bulkCheckJob.getProgress())).build();
+    }
+
+    /**
+     * GET method that retrieves the stats of the tickets, which are kept up to date
+     * as tickets are created and checked, so they are not counted from the tickets.
+     * @return number of checked and unchecked tickets, and number of lines with each outcome
+     */
+    @GET
+    @Path("stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getTicketStats() {
+        logger.debug("Received GET request to retrieve the stats of the tickets");
+        try {
+            return Response.ok().entity(createJsonStatsObject(ticketStore.getTicketStats())).build();
         } catch (Exception ex) {
-            logger.error("Error amending ticket", ex);
+            logger.error("Error retrieving the stats of the tickets", ex);
             JsonObject errorObject = createJsonErrorObject(ex, null);
             return Response.serverError().entity(errorObject).build();
         }
     }
 
     /**
-     * PUT method that receives an ID of a ticket
-     * and checks the ticket, including the outcome of each line.
-     * @param id ID of the ticket to check
-     * @return checked ticket
+     * POST method that starts rebuilding the stats of the tickets from the stored tickets in the background.
+     * @return 202 if the rebuild was started (409 if it was already running)
      */
-    @PUT
-    @Path("{id}/check")
+    @POST
+    @Path("stats")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response checkTicket(@PathParam("id") String id) {
-        logger.info("Received PUT request to check ticket with 'id' {}", id);
+    public Response startStatsReconciliation() {
+        logger.debug("Received POST request to rebuild the stats of the tickets");
         try {
-            Ticket existing = lotteryDao.getTicketById(id);
-            if (existing == null) {
-                throw new IllegalStateException("Ticket not found");
+            if (!statsReconciliationJob.start()) {
+                JsonObject errorObject = createJsonErrorObject(null, "Stats reconciliation is already running.");
+                return Response.status(Response.Status.CONFLICT).entity(errorObject).build();
             }
-            Ticket checked = ticketService.checkTicket(existing);
-            Ticket stored = lotteryDao.checkTicket(checked);
-            String result = getJsonObjectWithAppropriateView(stored);
-            return Response.ok().entity(result).build();
-        } catch (IllegalArgumentException ex) {
-            logger.error("Error checking ticket", ex);
-            JsonObject errorObject = createJsonErrorObject(ex, null);
-            return Response.status(Response.Status.BAD_REQUEST).entity(errorObject).build();
+            return Response.accepted().entity(Json.createObjectBuilder().add("running", true).build()).build();
         } catch (Exception ex) {
-            logger.error("Error checking ticket", ex);
+            logger.error("Error starting stats reconciliation", ex);
             JsonObject errorObject = createJsonErrorObject(ex, null);
             return Response.serverError().entity(errorObject).build();
         }
     }
 
 
+    private CompletionStage<Ticket> storeCheckedTicket(Ticket checked) {
+        return asyncLotteryDao.checkTicket(checked)
+                .thenApply(CompletableFuture::completedFuture)
+                .exceptionally(ex -> {
+                    Throwable cause = unwrap(ex);
+                    if (!(cause instanceof EmptyResultDataAccessException)) {
+                        throw new CompletionException(cause);
+                    }
+                    // a concurrent request checked the ticket first, so return its result
+                    return asyncLotteryDao.getTicketById(checked.getId()).thenApply(stored -> {
+                        if (stored == null || !stored.isChecked()) {
+                            throw new CompletionException(cause);
+                        }
+                        logger.info("Ticket {} was checked by a concurrent request", checked.getId());
+                        return stored;
+                    });
+                })
+                .thenCompose(stored -> stored);
+    }
+
+    /**
+     * Resumes the suspended request with the response produced by the given stage,
+     * or with an error response if it fails: 400 for invalid arguments,
+     * 503 if the database executor is saturated, 500 otherwise.
+     */
+    private void resume(AsyncResponse asyncResponse, String errorMessage,
+                        Supplier<CompletionStage<Response>> responseStage) {
+        CompletionStage<Response> stage;
+        try {
+            stage = responseStage.get();
+        } catch (RuntimeException ex) {
+            stage = failed(ex);
+        }
+        stage.whenComplete((response, ex) -> {
+            if (ex == null) {
+                asyncResponse.resume(response);
+                return;
+            }
+            Throwable cause = unwrap(ex);
+            logger.error(errorMessage, cause);
+            JsonObject errorObject = createJsonErrorObject(cause instanceof Exception ? (Exception) cause : null, cause.toString());
+            if (cause instanceof IllegalArgumentException) {
+                asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST).entity(errorObject).build());
+            } else if (cause instanceof RejectedExecutionException) {
+                asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(errorObject).build());
+            } else {
+                asyncResponse.resume(Response.serverError().entity(errorObject).build());
+            }
+        });
+    }
+
+    private static <T> CompletionStage<T> failed(Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private Response checkedTicketResponse(SerializedTicket serialized) {
+        return Response.ok(serialized.getJson(), MediaType.APPLICATION_JSON_TYPE)
+                .tag(new EntityTag(serialized.getEntityTag()))
+                .build();
+    }
+
+    private Response checkedTicketResponse(SerializedTicket serialized, Request request, HttpHeaders headers) {
+        if (serialized.getGzippedJson() == null) {
+            EntityTag entityTag = new EntityTag(serialized.getEntityTag());
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+            if (notModified != null) {
+                return notModified.build();
+            }
+            return Response.ok(serialized.getJson(), MediaType.APPLICATION_JSON_TYPE).tag(entityTag).build();
+        }
+        boolean gzipped = isGzipAccepted(headers);
+        EntityTag entityTag = new EntityTag(gzipped ? serialized.getGzippedEntityTag() : serialized.getEntityTag());
+        EntityTag otherEntityTag = new EntityTag(gzipped ? serialized.getEntityTag() : serialized.getGzippedEntityTag());
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+        if (notModified == null && isNotModified(request.evaluatePreconditions(otherEntityTag))) {
+            // the client has the same JSON in the other content coding
+            notModified = Response.notModified(entityTag);
+        }
+        if (notModified != null) {
+            return notModified.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+        }
+        Response.ResponseBuilder ok = gzipped
+                ? Response.ok(serialized.getGzippedJson(), MediaType.APPLICATION_JSON_TYPE).encoding("gzip")
+                : Response.ok(serialized.getJson(), MediaType.APPLICATION_JSON_TYPE);
+        return ok.tag(entityTag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+    }
+
+    /**
+     * @param precondition Result of evaluating the preconditions of a request against an entity tag
+     * @return true if it is a 304, i.e. the tag matched the If-None-Match of the request
+     * (an If-Match is only evaluated against the tag of the representation which is sent)
+     */
+    private static boolean isNotModified(Response.ResponseBuilder precondition) {
+        return precondition != null && precondition.build().getStatus() == Response.Status.NOT_MODIFIED.getStatusCode();
+    }
+
+    private boolean isGzipAccepted(HttpHeaders headers) {
+        List<String> acceptEncoding = headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String header : acceptEncoding) {
+            for (String coding : header.split(",")) {
+                String[] parts = coding.trim().split(";");
+                if ("gzip".equalsIgnoreCase(parts[0].trim())
+                        && !(parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Response streamTickets(Supplier<CloseableIterator<Ticket>> tickets, Class<?> view, HttpHeaders headers) {
+        boolean ndjson = isNdjsonRequested(headers);
+        return Response.ok()
+                .type(ndjson ? TicketJsonWriter.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .entity(ticketJsonWriter.toStreamingOutput(tickets, view, ndjson))
+                .build();
+    }
+
+    private boolean isNdjsonRequested(HttpHeaders headers) {
+        // acceptable media types are sorted by preference
+        for (MediaType acceptable : headers.getAcceptableMediaTypes()) {
+            if (acceptable.isWildcardType() || acceptable.isWildcardSubtype()) {
+                return false;
+            }
+            if (MediaType.valueOf(TicketJsonWriter.APPLICATION_NDJSON).isCompatible(acceptable)) {
+                return true;
+            }
+            if (MediaType.APPLICATION_JSON_TYPE.isCompatible(acceptable)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private JsonObject createJsonProgressObject(BulkCheckProgress progress) {
+        JsonObjectBuilder builder = Json.createObjectBuilder()
+                .add("running", progress.isRunning())
+                .add("ticketsRead", progress.getTicketsRead())
+                .add("ticketsChecked", progress.getTicketsChecked());
+        if (progress.getCheckpoint() != null) {
+            builder.add("checkpoint", progress.getCheckpoint());
+        }
+        if (progress.getError() != null) {
+            builder.add("error", progress.getError());
+        }
+        return builder.build();
+    }
+
+    private JsonObject createJsonStatsObject(TicketStats stats) {
+        JsonObjectBuilder linesByOutcome = Json.createObjectBuilder();
+        stats.getLinesByOutcome().forEach((outcome, lines) -> linesByOutcome.add(outcome.toString(), lines));
+        return Json.createObjectBuilder()
+                .add("checkedTickets", stats.getCheckedTickets())
+                .add("uncheckedTickets", stats.getUncheckedTickets())
+                .add("linesByOutcome", linesByOutcome)
+                .build();
+    }
+
     private JsonObject createJsonErrorObject(Exception ex, String message) {
         String messageToUse = message;
         if (ex != null) {
@@ -220,10 +623,4 @@ public class LotteryResource {
         }
         return Json.createObjectBuilder().add("error",messageToUse).build();
     }
-
-    private String getJsonObjectWithAppropriateView(Ticket object) throws JsonProcessingException {
-        Class viewToUse = object.isChecked() ? CheckedTicketView.class : UncheckedTicketView.class;
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.writerWithView(viewToUse).writeValueAsString(object);
-    }
 }
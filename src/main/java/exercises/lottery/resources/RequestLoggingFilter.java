@@ -0,0 +1,68 @@
+package exercises.lottery.resources;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs one event per request, when its response is ready, as key=value pairs
+ * with the HTTP method, path, resource method, status and duration.
+ *
+ * Successful requests are sampled, one in every requestLogSampleRate
+ * (0 to log none of them), while failed requests are always logged.
+ * The events go to the 'lottery.requests' logger, which the 'asyncLogging'
+ * profile writes through a bounded, non-blocking asynchronous appender.
+ */
+@Component
+public class RequestLoggingFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final Logger requestLogger = LoggerFactory.getLogger("lottery.requests");
+
+    private static final String START_PROPERTY = RequestLoggingFilter.class.getName() + ".start";
+
+    private final int sampleRate;
+    private final AtomicLong successfulRequests = new AtomicLong();
+
+    @Autowired
+    public RequestLoggingFilter(@Qualifier("requestLogSampleRate") int sampleRate) {
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException("Invalid request log sample rate.");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        if (requestLogger.isInfoEnabled()) {
+            request.setProperty(START_PROPERTY, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Object start = request.getProperty(START_PROPERTY);
+        if (start == null || !isSampled(response.getStatus())) {
+            return;
+        }
+        long durationMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - (Long) start);
+        requestLogger.info("event=request method={} path=/{} resource={} status={} durationUs={} sampleRate={}",
+                request.getMethod(), request.getUriInfo().getPath(), RequestMetricsFilter.resourceMethodName(request),
+                response.getStatus(), durationMicros, response.getStatus() >= 400 ? 1 : sampleRate);
+    }
+
+    private boolean isSampled(int status) {
+        if (status >= 400) {
+            return true;
+        }
+        return sampleRate > 0 && successfulRequests.getAndIncrement() % sampleRate == 0;
+    }
+}
@@ -0,0 +1,83 @@
+package exercises.lottery.resources;
+
+import exercises.lottery.metrics.LotteryMetrics;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+
+/**
+ * Times the requests to each resource method, from the moment it is matched
+ * until the response is ready (including asynchronous processing), counts
+ * the responses by status class, and times the writing of the response entity
+ * (serialization, and reading from the database for streamed responses).
+ *
+ * The metrics are named after the resource method, e.g. 'lottery.resource.getTicket',
+ * 'lottery.resource.getTicket.status.2xx' and 'lottery.resource.getTicket.write'.
+ */
+@Component
+public class RequestMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    private static final String NAME_PROPERTY = RequestMetricsFilter.class.getName() + ".name";
+    private static final String START_PROPERTY = RequestMetricsFilter.class.getName() + ".start";
+
+    private final LotteryMetrics metrics;
+
+    @Autowired
+    public RequestMetricsFilter(LotteryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        String name = "lottery.resource." + resourceMethodName(request);
+        request.setProperty(NAME_PROPERTY, name);
+        request.setProperty(START_PROPERTY, metrics.timer(name).start());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Object name = request.getProperty(NAME_PROPERTY);
+        if (name == null) {
+            return;
+        }
+        metrics.timer((String) name).stop((Long) request.getProperty(START_PROPERTY));
+        metrics.counter(name + ".status." + response.getStatus() / 100 + "xx").increment(1);
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        Object name = context.getProperty(NAME_PROPERTY);
+        if (name == null) {
+            context.proceed();
+            return;
+        }
+        LotteryMetrics.Timer timer = metrics.timer(name + ".write");
+        long start = timer.start();
+        try {
+            context.proceed();
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * @param request Request, after its resource method was matched
+     * @return Name of the Java method of the matched resource method ('unmatched' if there is none)
+     */
+    static String resourceMethodName(ContainerRequestContext request) {
+        ResourceMethod method = ((ExtendedUriInfo) request.getUriInfo()).getMatchedResourceMethod();
+        return method == null ? "unmatched" : method.getInvocable().getDefinitionMethod().getName();
+    }
+}
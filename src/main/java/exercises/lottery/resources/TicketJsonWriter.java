@@ -0,0 +1,164 @@
+package exercises.lottery.resources;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.views.CheckedTicketView;
+import exercises.lottery.views.UncheckedTicketView;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Serializes tickets to JSON, using the appropriate view.
+ *
+ * The ObjectWriter of each view is built once and, being immutable,
+ * shared by all requests, which keeps Jackson's serializer caches warm.
+ * Tickets are written straight to the response stream.
+ */
+@Component
+public class TicketJsonWriter {
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final int NEWLINE = '\n';
+
+    private final JsonFactory jsonFactory;
+    private final ObjectWriter defaultWriter;
+    private final ObjectWriter uncheckedWriter;
+    private final ObjectWriter checkedWriter;
+
+    public TicketJsonWriter() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        jsonFactory = mapper.getFactory();
+        defaultWriter = mapper.writer();
+        uncheckedWriter = mapper.writerWithView(UncheckedTicketView.class);
+        checkedWriter = mapper.writerWithView(CheckedTicketView.class);
+    }
+
+    /**
+     * @param view View to use (null for no view)
+     * @return Shared writer for the given view
+     */
+    ObjectWriter writerForView(Class<?> view) {
+        if (view == null) {
+            return defaultWriter;
+        }
+        if (view == CheckedTicketView.class) {
+            return checkedWriter;
+        }
+        if (view == UncheckedTicketView.class) {
+            return uncheckedWriter;
+        }
+        throw new IllegalArgumentException("Unknown view: " + view.getName());
+    }
+
+    /**
+     * @param ticket Ticket to serialize
+     * @return Shared writer for the appropriate view of the given ticket
+     */
+    ObjectWriter writerFor(Ticket ticket) {
+        return ticket.isChecked() ? checkedWriter : uncheckedWriter;
+    }
+
+    /**
+     * @param ticket Ticket to serialize
+     * @param output Stream to write the JSON to
+     */
+    public void write(Ticket ticket, OutputStream output) throws IOException {
+        writerFor(ticket).writeValue(output, ticket);
+    }
+
+    /**
+     * @param ticket Ticket to serialize
+     * @return Response entity which writes the ticket, with the appropriate view
+     */
+    public StreamingOutput toStreamingOutput(Ticket ticket) {
+        return output -> write(ticket, output);
+    }
+
+    /**
+     * Writes the tickets one at a time, as they are read from the iterator,
+     * either as a JSON array or as newline delimited JSON. The iterator is only
+     * opened when the response is written, so it is not left open if it never is,
+     * and it is always closed at the end, including when the client disconnects.
+     * @param tickets Opens the iterator over the tickets to serialize
+     * @param view View to use (null for no view)
+     * @param ndjson true to write newline delimited JSON instead of an array
+     * @return Response entity which writes the tickets
+     */
+    public StreamingOutput toStreamingOutput(Supplier<CloseableIterator<Ticket>> tickets, Class<?> view, boolean ndjson) {
+        ObjectWriter writer = writerForView(view).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return output -> {
+            try (CloseableIterator<Ticket> toWrite = tickets.get();
+                 JsonGenerator generator = writer.getFactory().createGenerator(output)) {
+                if (ndjson) {
+                    while (toWrite.hasNext()) {
+                        writer.writeValue(generator, toWrite.next());
+                        generator.writeRaw((char) NEWLINE);
+                    }
+                } else {
+                    generator.writeStartArray();
+                    while (toWrite.hasNext()) {
+                        writer.writeValue(generator, toWrite.next());
+                    }
+                    generator.writeEndArray();
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes a page of tickets as a JSON object with the tickets
+     * and the cursor to use for retrieving the next page.
+     * @param tickets Tickets in the page
+     * @param next ID of the last ticket, if there are more pages (null otherwise)
+     * @param view View to use (null for no view)
+     * @return Response entity which writes the page
+     */
+    public StreamingOutput toStreamingOutput(List<Ticket> tickets, String next, Class<?> view) {
+        ObjectWriter writer = writerForView(view).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return output -> {
+            try (JsonGenerator generator = writer.getFactory().createGenerator(output)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("tickets");
+                for (Ticket ticket : tickets) {
+                    writer.writeValue(generator, ticket);
+                }
+                generator.writeEndArray();
+                generator.writeStringField("next", next);
+                generator.writeEndObject();
+            }
+        };
+    }
+
+    /**
+     * Writes a JSON array with the IDs of the tickets, flushing
+     * them as each list is obtained from the iterator.
+     * @param tickets Iterator over lists of tickets
+     * @return Response entity which writes the IDs of the tickets
+     */
+    public StreamingOutput toIdStreamingOutput(Iterator<List<Ticket>> tickets) {
+        return output -> {
+            try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+                generator.writeStartArray();
+                while (tickets.hasNext()) {
+                    for (Ticket ticket : tickets.next()) {
+                        generator.writeString(ticket.getId());
+                    }
+                    generator.flush();
+                }
+                generator.writeEndArray();
+            }
+        };
+    }
+}
@@ -0,0 +1,195 @@
+package exercises.lottery.service;
+
+import exercises.lottery.data.TicketStore;
+import exercises.lottery.domain.Ticket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Job which checks all the unchecked tickets in bulk.
+ *
+ * The unchecked tickets are read in chunks, in ID order. The outcomes of each chunk
+ * are determined in parallel and written back with a single bulk update, while the
+ * next chunks are read, with a bounded number of chunks in flight.
+ * The ID up to which all the chunks were written is stored as a checkpoint,
+ * so that a job which did not finish resumes from there on the next run.
+ */
+@Service
+public class BulkCheckJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkCheckJob.class);
+
+    static final String JOB_NAME = "bulkCheck";
+
+    private final TicketStore ticketStore;
+    private final TicketService ticketService;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bulk-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong ticketsRead = new AtomicLong();
+    private final AtomicLong ticketsChecked = new AtomicLong();
+    private volatile String checkpoint;
+    private volatile String error;
+
+    @Autowired
+    BulkCheckJob(TicketStore ticketStore, TicketService ticketService,
+                 @Qualifier("bulkCheckChunkSize") int chunkSize,
+                 @Qualifier("bulkCheckMaxChunksInFlight") int maxChunksInFlight) {
+        if (chunkSize <= 0 || maxChunksInFlight <= 0) {
+            throw new IllegalArgumentException("Invalid bulk check configuration.");
+        }
+        this.ticketStore = ticketStore;
+        this.ticketService = ticketService;
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = maxChunksInFlight;
+    }
+
+    /**
+     * Starts checking all the unchecked tickets in the background.
+     * @return true if the job was started, false if it was already running
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Bulk check is already running");
+            return false;
+        }
+        jobExecutor.execute(this::runJob);
+        return true;
+    }
+
+    /**
+     * Checks all the unchecked tickets, resuming from the last checkpoint if there is one.
+     * @return Progress of the job when it finished
+     * @throws IllegalStateException if the job is already running
+     */
+    public BulkCheckProgress run() {
+        if (!running.compareAndSet(false, true)) {
+            logger.error("Bulk check is already running");
+            throw new IllegalStateException("Bulk check is already running.");
+        }
+        runJob();
+        return getProgress();
+    }
+
+    /**
+     * @return Progress of the current job, or of the last one if none is running
+     */
+    public BulkCheckProgress getProgress() {
+        return new BulkCheckProgress(running.get(), ticketsRead.get(), ticketsChecked.get(), checkpoint, error);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+
+    private void runJob() {
+        ticketsRead.set(0);
+        ticketsChecked.set(0);
+        error = null;
+        ExecutorService writers = Executors.newFixedThreadPool(maxChunksInFlight);
+        try {
+            checkpoint = ticketStore.getCheckpoint(JOB_NAME);
+            logger.info("Starting bulk check after ticket ID {}", checkpoint);
+            CheckpointTracker tracker = new CheckpointTracker();
+            Semaphore chunksInFlight = new Semaphore(maxChunksInFlight);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+
+            String lastId = checkpoint;
+            List<Ticket> chunk;
+            while (failure.get() == null
+                    && !(chunk = ticketStore.getTicketsPage(false, lastId, chunkSize)).isEmpty()) {
+                lastId = chunk.get(chunk.size() - 1).getId();
+                ticketsRead.addAndGet(chunk.size());
+                chunksInFlight.acquire();
+                String chunkLastId = lastId;
+                tracker.register(chunkLastId);
+                List<Ticket> toCheck = chunk;
+                writers.execute(() -> {
+                    try {
+                        checkChunk(toCheck);
+                        tracker.complete(chunkLastId);
+                    } catch (Throwable ex) {
+                        logger.error("Error checking tickets up to ID {}", chunkLastId, ex);
+                        failure.compareAndSet(null, ex);
+                    } finally {
+                        chunksInFlight.release();
+                    }
+                });
+            }
+            chunksInFlight.acquire(maxChunksInFlight);
+
+            if (failure.get() != null) {
+                error = failure.get().getMessage() != null ? failure.get().getMessage() : failure.get().getClass().toString();
+            } else {
+                ticketStore.removeCheckpoint(JOB_NAME);
+                logger.info("Finished bulk check, {} tickets checked", ticketsChecked.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            error = "Bulk check was interrupted.";
+        } catch (RuntimeException ex) {
+            logger.error("Error running bulk check", ex);
+            error = ex.getMessage() != null ? ex.getMessage() : ex.getClass().toString();
+        } finally {
+            writers.shutdown();
+            running.set(false);
+        }
+    }
+
+    private void checkChunk(List<Ticket> tickets) {
+        List<Ticket> checked = tickets.parallelStream()
+                .map(ticketService::checkTicket)
+                .collect(Collectors.toList());
+        ticketsChecked.addAndGet(ticketStore.checkTickets(checked));
+    }
+
+    /**
+     * Keeps track of the chunks in flight, in the order they were read,
+     * and advances the checkpoint while the oldest chunks are completed.
+     * A failed chunk is never completed, so the checkpoint does not move past it.
+     */
+    private class CheckpointTracker {
+
+        private final Deque<String> inFlight = new ArrayDeque<>();
+        private final Deque<String> completed = new ArrayDeque<>();
+
+        synchronized void register(String lastId) {
+            inFlight.addLast(lastId);
+        }
+
+        synchronized void complete(String lastId) {
+            completed.add(lastId);
+            String newCheckpoint = null;
+            while (!inFlight.isEmpty() && completed.remove(inFlight.peekFirst())) {
+                newCheckpoint = inFlight.removeFirst();
+            }
+            if (newCheckpoint != null) {
+                ticketStore.saveCheckpoint(JOB_NAME, newCheckpoint);
+                checkpoint = newCheckpoint;
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package exercises.lottery.service;
+
+/**
+ * Snapshot of the progress of a bulk check.
+ */
+public class BulkCheckProgress {
+
+    private final boolean running;
+    private final long ticketsRead;
+    private final long ticketsChecked;
+    private final String checkpoint;
+    private final String error;
+
+    public BulkCheckProgress(boolean running, long ticketsRead, long ticketsChecked, String checkpoint, String error) {
+        this.running = running;
+        this.ticketsRead = ticketsRead;
+        this.ticketsChecked = ticketsChecked;
+        this.checkpoint = checkpoint;
+        this.error = error;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getTicketsRead() {
+        return ticketsRead;
+    }
+
+    public long getTicketsChecked() {
+        return ticketsChecked;
+    }
+
+    /**
+     * @return ID of the last ticket up to which all the tickets were checked
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder representation = new StringBuilder();
+        representation.append("Running: ").append(running).append(", ");
+        representation.append("Read: ").append(ticketsRead).append(", ");
+        representation.append("Checked: ").append(ticketsChecked).append(", ");
+        representation.append("Checkpoint: ").append(checkpoint);
+        if (error != null) {
+            representation.append(", Error: ").append(error);
+        }
+        return representation.toString();
+    }
+}
@@ -0,0 +1,143 @@
+package exercises.lottery.service;
+
+import exercises.lottery.data.LotteryDao;
+import exercises.lottery.data.TicketConversions;
+import exercises.lottery.domain.Ticket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Job which migrates the tickets whose lines are stored as sub-documents
+ * to the compact layout (see {@link TicketConversions}), and stores the payout
+ * of the checked tickets which were stored before it was kept.
+ *
+ * Tickets can be read in both layouts, so the job runs in the background while
+ * the application serves requests. The tickets are read and written in chunks,
+ * in ID order, and the ID of the last chunk written is stored as a checkpoint,
+ * so that a job which did not finish resumes from there on the next run.
+ * The job only exists when the tickets are stored in MongoDB.
+ */
+@Service
+@ConditionalOnExpression(LotteryDao.MONGO_STORE_CONDITION)
+public class LayoutMigrationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(LayoutMigrationJob.class);
+
+    static final String JOB_NAME = "layoutMigration";
+
+    private final LotteryDao lotteryDao;
+    private final String layout;
+    private final int chunkSize;
+    private final boolean runOnStartup;
+
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "layout-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Autowired
+    LayoutMigrationJob(LotteryDao lotteryDao,
+                       @Qualifier("ticketStorageLayout") String layout,
+                       @Qualifier("layoutMigrationChunkSize") int chunkSize,
+                       @Qualifier("layoutMigrationOnStartup") boolean runOnStartup) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid layout migration configuration.");
+        }
+        this.lotteryDao = lotteryDao;
+        this.layout = layout;
+        this.chunkSize = chunkSize;
+        this.runOnStartup = runOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void startOnStartup() {
+        if (runOnStartup) {
+            start();
+        }
+    }
+
+    /**
+     * Starts migrating the tickets in the background.
+     * @return true if the job was started, false if it was already running
+     *          or the tickets are not written in the compact layout
+     */
+    public boolean start() {
+        if (!TicketConversions.COMPACT_LAYOUT.equals(layout)) {
+            logger.info("Tickets are written in the {} layout, there is nothing to migrate", layout);
+            return false;
+        }
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Layout migration is already running");
+            return false;
+        }
+        jobExecutor.execute(() -> {
+            try {
+                migrate();
+            } catch (RuntimeException ex) {
+                logger.error("Error migrating tickets to the compact layout", ex);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Migrates the tickets, resuming from the last checkpoint if there is one.
+     * @return Number of tickets migrated
+     * @throws IllegalStateException if the job is already running
+     *          or the tickets are not written in the compact layout
+     */
+    public long run() {
+        if (!TicketConversions.COMPACT_LAYOUT.equals(layout)) {
+            logger.error("Tickets are written in the {} layout, there is nothing to migrate", layout);
+            throw new IllegalStateException("Tickets are not written in the compact layout.");
+        }
+        if (!running.compareAndSet(false, true)) {
+            logger.error("Layout migration is already running");
+            throw new IllegalStateException("Layout migration is already running.");
+        }
+        return migrate();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+
+    private long migrate() {
+        try {
+            String lastId = lotteryDao.getCheckpoint(JOB_NAME);
+            logger.info("Starting migration of tickets to the compact layout after ticket ID {}", lastId);
+            long migrated = 0;
+            List<Ticket> chunk;
+            while (!Thread.currentThread().isInterrupted()
+                    && !(chunk = lotteryDao.getTicketsToMigrate(lastId, chunkSize)).isEmpty()) {
+                migrated += lotteryDao.rewriteTickets(chunk);
+                lastId = chunk.get(chunk.size() - 1).getId();
+                lotteryDao.saveCheckpoint(JOB_NAME, lastId);
+                logger.debug("Migrated {} tickets to the compact layout, up to ticket ID {}", migrated, lastId);
+            }
+            if (!Thread.currentThread().isInterrupted()) {
+                lotteryDao.removeCheckpoint(JOB_NAME);
+                logger.info("Finished migration of tickets to the compact layout, {} tickets migrated", migrated);
+            }
+            return migrated;
+        } finally {
+            running.set(false);
+        }
+    }
+}
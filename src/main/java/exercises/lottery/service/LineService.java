@@ -1,13 +1,17 @@
 package exercises.lottery.service;
 
 import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineCodes;
+import exercises.lottery.domain.LineSet;
 import exercises.lottery.domain.LotteryRules;
+import exercises.lottery.domain.rules.LineOutcomeTable;
+import exercises.lottery.service.random.RandomGenerator;
+import exercises.lottery.service.random.RandomSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.Random;
 import java.util.Set;
 
 /**
@@ -22,10 +26,71 @@ class LineService {
     private static final Logger logger = LoggerFactory.getLogger(LineService.class);
 
     private final LotteryRules rules;
+    private final RandomSource randomSource;
+    private final LineOutcomeTable outcomeTable;
+
+    // code of each possible line, by its index in the outcome table
+    private final long[] lineCodes;
+    // per thread permutation of the line indexes, shuffled in place when generating lines
+    // and restored afterwards, so that the lines only depend on the random numbers drawn
+    private final ThreadLocal<int[]> lineIndexes;
 
     @Autowired
-    LineService(LotteryRules rules) {
+    LineService(LotteryRules rules, RandomSource randomSource) {
         this.rules = rules;
+        this.randomSource = randomSource;
+        this.outcomeTable = LineOutcomeTable.forRules(rules);
+        this.lineCodes = new long[outcomeTable.size()];
+        for (int index = 0; index < lineCodes.length; index++) {
+            lineCodes[index] = LineCodes.encode(outcomeTable.numbersOf(index), -1);
+        }
+        this.lineIndexes = ThreadLocal.withInitial(() -> {
+            int[] indexes = new int[lineCodes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = i;
+            }
+            return indexes;
+        });
+    }
+
+    /**
+     * Generates the given amount of distinct lines, sampling without replacement
+     * from all the possible lines (partial Fisher-Yates shuffle), so that each
+     * line costs a single random number regardless of how many were already picked.
+     * The numbers are drawn from a single generator of the configured RandomSource.
+     * @param numberOfLines Amount of lines to generate
+     * @return LineSet with the generated lines
+     */
+    LineSet generateNewLines(int numberOfLines) {
+        logger.debug("Generating {} new lines.", numberOfLines);
+        if (numberOfLines > lineCodes.length) {
+            logger.error("Cannot generate {} different lines, only {} are possible", numberOfLines, lineCodes.length);
+            throw new IllegalArgumentException("All possible lines were already generated.");
+        }
+
+        int[] indexes = lineIndexes.get();
+        int[] swapped = new int[numberOfLines];
+        RandomGenerator random = randomSource.newGenerator();
+        LineSet lines = new LineSet(numberOfLines);
+        for (int i = 0; i < numberOfLines; i++) {
+            int j = i + random.nextInt(indexes.length - i);
+            swapped[i] = j;
+            swap(indexes, i, j);
+            lines.addCode(lineCodes[indexes[i]]);
+        }
+        // undoes the swaps in reverse order, leaving the identity permutation for the next call
+        for (int i = numberOfLines - 1; i >= 0; i--) {
+            swap(indexes, i, swapped[i]);
+        }
+        return lines;
+    }
+
+    /**
+     * @return true if the same lines are generated when the generators of the
+     * RandomSource are obtained in the same order (i.e. it is seeded)
+     */
+    boolean generatesReproducibleLines() {
+        return randomSource.isReproducible();
     }
 
     /**
@@ -34,7 +99,19 @@ class LineService {
      * @return Line object which is different from the existing ones
      */
     Line generateNewLine(Set<Line> existingLines) {
-        logger.info("Generating new line. There are {} existing lines in the ticket.", existingLines.size());
+        LineSet existing = existingLines instanceof LineSet ? (LineSet) existingLines : LineSet.copyOf(existingLines);
+        return LineCodes.toLine(generateNewLineCode(existing));
+    }
+
+    /**
+     * Generates a new line, in its packed form.
+     * @param existingLines LineSet containing the Ticket's existing lines
+     * @return Code of a line which is different from the existing ones
+     */
+    long generateNewLineCode(LineSet existingLines) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("Generating new line. There are {} existing lines in the ticket.", existingLines.size());
+        }
         if (existingLines.size() >= rules.getMaxNumberOfLines()) {
             logger.error("All possible lines ({}) were already generated", existingLines.size());
             throw new IllegalArgumentException("All possible lines were already generated.");
@@ -43,17 +120,17 @@ class LineService {
         int[] numbers = new int[rules.getLineSize()];
         int minLineNumber = rules.getMinLineValue();
         int maxLineNumber = rules.getMaxLineValue();
-        Random random = new Random();
+        RandomGenerator random = randomSource.newGenerator();
 
-        Line newLine;
+        long newCode;
         do {
             for (int i = 0; i < numbers.length; i++) {
                 numbers[i] = random.nextInt((maxLineNumber - minLineNumber) + 1) + minLineNumber;
             }
-            newLine = new Line(numbers);
-        } while (existingLines.contains(newLine));
+            newCode = LineCodes.encode(numbers, -1);
+        } while (existingLines.containsCode(newCode));
 
-        return newLine;
+        return newCode;
     }
 
     /**
@@ -62,7 +139,9 @@ class LineService {
      * @return Line with the outcome
      */
     Line determineLineOutcome(Line line) {
-        logger.info("Determining outcome of line {}", line);
+        if (logger.isTraceEnabled()) {
+            logger.trace("Determining outcome of line {}", line);
+        }
         if (!rules.isLineValid(line)) {
             logger.error("Invalid line: {}", line);
             throw new IllegalArgumentException("Invalid line.");
@@ -73,4 +152,29 @@ class LineService {
         lineWithOutcome.setOutcome(outcome);
         return lineWithOutcome;
     }
+
+    /**
+     * Determines the outcome of the given packed line.
+     * @param code Code of the line to check
+     * @return Code of the line with the outcome
+     */
+    long determineLineOutcome(long code) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("Determining outcome of line {}", LineCodes.toLine(code));
+        }
+        int index = outcomeTable.indexOfCode(code);
+        if (index < 0) {
+            logger.error("Invalid line: {}", code);
+            throw new IllegalArgumentException("Invalid line.");
+        }
+
+        return LineCodes.withOutcome(code, outcomeTable.outcomeOf(index));
+    }
+
+
+    private static void swap(int[] values, int i, int j) {
+        int value = values[j];
+        values[j] = values[i];
+        values[i] = value;
+    }
 }
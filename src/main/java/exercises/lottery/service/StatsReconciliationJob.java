@@ -0,0 +1,108 @@
+package exercises.lottery.service;
+
+import exercises.lottery.data.TicketStats;
+import exercises.lottery.data.TicketStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Job which rebuilds the stats of the tickets from the stored tickets,
+ * correcting the stats kept up to date as tickets are written if they drifted.
+ *
+ * The MongoDB stats are replaced with the counted ones, so the increments of the tickets
+ * written while they are counted can be lost or counted twice: the job only runs when
+ * started by an operator, once no tickets are being written. On startup it only warns
+ * if there are tickets but no stats yet (tickets stored before the stats were kept).
+ */
+@Service
+public class StatsReconciliationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsReconciliationJob.class);
+
+    private final TicketStore ticketStore;
+
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stats-reconciliation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Autowired
+    StatsReconciliationJob(TicketStore ticketStore) {
+        this.ticketStore = ticketStore;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void warnOnStartup() {
+        if (ticketStore.getTicketStats().isEmpty() && !ticketStore.getTicketsPage(null, null, 1).isEmpty()) {
+            logger.warn("There are tickets without stats, rebuild them (POST /tickets/stats) while no tickets are written");
+        }
+    }
+
+    /**
+     * Starts rebuilding the stats in the background, which should only be done while no tickets are written.
+     * @return true if the job was started, false if it was already running
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Stats reconciliation is already running");
+            return false;
+        }
+        jobExecutor.execute(() -> {
+            try {
+                reconcile();
+            } catch (RuntimeException ex) {
+                logger.error("Error rebuilding the stats of the tickets", ex);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Rebuilds the stats, which should only be done while no tickets are written.
+     * @return Stats counted from the tickets
+     * @throws IllegalStateException if the job is already running
+     */
+    public TicketStats run() {
+        if (!running.compareAndSet(false, true)) {
+            logger.error("Stats reconciliation is already running");
+            throw new IllegalStateException("Stats reconciliation is already running.");
+        }
+        return reconcile();
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+
+    private TicketStats reconcile() {
+        try {
+            TicketStats kept = ticketStore.getTicketStats();
+            TicketStats counted = ticketStore.rebuildTicketStats();
+            if (counted.equals(kept)) {
+                logger.info("Rebuilt the stats of the tickets, they were up to date: {}", counted);
+            } else {
+                logger.warn("Rebuilt the stats of the tickets, {} instead of {}", counted, kept);
+            }
+            return counted;
+        } finally {
+            running.set(false);
+        }
+    }
+}
@@ -1,16 +1,20 @@
 package exercises.lottery.service;
 
 import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineCodes;
+import exercises.lottery.domain.LineSet;
 import exercises.lottery.domain.LotteryRules;
 import exercises.lottery.domain.Ticket;
 import exercises.lottery.domain.TicketBuilder;
+import exercises.lottery.metrics.LotteryMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
@@ -27,10 +31,21 @@ public class TicketService {
     private final LotteryRules rules;
     private final LineService lineService;
 
-    @Autowired
+    private final LotteryMetrics.Timer generateTimer;
+    private final LotteryMetrics.Timer checkTimer;
+    private final LotteryMetrics.Summary linesPerTicket;
+
     TicketService(LotteryRules rules, LineService lineService) {
+        this(rules, lineService, LotteryMetrics.disabled());
+    }
+
+    @Autowired
+    TicketService(LotteryRules rules, LineService lineService, LotteryMetrics metrics) {
         this.rules = rules;
         this.lineService = lineService;
+        this.generateTimer = metrics.timer("lottery.tickets.generate");
+        this.checkTimer = metrics.timer("lottery.tickets.check");
+        this.linesPerTicket = metrics.summary("lottery.tickets.lines");
     }
 
     /**
@@ -39,16 +54,57 @@ public class TicketService {
      * @return Ticket object with the given amount of lines
      */
     public Ticket generateNewTicket(int numberOfLines) {
-        logger.info("Generating new ticket with {} lines", numberOfLines);
+        logger.debug("Generating new ticket with {} lines", numberOfLines);
+        if (numberOfLines > rules.getMaxNumberOfLines()) {
+            logger.error("Invalid number of lines ({}).", numberOfLines);
+            throw new IllegalArgumentException("Invalid number of lines.");
+        }
+
+        long start = generateTimer.start();
+        try {
+            Ticket generated = new Ticket(lineService.generateNewLines(Math.max(numberOfLines, 0)));
+            linesPerTicket.record(generated.getLines().size());
+            return generated;
+        } finally {
+            generateTimer.stop(start);
+        }
+    }
+
+    /**
+     * Generates new tickets in parallel, given an amount of tickets and a number of lines.
+     * When the lines are reproducible (seeded RandomSource) the tickets are generated one after
+     * the other instead, so that each one gets the same generator as when the draw is replayed.
+     * @param numberOfTickets Amount of tickets to generate
+     * @param numberOfLines Amount of lines to generate in each ticket
+     * @return List with the generated Ticket objects
+     */
+    public List<Ticket> generateNewTickets(int numberOfTickets, int numberOfLines) {
+        logger.debug("Generating {} new tickets with {} lines", numberOfTickets, numberOfLines);
+        if (numberOfTickets < 0) {
+            logger.error("Invalid number of tickets ({}).", numberOfTickets);
+            throw new IllegalArgumentException("Invalid number of tickets.");
+        }
         if (numberOfLines > rules.getMaxNumberOfLines()) {
             logger.error("Invalid number of lines ({}).", numberOfLines);
             throw new IllegalArgumentException("Invalid number of lines.");
         }
 
-        Set<Line> lines = new LinkedHashSet<>();
-        IntStream.range(0, numberOfLines)
-                .forEach(i -> lines.add(lineService.generateNewLine(lines)));
-        return new Ticket(lines);
+        int lines = Math.max(numberOfLines, 0);
+        long start = generateTimer.start();
+        try {
+            IntStream indexes = IntStream.range(0, numberOfTickets);
+            if (!lineService.generatesReproducibleLines()) {
+                indexes = indexes.parallel();
+            }
+            return indexes
+                    .mapToObj(i -> {
+                        linesPerTicket.record(lines);
+                        return new Ticket(lineService.generateNewLines(lines));
+                    })
+                    .collect(Collectors.toList());
+        } finally {
+            generateTimer.stop(start);
+        }
     }
 
     /**
@@ -58,7 +114,7 @@ public class TicketService {
      * @return Ticket object containing all the intended lines
      */
     public Ticket amendTicket(Ticket ticket, Set<Line> newLines) {
-        logger.info("Amending ticket {} with {} new lines", ticket.getId(), newLines.size());
+        logger.debug("Amending ticket {} with {} new lines", ticket.getId(), newLines.size());
         if (ticket.isChecked()) {
             logger.error("Checked tickets cannot be amended.");
             throw new IllegalArgumentException("Checked tickets cannot be amended.");
@@ -76,24 +132,64 @@ public class TicketService {
 
         Ticket toReturn = new TicketBuilder().id(ticket.getId()).lines(ticket.getLines()).build();
         toReturn.addLines(newLines);
+        linesPerTicket.record(toReturn.getLines().size());
         return toReturn;
     }
 
+    /**
+     * Validates the lines to add to a ticket, which are then appended
+     * to the stored ticket without reading it (see {@link #getMaxNumberOfLines()}).
+     * @param newLines Set of Line objects to add to a Ticket
+     * @return LineSet with the lines to add, without outcomes
+     */
+    public LineSet validateAmendment(Set<Line> newLines) {
+        logger.debug("Validating amendment with {} new lines", newLines.size());
+        if (newLines.size() > rules.getMaxNumberOfLines()) {
+            logger.error("Invalid number of lines ({}).", newLines.size());
+            throw new IllegalArgumentException("Invalid number of lines.");
+        }
+
+        LineSet lines = new LineSet(newLines.size());
+        for (Line line : newLines) {
+            if (!rules.isLineValid(line)) {
+                logger.error("Invalid line(s).");
+                throw new IllegalArgumentException("Invalid line(s).");
+            }
+            lines.addCode(LineCodes.encode(line.getNumbers(), -1));
+        }
+        return lines;
+    }
+
+    /**
+     * @return Maximum number of lines that a ticket can have
+     */
+    public int getMaxNumberOfLines() {
+        return rules.getMaxNumberOfLines();
+    }
+
     /**
      * Checks the given ticket for the outcomes of its lines.
      * @param ticket Ticket object to check
      * @return Ticket object with all the outcomes of its lines included
      */
     public Ticket checkTicket(Ticket ticket) {
-        logger.info("Checking outcomes of ticket {}", ticket.getId());
+        logger.debug("Checking outcomes of ticket {}", ticket.getId());
         if (ticket.isChecked()) {
-            logger.info("Ticket {} is already checked. Nothing will be done.", ticket.getId());
+            logger.debug("Ticket {} is already checked. Nothing will be done.", ticket.getId());
             return ticket;
         }
 
-        Set<Line> checkedLines = new LinkedHashSet<>();
-        ticket.getLines().forEach(line -> checkedLines.add(lineService.determineLineOutcome(line)));
+        long start = checkTimer.start();
+        try {
+            LineSet lines = ticket.getLines();
+            LineSet checkedLines = new LineSet(lines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                checkedLines.addCode(lineService.determineLineOutcome(lines.codeAt(i)));
+            }
 
-        return new TicketBuilder().id(ticket.getId()).checked().lines(checkedLines).build();
+            return new TicketBuilder().id(ticket.getId()).checked().lines(checkedLines).build();
+        } finally {
+            checkTimer.stop(start);
+        }
     }
 }
@@ -0,0 +1,14 @@
+package exercises.lottery.service.random;
+
+/**
+ * Generator of uniformly distributed random numbers.
+ */
+@FunctionalInterface
+public interface RandomGenerator {
+
+    /**
+     * @param bound Upper bound (exclusive), must be positive
+     * @return Random number between zero (inclusive) and the given bound (exclusive)
+     */
+    int nextInt(int bound);
+}
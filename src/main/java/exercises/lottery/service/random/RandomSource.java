@@ -0,0 +1,23 @@
+package exercises.lottery.service.random;
+
+/**
+ * Source of the random numbers used to generate lines.
+ */
+public interface RandomSource {
+
+    /**
+     * Implementations must be safe to call concurrently. The returned
+     * generator is meant to be used by a single thread, for one unit of
+     * work (e.g. the generation of the lines of one ticket).
+     * @return Generator of random numbers
+     */
+    RandomGenerator newGenerator();
+
+    /**
+     * @return true if the generators produce the same numbers each time they are obtained
+     * in the same order, so callers must not hand them out concurrently to replay a draw
+     */
+    default boolean isReproducible() {
+        return false;
+    }
+}
@@ -0,0 +1,77 @@
+package exercises.lottery.service.random;
+
+import java.security.SecureRandom;
+
+/**
+ * RandomSource backed by SecureRandom, for regulated draws.
+ *
+ * Each generator reads from a per-thread buffer which is refilled from
+ * the shared SecureRandom in batches, so that the cost (and contention)
+ * of obtaining entropy is paid once per batch instead of once per number.
+ */
+public class SecureRandomSource implements RandomSource {
+
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private final SecureRandom secureRandom;
+    private final ThreadLocal<EntropyBuffer> buffers;
+
+    public SecureRandomSource() {
+        this(new SecureRandom(), DEFAULT_BATCH_SIZE);
+    }
+
+    public SecureRandomSource(SecureRandom secureRandom, int batchSize) {
+        if (batchSize < Integer.BYTES) {
+            throw new IllegalArgumentException("Batch size must be at least " + Integer.BYTES + " bytes.");
+        }
+        this.secureRandom = secureRandom;
+        this.buffers = ThreadLocal.withInitial(() -> new EntropyBuffer(batchSize - batchSize % Integer.BYTES));
+    }
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public RandomGenerator newGenerator() {
+        return buffers.get();
+    }
+
+    private final class EntropyBuffer implements RandomGenerator {
+
+        private final byte[] bytes;
+        private int position;
+
+        private EntropyBuffer(int size) {
+            bytes = new byte[size];
+            position = size;
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            if (bound <= 0) {
+                throw new IllegalArgumentException("Bound must be positive.");
+            }
+            // same rejection of the biased values as java.util.Random
+            int bits;
+            int value;
+            do {
+                bits = nextBits();
+                value = bits % bound;
+            } while (bits - value + (bound - 1) < 0);
+            return value;
+        }
+
+        private int nextBits() {
+            if (position == bytes.length) {
+                secureRandom.nextBytes(bytes);
+                position = 0;
+            }
+            int bits = ((bytes[position] & 0x7F) << 24)
+                    | ((bytes[position + 1] & 0xFF) << 16)
+                    | ((bytes[position + 2] & 0xFF) << 8)
+                    | (bytes[position + 3] & 0xFF);
+            position += Integer.BYTES;
+            return bits;
+        }
+    }
+}
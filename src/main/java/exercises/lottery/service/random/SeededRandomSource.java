@@ -0,0 +1,45 @@
+package exercises.lottery.service.random;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deterministic RandomSource, meant for tests and for replaying draws.
+ * The n-th generator obtained from sources with the same seed always
+ * produces the same sequence of numbers.
+ */
+public class SeededRandomSource implements RandomSource {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public SeededRandomSource(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public RandomGenerator newGenerator() {
+        SplittableRandom random = new SplittableRandom(seed + sequence.getAndIncrement() * GOLDEN_GAMMA);
+        return random::nextInt;
+    }
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public boolean isReproducible() {
+        return true;
+    }
+
+    /**
+     * Restarts the sequence of generators, so that a draw can be replayed.
+     */
+    public void reset() {
+        sequence.set(0);
+    }
+}
@@ -0,0 +1,28 @@
+package exercises.lottery.service.random;
+
+import java.util.SplittableRandom;
+
+/**
+ * RandomSource which splits a new SplittableRandom from a root
+ * instance for each generator (i.e. for each request).
+ */
+public class SplittableRandomSource implements RandomSource {
+
+    private final SplittableRandom root;
+
+    public SplittableRandomSource() {
+        this.root = new SplittableRandom();
+    }
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public RandomGenerator newGenerator() {
+        SplittableRandom split;
+        synchronized (root) {
+            split = root.split();
+        }
+        return split::nextInt;
+    }
+}
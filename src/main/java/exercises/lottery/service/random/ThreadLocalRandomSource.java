@@ -0,0 +1,20 @@
+package exercises.lottery.service.random;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RandomSource backed by ThreadLocalRandom, which has no shared state
+ * between threads. This is the default source.
+ */
+public class ThreadLocalRandomSource implements RandomSource {
+
+    private static final RandomGenerator GENERATOR = bound -> ThreadLocalRandom.current().nextInt(bound);
+
+    /**
+     *{@inheritDoc}
+     */
+    @Override
+    public RandomGenerator newGenerator() {
+        return GENERATOR;
+    }
+}
@@ -3,19 +3,26 @@ package exercises.lottery.config;
 import com.mongodb.Mongo;
 import cz.jirutka.spring.embedmongo.EmbeddedMongoBuilder;
 import de.flapdoodle.embed.mongo.distribution.Version;
+import exercises.lottery.data.LotteryDao;
+import exercises.lottery.data.TicketConversions;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
 import org.springframework.data.mongodb.config.AbstractMongoConfiguration;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
 
 /**
  * Configuration class for the integration tests.
+ * Not used when the tickets are kept in one of the embedded stores.
  *
  * Created by guisil on 26/07/2016.
  */
 @Profile("integration")
+@ConditionalOnExpression(LotteryDao.MONGO_STORE_CONDITION)
 @Configuration
 @PropertySource(value = "classpath:application.integration.properties")
 public class IntegrationTestMongoConfig extends AbstractMongoConfiguration {
@@ -40,4 +47,11 @@ public class IntegrationTestMongoConfig extends AbstractMongoConfiguration {
                 .port(databasePort())
                 .build();
     }
+
+    @Bean
+    @Override
+    public CustomConversions customConversions() {
+        return TicketConversions.customConversions(
+                environment.getProperty("ticketStorageLayout", TicketConversions.COMPACT_LAYOUT));
+    }
 }
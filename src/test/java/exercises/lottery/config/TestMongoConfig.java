@@ -3,12 +3,15 @@ package exercises.lottery.config;
 import com.mongodb.Mongo;
 import cz.jirutka.spring.embedmongo.EmbeddedMongoBuilder;
 import de.flapdoodle.embed.mongo.distribution.Version;
+import exercises.lottery.data.TicketConversions;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
 import org.springframework.data.mongodb.config.AbstractMongoConfiguration;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
 
 /**
  * Configuration class for the database tests.
@@ -40,4 +43,11 @@ public class TestMongoConfig extends AbstractMongoConfiguration {
                 .port(databasePort())
                 .build();
     }
+
+    @Bean
+    @Override
+    public CustomConversions customConversions() {
+        return TicketConversions.customConversions(
+                environment.getProperty("ticketStorageLayout", TicketConversions.COMPACT_LAYOUT));
+    }
 }
@@ -0,0 +1,106 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.TicketBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+/**
+ * Test class for AsyncLotteryDao.
+ */
+public class AsyncLotteryDaoTest {
+
+    @Rule
+    public MockitoRule mockito = MockitoJUnit.rule();
+
+    @Mock
+    private TicketStore ticketStore;
+
+    @Mock
+    private WriteCoalescer writeCoalescer;
+
+    private ExecutorService executor;
+
+    private AsyncLotteryDao asyncLotteryDao;
+
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "dao-test"));
+        asyncLotteryDao = new AsyncLotteryDao(ticketStore, executor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+
+    @Test
+    public void shouldRetrieveTicketOnExecutor() throws Exception {
+        Ticket expected = new TicketBuilder().id("1").build();
+        AtomicReference<String> threadName = new AtomicReference<>();
+        given(ticketStore.getTicketById("1")).willAnswer(invocation -> {
+            threadName.set(Thread.currentThread().getName());
+            return expected;
+        });
+        assertThat(asyncLotteryDao.getTicketById("1").get()).isEqualTo(expected);
+        assertThat(threadName.get()).isEqualTo("dao-test");
+    }
+
+    @Test
+    public void shouldCompleteExceptionallyWhenOperationFails() throws Exception {
+        Ticket ticket = new TicketBuilder().id("1").build();
+        given(ticketStore.checkTicket(ticket)).willThrow(new EmptyResultDataAccessException("Error checking ticket.", 1));
+        Throwable thrown = catchThrowable(() -> asyncLotteryDao.checkTicket(ticket).join());
+        assertThat(thrown).isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(EmptyResultDataAccessException.class);
+    }
+
+    @Test
+    public void shouldRunOnCallingThreadWithDirectExecutor() throws Exception {
+        AsyncLotteryDao directDao = new AsyncLotteryDao(ticketStore, Runnable::run);
+        Ticket ticket = new TicketBuilder().build();
+        given(ticketStore.createTicket(ticket)).willReturn(ticket);
+        assertThat(directDao.createTicket(ticket).isDone()).isTrue();
+    }
+
+    @Test
+    public void shouldCreateAndCheckTicketsThroughWriteCoalescer() throws Exception {
+        AsyncLotteryDao coalescingDao = new AsyncLotteryDao(ticketStore, executor, Optional.of(writeCoalescer));
+        Ticket created = new TicketBuilder().build();
+        Ticket checked = new TicketBuilder().id("1").checked().build();
+        CompletableFuture<Ticket> createFuture = new CompletableFuture<>();
+        CompletableFuture<Ticket> checkFuture = new CompletableFuture<>();
+        given(writeCoalescer.createTicket(created)).willReturn(createFuture);
+        given(writeCoalescer.checkTicket(checked)).willReturn(checkFuture);
+
+        assertThat(coalescingDao.createTicket(created)).isSameAs(createFuture);
+        assertThat(coalescingDao.checkTicket(checked)).isSameAs(checkFuture);
+        verifyZeroInteractions(ticketStore);
+    }
+
+    @Test
+    public void shouldRejectWhenExecutorIsShutDown() throws Exception {
+        executor.shutdown();
+        Throwable thrown = catchThrowable(() -> asyncLotteryDao.getTicketById("1"));
+        assertThat(thrown).isInstanceOf(RejectedExecutionException.class);
+    }
+}
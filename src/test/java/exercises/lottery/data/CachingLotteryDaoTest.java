@@ -0,0 +1,140 @@
+package exercises.lottery.data;
+
+import exercises.lottery.config.TestMongoConfig;
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.TicketBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.assertj.core.util.Sets.*;
+
+/**
+ * Test class for CachingLotteryDao.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = { TestMongoConfig.class })
+@ActiveProfiles("testing")
+public class CachingLotteryDaoTest {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private TicketCache ticketCache;
+
+    private CachingLotteryDao lotteryDao;
+
+
+    @Before
+    public void setUp() throws Exception {
+        ticketCache = new TicketCache(1000, 60000);
+        lotteryDao = new CachingLotteryDao(new LotteryDao(mongoTemplate), ticketCache);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mongoTemplate.dropCollection(Ticket.class);
+    }
+
+
+    @Test
+    public void shouldReadTicketThroughCache() throws Exception {
+        Ticket ticket = getExampleTicket();
+        mongoTemplate.insert(ticket);
+        assertThat(lotteryDao.getTicketById(ticket.getId())).isEqualTo(ticket);
+        assertThat(ticketCache.missCount()).isEqualTo(1);
+        // changes made directly in the database are not seen until the entry expires
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(ticket.getId())), Update.update("checked", true), Ticket.class);
+        assertThat(lotteryDao.getTicketById(ticket.getId())).isEqualTo(ticket);
+        assertThat(ticketCache.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotCacheMissingTicket() throws Exception {
+        assertThat(lotteryDao.getTicketById("something")).isNull();
+        assertThat(ticketCache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReadStatusThroughCacheWithoutCachingIt() throws Exception {
+        Ticket ticket = getExampleTicket();
+        mongoTemplate.insert(ticket);
+        assertThat(lotteryDao.getTicketStatusById(ticket.getId()).getLines()).isEmpty();
+        assertThat(ticketCache.size()).isEqualTo(0);
+        lotteryDao.getTicketById(ticket.getId());
+        assertThat(lotteryDao.getTicketStatusById(ticket.getId())).isEqualTo(ticket);
+        assertThat(ticketCache.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCacheCreatedTicket() throws Exception {
+        Ticket ticket = lotteryDao.createTicket(getExampleTicket());
+        assertThat(lotteryDao.getTicketById(ticket.getId())).isEqualTo(ticket);
+        assertThat(ticketCache.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldInvalidateAmendedTicket() throws Exception {
+        Ticket ticket = lotteryDao.createTicket(getExampleTicket());
+        ticket.addLines(newLinkedHashSet(new Line(new int[] { 2, 2, 2 })));
+        lotteryDao.amendTicket(ticket);
+        assertThat(lotteryDao.getTicketById(ticket.getId())).isEqualTo(ticket);
+        assertThat(ticketCache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCacheCheckedTicket() throws Exception {
+        Ticket ticket = lotteryDao.createTicket(getExampleTicket());
+        Ticket checked = lotteryDao.checkTicket(checkTicket(ticket));
+        assertThat(lotteryDao.getTicketById(ticket.getId())).isEqualTo(checked);
+        assertThat(ticketCache.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldInvalidateTicketsCheckedInBulk() throws Exception {
+        Ticket ticket = lotteryDao.createTicket(getExampleTicket());
+        lotteryDao.checkTickets(Collections.singletonList(checkTicket(ticket)));
+        assertThat(lotteryDao.getTicketById(ticket.getId()).isChecked()).isTrue();
+    }
+
+    @Test
+    public void shouldCacheTicketsWrittenInBulk() throws Exception {
+        Ticket unchecked = lotteryDao.createTicket(getExampleTicket());
+        Ticket created = getExampleTicket();
+        Ticket checked = checkTicket(unchecked);
+        assertThat(lotteryDao.writeTickets(Collections.singletonList(created), Collections.singletonList(checked)))
+                .containsExactly(null, null);
+        assertThat(lotteryDao.getTicketById(created.getId())).isEqualTo(created);
+        assertThat(lotteryDao.getTicketById(checked.getId())).isEqualTo(checked);
+        assertThat(ticketCache.hitCount()).isEqualTo(2);
+    }
+
+    private Ticket getExampleTicket() {
+        return new TicketBuilder().lines(newLinkedHashSet(
+                new Line(new int[] { 0, 1, 2 }),
+                new Line(new int[] { 1, 0, 1 }))).build();
+    }
+
+    private Ticket checkTicket(Ticket ticket) {
+        Set<Line> lines = new LinkedHashSet<>();
+        for (Line line : ticket.getLines()) {
+            lines.add(new Line(line.getNumbers(), 0));
+        }
+        return new TicketBuilder().id(ticket.getId()).checked().lines(lines).build();
+    }
+}
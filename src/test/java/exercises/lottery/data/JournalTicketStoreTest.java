@@ -0,0 +1,306 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineSet;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.TicketBuilder;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class for JournalTicketStore, which also runs the tests of every TicketStore.
+ * A store opened again on the same directory without closing the previous one
+ * sees the journal as it was left by a process which stopped abruptly.
+ */
+public class JournalTicketStoreTest extends TicketStoreTest {
+
+    // room for about twenty small records per segment, so that the tests span several segments
+    private static final int SEGMENT_BYTES = 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private List<JournalTicketStore> openedStores = new ArrayList<>();
+    private JournalTicketStore journalTicketStore;
+
+
+    @Override
+    protected TicketStore createTicketStore() {
+        try {
+            directory = temporaryFolder.newFolder("journal").toPath();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        journalTicketStore = open();
+        return journalTicketStore;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        openedStores.forEach(JournalTicketStore::close);
+    }
+
+
+    @Test
+    public void shouldRejectInvalidConfiguration() throws Exception {
+        assertThat(catchThrowable(() -> new JournalTicketStore(directory.toString(), 16, true, 0.5, 0)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(catchThrowable(() -> new JournalTicketStore(directory.toString(), SEGMENT_BYTES, true, 0, 0)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(catchThrowable(() -> new JournalTicketStore(directory.toString(), SEGMENT_BYTES, true, 0.5, -1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldKeepTicketsAcrossSegments() throws Exception {
+        List<Ticket> inserted = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            inserted.add(insertTicket());
+        }
+        assertThat(journalTicketStore.segmentCount()).isGreaterThan(1);
+        assertThat(segmentFiles()).hasSize(journalTicketStore.segmentCount());
+        assertThat(journalTicketStore.getAllTickets()).containsExactlyElementsOf(inserted);
+    }
+
+    @Test
+    public void shouldNotStoreTicketLargerThanSegment() throws Exception {
+        LineSet lines = new LineSet();
+        for (int i = 0; i < 27; i++) {
+            lines.add(new Line(new int[] { i / 9, (i / 3) % 3, i % 3 }));
+        }
+        // 27 lines take a record of 238 bytes
+        JournalTicketStore smallSegmentStore = new JournalTicketStore(
+                temporaryFolder.newFolder("small").toString(), 128, true, 0.5, 0);
+        openedStores.add(smallSegmentStore);
+        Throwable thrown = catchThrowable(() -> smallSegmentStore.createTicket(new TicketBuilder().lines(lines).build()));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid number of lines.");
+    }
+
+    @Test
+    public void shouldRecoverTicketsAndCheckpoints() throws Exception {
+        List<Ticket> inserted = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            inserted.add(insertTicket());
+        }
+        Ticket amended = addLinesToTicket(inserted.get(3));
+        ticketStore.amendTicket(amended);
+        Ticket checked = ticketStore.checkTicket(checkTicket(inserted.get(4)));
+        Ticket winner = ticketStore.checkTicket(checkTicket(inserted.get(7), 10));
+        ticketStore.saveCheckpoint("job", inserted.get(5).getId());
+        ticketStore.saveCheckpoint("otherJob", inserted.get(6).getId());
+        ticketStore.removeCheckpoint("otherJob");
+        List<Ticket> expected = ticketStore.getAllTickets();
+
+        JournalTicketStore recovered = open();
+
+        assertThat(recovered.getAllTickets()).containsExactlyElementsOf(expected);
+        assertThat(recovered.getTicketById(amended.getId())).isEqualTo(amended);
+        assertThat(recovered.getTicketById(checked.getId())).isEqualTo(checked);
+        assertThat(recovered.getTopWinners(10)).containsExactly(winner);
+        assertThat(recovered.getTotalPayout()).isEqualTo(20);
+        assertThat(recovered.getTicketStats()).isEqualTo(journalTicketStore.getTicketStats());
+        assertThat(recovered.getCheckpoint("job")).isEqualTo(inserted.get(5).getId());
+        assertThat(recovered.getCheckpoint("otherJob")).isNull();
+        // new tickets get the next IDs
+        Ticket created = recovered.createTicket(getExampleTicket());
+        assertThat(created.getId().compareTo(inserted.get(29).getId())).isPositive();
+    }
+
+    @Test
+    public void shouldRecoverConcurrentWrites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Ticket>> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            futures.add(executor.submit(this::insertTicket));
+        }
+        List<Ticket> inserted = new ArrayList<>();
+        for (Future<Ticket> future : futures) {
+            inserted.add(future.get());
+        }
+        executor.shutdown();
+
+        assertThat(open().getAllTickets()).containsOnlyElementsOf(inserted).hasSize(500);
+    }
+
+    @Test
+    public void shouldDiscardIncompleteRecordAtEndOfJournal() throws Exception {
+        Ticket kept = insertTicket();
+        Ticket incomplete = insertTicket();
+        corruptLastRecord();
+
+        JournalTicketStore recovered = open();
+
+        assertThat(recovered.getAllTickets()).containsExactly(kept);
+        // the next record takes the place of the incomplete one
+        Ticket created = recovered.createTicket(getExampleTicket());
+        assertThat(open().getAllTickets()).containsExactly(kept, created);
+        assertThat(created.getId()).isEqualTo(incomplete.getId());
+    }
+
+    @Test
+    public void shouldDiscardRecordsAfterUnwrittenRecord() throws Exception {
+        Ticket kept = insertTicket();
+        insertTicket();
+        insertTicket();
+        insertTicket();
+        List<Path> files = segmentFiles();
+        Path file = files.get(files.size() - 1);
+        // a record reserved but never written, with the records reserved after it written
+        zeroRecord(file, recordOffsets(file).get(1));
+
+        JournalTicketStore recovered = open();
+
+        assertThat(recovered.getAllTickets()).containsExactly(kept);
+        // the records after the unwritten one do not come back once it is overwritten
+        Ticket created = recovered.createTicket(getExampleTicket());
+        assertThat(open().getAllTickets()).containsExactly(kept, created);
+    }
+
+    @Test
+    public void shouldDiscardSegmentWhichWasNotInitialized() throws Exception {
+        Ticket kept = insertTicket();
+        Files.write(directory.resolve(JournalTicketStore.SEGMENT_PREFIX + "9999999999" + JournalTicketStore.SEGMENT_SUFFIX),
+                new byte[SEGMENT_BYTES]);
+
+        JournalTicketStore recovered = open();
+
+        assertThat(recovered.getAllTickets()).containsExactly(kept);
+        assertThat(segmentFiles()).hasSize(1);
+    }
+
+    @Test
+    public void shouldFailOnCorruptRecordBeforeEndOfJournal() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            insertTicket();
+        }
+        corruptRecord(segmentFiles().get(0), JournalTicketStore.SEGMENT_HEADER_BYTES);
+
+        assertThat(catchThrowable(this::open)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldCompactSegmentsWithReplacedRecords() throws Exception {
+        List<Ticket> inserted = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            inserted.add(insertTicket());
+        }
+        for (int i = 0; i < 20; i++) {
+            inserted.forEach(ticket -> ticketStore.amendTicket(addLinesToTicket(ticket)));
+        }
+        ticketStore.saveCheckpoint("job", inserted.get(0).getId());
+        ticketStore.removeCheckpoint("job");
+        List<Ticket> expected = ticketStore.getAllTickets();
+        int segmentCount = journalTicketStore.segmentCount();
+        long liveBytes = journalTicketStore.liveBytes();
+
+        assertThat(journalTicketStore.compact()).isPositive();
+
+        assertThat(journalTicketStore.segmentCount()).isLessThan(segmentCount);
+        assertThat(segmentFiles()).hasSize(journalTicketStore.segmentCount());
+        assertThat(journalTicketStore.liveBytes()).isEqualTo(liveBytes);
+        assertThat(journalTicketStore.getAllTickets()).containsExactlyElementsOf(expected);
+        assertThat(journalTicketStore.getTicketStats().getUncheckedTickets()).isEqualTo(10);
+        JournalTicketStore recovered = open();
+        assertThat(recovered.getAllTickets()).containsExactlyElementsOf(expected);
+        assertThat(recovered.getTicketStats().getUncheckedTickets()).isEqualTo(10);
+        assertThat(recovered.getCheckpoint("job")).isNull();
+    }
+
+    @Test
+    public void shouldClearTicketsWithoutReusingIdsAfterRestart() throws Exception {
+        Ticket removed = insertTicket();
+        ticketStore.saveCheckpoint("job", removed.getId());
+        journalTicketStore.clear();
+        assertThat(ticketStore.getAllTickets()).isEmpty();
+        assertThat(segmentFiles()).hasSize(1);
+
+        Ticket inserted = insertTicket();
+        JournalTicketStore recovered = open();
+
+        assertThat(recovered.getAllTickets()).containsExactly(inserted);
+        assertThat(recovered.getTicketById(removed.getId())).isNull();
+        assertThat(recovered.getCheckpoint("job")).isEqualTo(removed.getId());
+        assertThat(recovered.createTicket(getExampleTicket()).getId()).isNotEqualTo(removed.getId());
+    }
+
+
+    private JournalTicketStore open() {
+        JournalTicketStore store = new JournalTicketStore(directory.toString(), SEGMENT_BYTES, true, 0.5, 0);
+        openedStores.add(store);
+        return store;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                JournalTicketStore.SEGMENT_PREFIX + "*" + JournalTicketStore.SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private List<Integer> recordOffsets(Path file) throws IOException {
+        List<Integer> offsets = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int offset = JournalTicketStore.SEGMENT_HEADER_BYTES; buffer.getInt(offset) != 0;
+                 offset += JournalTicketStore.RECORD_HEADER_BYTES + buffer.getInt(offset)) {
+                offsets.add(offset);
+            }
+        }
+        return offsets;
+    }
+
+    private void corruptLastRecord() throws IOException {
+        List<Path> files = segmentFiles();
+        Path file = files.get(files.size() - 1);
+        List<Integer> offsets = recordOffsets(file);
+        corruptRecord(file, offsets.get(offsets.size() - 1));
+    }
+
+    /**
+     * Changes the last byte of the record, as if it was not written completely.
+     */
+    private void corruptRecord(Path file, int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int lastByte = offset + JournalTicketStore.RECORD_HEADER_BYTES + buffer.getInt(offset) - 1;
+            buffer.put(lastByte, (byte) ~buffer.get(lastByte));
+            buffer.force();
+        }
+    }
+
+    /**
+     * Zeroes the record, header included, as if it was reserved but not written.
+     */
+    private void zeroRecord(Path file, int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int end = offset + JournalTicketStore.RECORD_HEADER_BYTES + buffer.getInt(offset);
+            for (int i = offset; i < end; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+    }
+}
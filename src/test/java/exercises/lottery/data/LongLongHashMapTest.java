@@ -0,0 +1,65 @@
+package exercises.lottery.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class for LongLongHashMap.
+ */
+public class LongLongHashMapTest {
+
+    private LongLongHashMap map;
+
+
+    @Before
+    public void setUp() throws Exception {
+        map = new LongLongHashMap(4);
+    }
+
+
+    @Test
+    public void shouldNotFindMissingKey() throws Exception {
+        assertThat(map.get(1)).isEqualTo(LongLongHashMap.MISSING);
+        assertThat(map.get(0)).isEqualTo(LongLongHashMap.MISSING);
+        assertThat(map.get(-1)).isEqualTo(LongLongHashMap.MISSING);
+    }
+
+    @Test
+    public void shouldPutAndReplaceValues() throws Exception {
+        assertThat(map.put(1, 10)).isEqualTo(LongLongHashMap.MISSING);
+        assertThat(map.put(1, 11)).isEqualTo(10);
+        assertThat(map.get(1)).isEqualTo(11);
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldGrowKeepingAllEntries() throws Exception {
+        long initialBytes = map.sizeInBytes();
+        for (long key = 1; key <= 10000; key++) {
+            map.put(key, key * 2);
+        }
+        assertThat(map.size()).isEqualTo(10000);
+        assertThat(map.sizeInBytes()).isGreaterThan(initialBytes);
+        for (long key = 1; key <= 10000; key++) {
+            assertThat(map.get(key)).isEqualTo(key * 2);
+        }
+        assertThat(map.get(10001)).isEqualTo(LongLongHashMap.MISSING);
+    }
+
+    @Test
+    public void shouldRejectKeysWhichAreNotPositive() throws Exception {
+        assertThat(catchThrowable(() -> map.put(0, 1))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(catchThrowable(() -> map.put(-5, 1))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldClearAllEntries() throws Exception {
+        map.put(1, 10);
+        map.put(2, 20);
+        map.clear();
+        assertThat(map.size()).isZero();
+        assertThat(map.get(1)).isEqualTo(LongLongHashMap.MISSING);
+    }
+}
@@ -1,38 +1,49 @@
 package exercises.lottery.data;
 
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 import exercises.lottery.config.TestMongoConfig;
 import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineCodes;
+import exercises.lottery.domain.LineSet;
 import exercises.lottery.domain.Ticket;
-import exercises.lottery.domain.TicketBuilder;
+import org.bson.types.ObjectId;
 import org.junit.After;
-import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.assertj.core.util.Sets.*;
 
 /**
- * Test class for LotteryDao.
+ * Test class for LotteryDao, which also runs the tests of every TicketStore.
  *
  * Created by guisil on 25/07/2016.
  */
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = { TestMongoConfig.class })
 @ActiveProfiles("testing")
-public class LotteryDaoTest {
+public class LotteryDaoTest extends TicketStoreTest {
 
     @Autowired
     private MongoTemplate mongoTemplate;
@@ -40,150 +51,273 @@ public class LotteryDaoTest {
     private LotteryDao lotteryDao;
 
 
-    @Before
-    public void setUp() throws Exception {
+    @Override
+    protected TicketStore createTicketStore() {
         lotteryDao = new LotteryDao(mongoTemplate);
+        return lotteryDao;
     }
 
     @After
     public void tearDown() throws Exception {
         mongoTemplate.dropCollection(Ticket.class);
+        mongoTemplate.dropCollection("checkpoints");
+        mongoTemplate.dropCollection(LotteryDao.STATS_COLLECTION);
     }
 
 
     @Test
-    public void shouldFindNoTickets() throws Exception {
-        assertThat(lotteryDao.getAllTickets()).isEmpty();
+    public void shouldStoreLinesAsCodes() throws Exception {
+        Ticket inserted = insertTicket();
+        DBObject stored = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Ticket.class))
+                .findOne(new BasicDBObject("_id", new ObjectId(inserted.getId())));
+        assertThat(stored.get("lines")).isEqualTo(Arrays.asList(
+                LineCodes.encode(new Line(new int[] { 0, 1, 2 })),
+                LineCodes.encode(new Line(new int[] { 1, 0, 1 }))));
     }
 
     @Test
-    public void shouldFindAllTickets() throws Exception {
-        Ticket firstTicket = getExampleTicket();
-        mongoTemplate.insert(firstTicket);
-        Ticket secondTicket = getExampleTicket();
-        mongoTemplate.insert(secondTicket);
-        List<Ticket> finalTickets = lotteryDao.getAllTickets();
-        assertThat(finalTickets).containsOnly(firstTicket, secondTicket);
+    public void shouldReadTicketWithDocumentLines() throws Exception {
+        Ticket expected = insertTicketWithDocumentLinesInDb();
+        assertThat(lotteryDao.getTicketById(expected.getId())).isEqualTo(expected);
+        assertThat(lotteryDao.getTicketsPage(false, null, 10)).containsExactly(expected);
     }
 
     @Test
-    public void shouldNotFindOneTicket() throws Exception {
-        assertThat(lotteryDao.getTicketById("something")).isNull();
+    public void shouldRewriteDocumentLinesAsCodes() throws Exception {
+        Ticket compactTicket = insertTicket();
+        Ticket firstTicket = insertTicketWithDocumentLinesInDb();
+        Ticket secondTicket = insertTicketWithDocumentLinesInDb();
+
+        List<Ticket> firstPage = lotteryDao.getTicketsToMigrate(null, 1);
+        assertThat(firstPage).containsExactly(firstTicket);
+        assertThat(lotteryDao.getTicketsToMigrate(firstTicket.getId(), 10)).containsExactly(secondTicket);
+
+        assertThat(lotteryDao.rewriteTickets(Arrays.asList(compactTicket, firstTicket, secondTicket))).isEqualTo(2);
+        assertThat(lotteryDao.getTicketsToMigrate(null, 10)).isEmpty();
+        assertThat(lotteryDao.getAllTickets()).containsOnly(compactTicket, firstTicket, secondTicket);
     }
 
     @Test
-    public void shouldFindOneTicket() throws Exception {
-        Ticket expected = getExampleTicket();
-        mongoTemplate.insert(expected);
-        assertThat(lotteryDao.getTicketById(expected.getId())).isEqualTo(expected);
+    public void shouldNotAddLineStoredAsDocumentAgain() throws Exception {
+        Ticket ticket = insertTicketWithDocumentLinesInDb();
+        Ticket amended = lotteryDao.addLines(ticket.getId(), LineSet.copyOf(newLinkedHashSet(
+                new Line(new int[] { 0, 1, 2 }),
+                new Line(new int[] { 2, 2, 2 }))), 27);
+        assertThat(amended.getLines()).hasSize(3);
+        assertThat(findInDb(ticket).get("lines")).isEqualTo(Arrays.asList(
+                LineCodes.encode(new Line(new int[] { 0, 1, 2 })),
+                LineCodes.encode(new Line(new int[] { 1, 0, 1 })),
+                LineCodes.encode(new Line(new int[] { 2, 2, 2 }))));
     }
 
     @Test
-    public void shouldFindUncheckedTickets() throws Exception {
-        Ticket uncheckedTicket = getExampleTicket();
-        mongoTemplate.insert(uncheckedTicket);
-        Ticket checkedTicket = getExampleTicket();
-        checkedTicket.setChecked(true);
-        mongoTemplate.insert(checkedTicket);
+    public void shouldNotLoseLinesAddedWhileRewritingTickets() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                Ticket ticket = insertTicketWithDocumentLinesInDb();
+                List<Ticket> toMigrate = Collections.singletonList(lotteryDao.getTicketById(ticket.getId()));
+                LineSet newLines = LineSet.copyOf(newLinkedHashSet(new Line(new int[] { 2, 2, 2 })));
+                CountDownLatch ready = new CountDownLatch(2);
+                Future<Integer> rewrite = executor.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    return lotteryDao.rewriteTickets(toMigrate);
+                });
+                Future<Ticket> amend = executor.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    return lotteryDao.addLines(ticket.getId(), newLines, 27);
+                });
 
-        assertThat(lotteryDao.getTicketsByChecked(false)).containsOnly(uncheckedTicket);
+                rewrite.get(5, TimeUnit.SECONDS);
+                Ticket amended = amend.get(5, TimeUnit.SECONDS);
+                assertThat(amended.getLines()).hasSize(3);
+                assertThat(lotteryDao.getTicketById(ticket.getId())).isEqualTo(amended);
+                assertThat(findInDb(ticket).get("lines")).isEqualTo(Arrays.asList(
+                        LineCodes.encode(new Line(new int[] { 0, 1, 2 })),
+                        LineCodes.encode(new Line(new int[] { 1, 0, 1 })),
+                        LineCodes.encode(new Line(new int[] { 2, 2, 2 }))));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(lotteryDao.getTicketsToMigrate(null, 10)).isEmpty();
     }
 
     @Test
-    public void shouldFindCheckedTickets() throws Exception {
-        Ticket uncheckedTicket = getExampleTicket();
-        mongoTemplate.insert(uncheckedTicket);
-        Ticket checkedTicket = getExampleTicket();
-        checkedTicket.setChecked(true);
-        mongoTemplate.insert(checkedTicket);
-        assertThat(lotteryDao.getTicketsByChecked(true)).containsOnly(checkedTicket);
+    public void shouldStorePayoutOfCheckedTickets() throws Exception {
+        Ticket checked = lotteryDao.checkTicket(checkTicket(insertTicket(), 5));
+        Ticket createdChecked = lotteryDao.createTicket(checkTicket(getExampleTicket(), 10));
+        Ticket bulkChecked = checkTicket(insertTicket(), 1);
+        lotteryDao.checkTickets(Collections.singletonList(bulkChecked));
+        Ticket unchecked = insertTicket();
+
+        assertThat(findInDb(checked).get(LotteryDao.PAYOUT_FIELD)).isEqualTo(10);
+        assertThat(findInDb(checked).get(LotteryDao.BEST_OUTCOME_FIELD)).isEqualTo(5);
+        assertThat(findInDb(createdChecked).get(LotteryDao.PAYOUT_FIELD)).isEqualTo(20);
+        assertThat(findInDb(bulkChecked).get(LotteryDao.PAYOUT_FIELD)).isEqualTo(2);
+        assertThat(findInDb(unchecked).containsField(LotteryDao.PAYOUT_FIELD)).isFalse();
+        assertThat(lotteryDao.getTicketById(createdChecked.getId())).isEqualTo(createdChecked);
     }
 
     @Test
-    public void shouldCreateTicket() throws Exception {
-        Ticket expected = getExampleTicket();
-        assertThat(expected.getId()).isNullOrEmpty();
-        lotteryDao.createTicket(expected);
-        assertThat(expected.getId()).isNotEmpty();
-        Ticket retrieved = mongoTemplate.findOne(new Query(Criteria.where("_id").is(expected.getId())), Ticket.class);
-        assertThat(retrieved).isEqualTo(expected);
+    public void shouldStorePayoutOfCheckedTicketsStoredWithoutIt() throws Exception {
+        Ticket stored = lotteryDao.checkTicket(checkTicket(insertTicket(), 5));
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(Ticket.class)).update(
+                new BasicDBObject("_id", new ObjectId(stored.getId())),
+                new BasicDBObject("$unset", new BasicDBObject(LotteryDao.PAYOUT_FIELD, "").append(LotteryDao.BEST_OUTCOME_FIELD, "")));
+        insertCheckedTicket();
+        assertThat(lotteryDao.getTopWinners(10)).isEmpty();
+
+        List<Ticket> toMigrate = lotteryDao.getTicketsToMigrate(null, 10);
+        assertThat(toMigrate).containsExactly(stored);
+        assertThat(lotteryDao.rewriteTickets(toMigrate)).isEqualTo(1);
+
+        assertThat(lotteryDao.getTicketsToMigrate(null, 10)).isEmpty();
+        assertThat(lotteryDao.getTopWinners(10)).containsExactly(stored);
+        assertThat(lotteryDao.getTotalPayout()).isEqualTo(10);
     }
 
     @Test
-    public void shouldThrowExceptionWhenInsertingWithExistingId() throws Exception {
-        Ticket inserted = insertTicketInDb();
-        // Try to insert it again
-        Throwable thrown = catchThrowable(() -> lotteryDao.createTicket(inserted));
-        assertThat(thrown).isInstanceOf(DuplicateKeyException.class);
+    public void shouldRebuildStatsOfTicketsStoredWithoutThem() throws Exception {
+        insertTicket();
+        insertCheckedTicket();
+        TicketStats stats = lotteryDao.getTicketStats();
+        mongoTemplate.dropCollection(LotteryDao.STATS_COLLECTION);
+        assertThat(lotteryDao.getTicketStats()).isEqualTo(TicketStats.empty());
+
+        assertThat(lotteryDao.rebuildTicketStats()).isEqualTo(stats);
+        assertThat(lotteryDao.getTicketStats()).isEqualTo(stats);
     }
 
     @Test
-    public void shouldUpdateLines() throws Exception {
-        Ticket initial = getExampleTicket();
-        assertThat(initial.getId()).isNullOrEmpty();
-        mongoTemplate.insert(initial);
-        assertThat(initial.getId()).isNotEmpty();
-        Ticket updated = addLinesToTicket(initial);
-        lotteryDao.amendTicket(updated);
-        Ticket retrieved = mongoTemplate.findOne(new Query(Criteria.where("_id").is(initial.getId())), Ticket.class);
-        assertThat(retrieved).isEqualTo(updated);
+    public void shouldCreateAndCheckTicketsInOneWrite() throws Exception {
+        Ticket toCheck = checkTicket(insertTicket(), 5);
+        Ticket created = getExampleTicket();
+        Ticket createdChecked = checkTicket(getExampleTicket(), 10);
+
+        List<RuntimeException> errors = lotteryDao.writeTickets(
+                Arrays.asList(created, createdChecked), Collections.singletonList(toCheck));
+
+        assertThat(errors).containsExactly(null, null, null);
+        assertThat(created.getId()).isNotEmpty();
+        assertThat(lotteryDao.getAllTickets()).containsOnly(created, createdChecked, toCheck);
+        assertThat(findInDb(toCheck).get(LotteryDao.PAYOUT_FIELD)).isEqualTo(10);
+        assertThat(findInDb(createdChecked).get(LotteryDao.PAYOUT_FIELD)).isEqualTo(20);
+        assertThat(lotteryDao.getTicketStats()).isEqualTo(lotteryDao.rebuildTicketStats());
     }
 
     @Test
-    public void shouldThrowExceptionWhenAmendingNonExistingTicket() throws Exception {
-        Ticket nonExistingTicket = getExampleTicket();
-        nonExistingTicket.setId("something");
-        Throwable thrown = catchThrowable(() -> lotteryDao.amendTicket(nonExistingTicket));
-        assertThat(thrown).isInstanceOf(EmptyResultDataAccessException.class).hasMessage("Error amending ticket.");
+    public void shouldReportErrorOfEachTicketOfWrite() throws Exception {
+        Ticket existing = insertTicket();
+        Ticket alreadyChecked = lotteryDao.checkTicket(checkTicket(insertTicket(), 5));
+        Ticket toCheck = checkTicket(insertTicket(), 1);
+        Ticket created = getExampleTicket();
+
+        List<RuntimeException> errors = lotteryDao.writeTickets(
+                Arrays.asList(created, getExampleTicketWithId(existing.getId())),
+                Arrays.asList(toCheck, checkTicket(toCheck, 1), checkTicket(alreadyChecked, 10), checkTicket(missingTicket(), 1)));
+
+        assertThat(errors.get(0)).isNull();
+        assertThat(errors.get(1)).isInstanceOf(DuplicateKeyException.class);
+        assertThat(errors.get(2)).isNull();
+        assertThat(errors.subList(3, 6).stream().allMatch(error -> error instanceof EmptyResultDataAccessException)).isTrue();
+        assertThat(lotteryDao.getAllTickets()).containsOnly(existing, alreadyChecked, toCheck, created);
+        assertThat(lotteryDao.getTicketStats()).isEqualTo(lotteryDao.rebuildTicketStats());
     }
 
     @Test
-    public void shouldCheckTicketAndAddOutcomes() {
-        Ticket initial = getExampleTicket();
-        assertThat(initial.getId()).isNullOrEmpty();
-        mongoTemplate.insert(initial);
-        assertThat(initial.getId()).isNotEmpty();
-        Ticket checked = checkTicket(initial);
-        lotteryDao.checkTicket(checked);
-        Ticket retrieved = mongoTemplate.findOne(new Query(Criteria.where("_id").is(initial.getId())), Ticket.class);
-        assertThat(retrieved).isEqualTo(checked);
+    public void shouldCheckTicketInOnlyOneOfConcurrentWrites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                Ticket toCheck = checkTicket(insertTicket(), 5);
+                CountDownLatch ready = new CountDownLatch(2);
+                Callable<RuntimeException> write = () -> {
+                    ready.countDown();
+                    ready.await();
+                    return lotteryDao.writeTickets(Collections.emptyList(), Collections.singletonList(toCheck)).get(0);
+                };
+                Future<RuntimeException> first = executor.submit(write);
+                Future<RuntimeException> second = executor.submit(write);
+
+                List<RuntimeException> errors = Arrays.asList(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+                assertThat(errors.stream().filter(error -> error == null).count()).isEqualTo(1);
+                assertThat(errors.stream().filter(error -> error != null)
+                        .allMatch(error -> error instanceof EmptyResultDataAccessException)).isTrue();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(lotteryDao.getTicketStats().getCheckedTickets()).isEqualTo(20);
+        assertThat(lotteryDao.getTicketStats()).isEqualTo(lotteryDao.rebuildTicketStats());
     }
 
     @Test
-    public void shouldThrowExceptionWhenCheckingNonExistingTicket() throws Exception {
-        Ticket nonExistingTicket = getExampleTicket();
-        nonExistingTicket.setId("something");
-        Throwable thrown = catchThrowable(() -> lotteryDao.checkTicket(nonExistingTicket));
-        assertThat(thrown).isInstanceOf(EmptyResultDataAccessException.class).hasMessage("Error checking ticket.");
+    public void shouldCreateIndexes() throws Exception {
+        lotteryDao.ensureIndexes();
+        lotteryDao.ensureIndexes();
+        List<String> indexNames = new ArrayList<>();
+        for (DBObject index : mongoTemplate.getCollection(mongoTemplate.getCollectionName(Ticket.class)).getIndexInfo()) {
+            indexNames.add((String) index.get("name"));
+        }
+        assertThat(indexNames).contains(LotteryDao.CHECKED_INDEX, LotteryDao.UNCHECKED_INDEX, LotteryDao.PAYOUT_INDEX);
     }
 
-    private Ticket getExampleTicket() {
-        Set<Line> lines = newLinkedHashSet(
-                new Line(new int[] { 0, 1, 2}),
-                new Line(new int[] { 1, 0, 1}));
-        return new TicketBuilder().lines(lines).build();
+    @Test
+    public void shouldUseIndexesForListingQueries() throws Exception {
+        lotteryDao.ensureIndexes();
+        List<Ticket> inserted = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            inserted.add(i % 2 == 0 ? insertTicket() : insertCheckedTicket());
+        }
+        String afterId = inserted.get(5).getId();
+
+        assertUsesIndex(lotteryDao.checkedQuery(true));
+        assertUsesIndex(lotteryDao.checkedQuery(false));
+        assertUsesIndex(lotteryDao.pageQuery(true, afterId, 5));
+        assertUsesIndex(lotteryDao.pageQuery(false, afterId, 5));
+        assertUsesIndex(lotteryDao.pageQuery(null, afterId, 5));
+        assertUsesIndex(lotteryDao.topWinnersQuery(5));
     }
 
-    private Ticket addLinesToTicket(Ticket ticket) {
-        Set<Line> lines = ticket.getLines();
-        lines.add(new Line(new int[] { 1, 1, 0 }));
-        lines.add(new Line(new int[] { 2, 2, 2 }));
-        ticket.setLines(lines);
+    private Ticket getExampleTicketWithId(String ticketId) {
+        Ticket ticket = getExampleTicket();
+        ticket.setId(ticketId);
         return ticket;
     }
 
-    private Ticket checkTicket(Ticket ticket) {
-        Set<Line> lines = ticket.getLines();
-        for (Line line : lines) {
-            line.setOutcome(0);
-        }
-        return new TicketBuilder().id(ticket.getId()).checked().lines(lines).build();
+    private Ticket missingTicket() {
+        Ticket ticket = getExampleTicket();
+        ticket.setId(new ObjectId().toString());
+        return ticket;
     }
 
-    private Ticket insertTicketInDb() {
-        Ticket inserted = getExampleTicket();
-        mongoTemplate.insert(inserted);
-        assertThat(inserted.getId()).isNotEmpty();
-        return inserted;
+    private void assertUsesIndex(Query query) {
+        List<String> stages = QueryDiagnostics.winningPlanStages(QueryDiagnostics.explain(mongoTemplate, Ticket.class, query));
+        assertThat(stages).contains("IXSCAN").doesNotContain("COLLSCAN", "SORT");
+    }
+
+    private DBObject findInDb(Ticket ticket) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Ticket.class))
+                .findOne(new BasicDBObject("_id", new ObjectId(ticket.getId())));
+    }
+
+    private Ticket insertTicketWithDocumentLinesInDb() {
+        Ticket ticket = getExampleTicket();
+        BasicDBList lines = new BasicDBList();
+        for (Line line : ticket.getLines()) {
+            BasicDBList numbers = new BasicDBList();
+            for (int number : line.getNumbers()) {
+                numbers.add(number);
+            }
+            lines.add(new BasicDBObject("numbers", numbers).append("outcome", line.getOutcome()));
+        }
+        ObjectId id = new ObjectId();
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(Ticket.class))
+                .insert(new BasicDBObject("_id", id).append("checked", false).append("lines", lines));
+        ticket.setId(id.toString());
+        return ticket;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineSet;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.TicketBuilder;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.assertj.core.util.Sets.*;
+
+/**
+ * Test class for OffHeapTicketStore, which also runs the tests of every TicketStore.
+ */
+public class OffHeapTicketStoreTest extends TicketStoreTest {
+
+    // room for about twenty small records per segment, so that the tests span several segments
+    private static final int SEGMENT_BYTES = 512;
+
+    private OffHeapTicketStore offHeapTicketStore;
+
+
+    @Override
+    protected TicketStore createTicketStore() {
+        offHeapTicketStore = new OffHeapTicketStore(SEGMENT_BYTES);
+        return offHeapTicketStore;
+    }
+
+
+    @Test
+    public void shouldRejectInvalidSegmentSize() throws Exception {
+        assertThat(catchThrowable(() -> new OffHeapTicketStore(8))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(catchThrowable(() -> new OffHeapTicketStore(1001))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldKeepTicketsAcrossSegments() throws Exception {
+        List<Ticket> inserted = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            inserted.add(insertTicket());
+        }
+        assertThat(offHeapTicketStore.segmentCount()).isGreaterThan(1);
+        assertThat(offHeapTicketStore.ticketCount()).isEqualTo(50);
+        assertThat(offHeapTicketStore.getAllTickets()).containsExactlyElementsOf(inserted);
+        for (Ticket ticket : inserted) {
+            assertThat(offHeapTicketStore.getTicketById(ticket.getId())).isEqualTo(ticket);
+        }
+    }
+
+    @Test
+    public void shouldMoveTicketWhenLinesOutgrowItsRecord() throws Exception {
+        Ticket before = insertTicket();
+        Ticket initial = insertTicket();
+        Ticket after = insertTicket();
+        long liveBytes = offHeapTicketStore.liveBytes();
+        LineSet newLines = LineSet.copyOf(newLinkedHashSet(
+                new Line(new int[] { 2, 2, 2 }),
+                new Line(new int[] { 1, 1, 1 }),
+                new Line(new int[] { 0, 0, 0 })));
+
+        Ticket amended = offHeapTicketStore.addLines(initial.getId(), newLines, 27);
+
+        assertThat(amended.getLines()).hasSize(5);
+        assertThat(offHeapTicketStore.liveBytes()).isGreaterThan(liveBytes);
+        assertThat(offHeapTicketStore.getTicketById(initial.getId())).isEqualTo(amended);
+        assertThat(offHeapTicketStore.getTicketById(before.getId())).isEqualTo(before);
+        assertThat(offHeapTicketStore.getTicketById(after.getId())).isEqualTo(after);
+        assertThat(offHeapTicketStore.getAllTickets()).containsExactly(before, amended, after);
+    }
+
+    @Test
+    public void shouldNotStoreTicketLargerThanSegment() throws Exception {
+        LineSet lines = new LineSet();
+        for (int i = 0; i < 27; i++) {
+            lines.add(new Line(new int[] { i / 9, (i / 3) % 3, i % 3 }));
+        }
+        // 27 lines take a record with room for 32, 264 bytes
+        OffHeapTicketStore smallSegmentStore = new OffHeapTicketStore(256);
+        Throwable thrown = catchThrowable(() -> smallSegmentStore.createTicket(new TicketBuilder().lines(lines).build()));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid number of lines.");
+    }
+
+    @Test
+    public void shouldPageAfterIdsOfOtherStores() throws Exception {
+        Ticket first = insertTicket();
+        Ticket second = insertTicket();
+        String beforeAll = "000000000000000000000000";
+        String afterAll = "ffffffffffffffffffffffff";
+        assertThat(offHeapTicketStore.getTicketsPage(null, beforeAll, 10)).containsExactly(first, second);
+        assertThat(offHeapTicketStore.getTicketsPage(null, afterAll, 10)).isEmpty();
+        assertThat(offHeapTicketStore.getTicketsPage(null, first.getId(), 10)).containsExactly(second);
+        // IDs sort in creation order
+        assertThat(first.getId().compareTo(second.getId())).isNegative();
+    }
+
+    @Test
+    public void shouldNotInsertTicketWithIdOfAnotherStore() throws Exception {
+        Ticket ticket = getExampleTicket();
+        ticket.setId(new ObjectId().toString());
+        Throwable thrown = catchThrowable(() -> offHeapTicketStore.createTicket(ticket));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldClearTicketsWithoutReusingIds() throws Exception {
+        Ticket removed = insertTicket();
+        offHeapTicketStore.clear();
+        assertThat(offHeapTicketStore.getAllTickets()).isEmpty();
+        assertThat(offHeapTicketStore.segmentCount()).isZero();
+        assertThat(offHeapTicketStore.getTicketById(removed.getId())).isNull();
+
+        Ticket inserted = insertTicket();
+        assertThat(inserted.getId()).isNotEqualTo(removed.getId());
+        // a removed ticket can be inserted again with its ID
+        offHeapTicketStore.createTicket(removed);
+        assertThat(offHeapTicketStore.getAllTickets()).containsExactly(removed, inserted);
+    }
+
+    @Test
+    public void shouldStreamTicketsInBatches() throws Exception {
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < OffHeapTicketStore.STREAM_BATCH_SIZE + 1; i++) {
+            tickets.add(getExampleTicket());
+        }
+        offHeapTicketStore.createTickets(tickets);
+        assertThat(drain(offHeapTicketStore.streamAllTickets())).containsExactlyElementsOf(tickets);
+        assertThat(drain(offHeapTicketStore.streamTicketsByChecked(true))).isEmpty();
+    }
+}
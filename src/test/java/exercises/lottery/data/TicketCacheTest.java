@@ -0,0 +1,165 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.TicketBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.assertj.core.util.Sets.*;
+
+/**
+ * Test class for TicketCache.
+ */
+public class TicketCacheTest {
+
+    private AtomicLong nanoTime;
+
+    private TicketCache ticketCache;
+
+
+    @Before
+    public void setUp() throws Exception {
+        nanoTime = new AtomicLong();
+        ticketCache = new TicketCache(9, 1000, nanoTime::get);
+    }
+
+
+    @Test
+    public void shouldMissUncachedTicket() throws Exception {
+        assertThat(ticketCache.get("1")).isNull();
+        assertThat(ticketCache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldHitCachedTicket() throws Exception {
+        Ticket ticket = createTicket("1", true);
+        ticketCache.put(ticket);
+        assertThat(ticketCache.get("1")).isEqualTo(ticket);
+        assertThat(ticketCache.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReturnCopiesOfCachedTickets() throws Exception {
+        Ticket ticket = createTicket("1", true);
+        ticketCache.put(ticket);
+        ticket.addLines(newLinkedHashSet(new Line(new int[] { 2, 2, 2 })));
+        Ticket cached = ticketCache.get("1");
+        assertThat(cached.getLines()).hasSize(2);
+        cached.addLines(newLinkedHashSet(new Line(new int[] { 2, 2, 2 })));
+        assertThat(ticketCache.get("1").getLines()).hasSize(2);
+    }
+
+    @Test
+    public void shouldExpireUncheckedTickets() throws Exception {
+        ticketCache.put(createTicket("1", false));
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertThat(ticketCache.get("1")).isNotNull();
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(ticketCache.get("1")).isNull();
+        assertThat(ticketCache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotExpireCheckedTickets() throws Exception {
+        ticketCache.put(createTicket("1", true));
+        nanoTime.addAndGet(TimeUnit.DAYS.toNanos(1));
+        assertThat(ticketCache.get("1")).isNotNull();
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedTicketsBeyondMaxWeight() throws Exception {
+        // each ticket weighs 3, for a maximum weight of 9
+        ticketCache.put(createTicket("1", true));
+        ticketCache.put(createTicket("2", true));
+        ticketCache.put(createTicket("3", true));
+        ticketCache.get("1");
+        ticketCache.put(createTicket("4", true));
+        assertThat(ticketCache.size()).isEqualTo(3);
+        assertThat(ticketCache.weight()).isEqualTo(9);
+        assertThat(ticketCache.get("2")).isNull();
+        assertThat(ticketCache.get("1")).isNotNull();
+        assertThat(ticketCache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReplaceAndInvalidateTickets() throws Exception {
+        ticketCache.put(createTicket("1", false));
+        Ticket checked = createTicket("1", true);
+        ticketCache.put(checked);
+        assertThat(ticketCache.get("1")).isEqualTo(checked);
+        assertThat(ticketCache.weight()).isEqualTo(3);
+        ticketCache.invalidate("1");
+        assertThat(ticketCache.get("1")).isNull();
+        assertThat(ticketCache.weight()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotReplaceCheckedTicketWithUncheckedOne() throws Exception {
+        Ticket checked = createTicket("1", true);
+        ticketCache.put(checked);
+        ticketCache.put(createTicket("1", false));
+        assertThat(ticketCache.get("1")).isEqualTo(checked);
+    }
+
+    @Test
+    public void shouldCacheReadTicketWithoutConcurrentWrites() throws Exception {
+        long stamp = ticketCache.readStamp("1");
+        Ticket read = createTicket("1", false);
+        ticketCache.putRead(read, stamp);
+        assertThat(ticketCache.get("1")).isEqualTo(read);
+    }
+
+    @Test
+    public void shouldNotCacheReadTicketWrittenSinceTheRead() throws Exception {
+        long stamp = ticketCache.readStamp("1");
+        Ticket checked = createTicket("1", true);
+        ticketCache.put(checked);
+        ticketCache.putRead(createTicket("1", false), stamp);
+        assertThat(ticketCache.get("1")).isEqualTo(checked);
+
+        stamp = ticketCache.readStamp("2");
+        ticketCache.invalidate("2");
+        ticketCache.putRead(createTicket("2", false), stamp);
+        assertThat(ticketCache.get("2")).isNull();
+    }
+
+    @Test
+    public void shouldSplitMaxWeightBetweenSegments() throws Exception {
+        TicketCache segmented = new TicketCache(4 * 9, 1000, 4, nanoTime::get);
+        for (int i = 0; i < 100; i++) {
+            segmented.put(createTicket(String.valueOf(i), true));
+        }
+        assertThat(segmented.weight()).isLessThanOrEqualTo(4 * 9);
+        assertThat(segmented.size()).isGreaterThan(3);
+        assertThat(segmented.get("99")).isNotNull();
+        segmented.clear();
+        assertThat(segmented.size()).isEqualTo(0);
+        assertThat(segmented.weight()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRejectInvalidConfiguration() throws Exception {
+        assertThat(catchThrowable(() -> new TicketCache(-1, 1000))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(catchThrowable(() -> new TicketCache(10, 1000, 0, nanoTime::get)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldNotCacheWhenDisabled() throws Exception {
+        TicketCache disabled = new TicketCache(0, 1000);
+        disabled.put(createTicket("1", true));
+        assertThat(disabled.get("1")).isNull();
+    }
+
+    private Ticket createTicket(String id, boolean checked) {
+        TicketBuilder builder = new TicketBuilder().id(id).lines(newLinkedHashSet(
+                new Line(new int[] { 0, 1, 2 }, checked ? 1 : -1),
+                new Line(new int[] { 1, 0, 1 }, checked ? 0 : -1)));
+        return checked ? builder.checked().build() : builder.build();
+    }
+}
@@ -0,0 +1,76 @@
+package exercises.lottery.data;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineCodes;
+import exercises.lottery.domain.LineSet;
+import org.bson.BasicBSONEncoder;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.assertj.core.util.Sets.*;
+
+/**
+ * Test class for TicketConversions.
+ */
+public class TicketConversionsTest {
+
+    @Test
+    public void shouldWriteLinesAsCodesInCompactLayout() throws Exception {
+        LineSet lines = LineSet.copyOf(newLinkedHashSet(
+                new Line(new int[] { 2, 0, 1 }, 10),
+                new Line(new int[] { 0, 0, 1 })));
+        BasicDBList written = TicketConversions.CompactLinesWritingConverter.INSTANCE.convert(lines);
+        assertThat(written).containsExactly(lines.codeAt(0), lines.codeAt(1));
+        assertThat(TicketConversions.LinesReadingConverter.INSTANCE.convert(written)).isEqualTo(lines);
+    }
+
+    @Test
+    public void shouldReadLinesInDocumentLayout() throws Exception {
+        BasicDBList stored = new BasicDBList();
+        stored.add(new BasicDBObject("numbers", numbers(2, 0, 1)).append("outcome", 10));
+        stored.add(new BasicDBObject("numbers", numbers(0, 0, 1)));
+        LineSet read = TicketConversions.LinesReadingConverter.INSTANCE.convert(stored);
+        assertThat(read).containsExactly(new Line(new int[] { 2, 0, 1 }, 10), new Line(new int[] { 0, 0, 1 }));
+    }
+
+    @Test
+    public void shouldOnlyWriteLinesAsCodesInCompactLayout() throws Exception {
+        CustomConversions compact = TicketConversions.customConversions(TicketConversions.COMPACT_LAYOUT);
+        assertThat(compact.hasCustomWriteTarget(LineSet.class)).isTrue();
+        assertThat(compact.hasCustomReadTarget(BasicDBList.class, LineSet.class)).isTrue();
+        CustomConversions documents = TicketConversions.customConversions(TicketConversions.DOCUMENTS_LAYOUT);
+        assertThat(documents.hasCustomWriteTarget(LineSet.class)).isFalse();
+        assertThat(documents.hasCustomReadTarget(BasicDBList.class, LineSet.class)).isTrue();
+    }
+
+    @Test
+    public void shouldThrowExceptionForUnknownLayout() throws Exception {
+        Throwable thrown = catchThrowable(() -> TicketConversions.customConversions("something"));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Unknown ticket storage layout: something");
+    }
+
+    @Test
+    public void shouldStoreLinesInLessSpaceInCompactLayout() throws Exception {
+        BasicDBList documentLines = new BasicDBList();
+        BasicDBList compactLines = new BasicDBList();
+        for (int i = 0; i < 27; i++) {
+            int[] numbers = { i / 9, (i / 3) % 3, i % 3 };
+            documentLines.add(new BasicDBObject("numbers", numbers(numbers)).append("outcome", 0));
+            compactLines.add(LineCodes.encode(numbers, 0));
+        }
+        int documentSize = new BasicBSONEncoder().encode(new BasicDBObject("lines", documentLines)).length;
+        int compactSize = new BasicBSONEncoder().encode(new BasicDBObject("lines", compactLines)).length;
+        assertThat(compactSize).isLessThan(documentSize / 3);
+    }
+
+    private static BasicDBList numbers(int... numbers) {
+        BasicDBList list = new BasicDBList();
+        for (int number : numbers) {
+            list.add(number);
+        }
+        return list;
+    }
+}
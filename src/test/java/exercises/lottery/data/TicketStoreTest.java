@@ -0,0 +1,430 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineSet;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.TicketBuilder;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.assertj.core.util.Sets.*;
+
+/**
+ * Tests which every TicketStore must pass, run by the test class of each implementation.
+ */
+public abstract class TicketStoreTest {
+
+    protected TicketStore ticketStore;
+
+
+    /**
+     * @return Empty store to test
+     */
+    protected abstract TicketStore createTicketStore();
+
+    @Before
+    public void setUpTicketStore() throws Exception {
+        ticketStore = createTicketStore();
+    }
+
+
+    @Test
+    public void shouldFindNoTickets() throws Exception {
+        assertThat(ticketStore.getAllTickets()).isEmpty();
+    }
+
+    @Test
+    public void shouldFindAllTickets() throws Exception {
+        Ticket firstTicket = insertTicket();
+        Ticket secondTicket = insertTicket();
+        List<Ticket> finalTickets = ticketStore.getAllTickets();
+        assertThat(finalTickets).containsOnly(firstTicket, secondTicket);
+    }
+
+    @Test
+    public void shouldNotFindOneTicket() throws Exception {
+        assertThat(ticketStore.getTicketById("something")).isNull();
+        assertThat(ticketStore.getTicketById(new ObjectId().toString())).isNull();
+    }
+
+    @Test
+    public void shouldFindOneTicket() throws Exception {
+        Ticket expected = insertTicket();
+        assertThat(ticketStore.getTicketById(expected.getId())).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldFindOnlyStatusOfTicket() throws Exception {
+        Ticket checked = insertCheckedTicket();
+        Ticket status = ticketStore.getTicketStatusById(checked.getId());
+        assertThat(status.getId()).isEqualTo(checked.getId());
+        assertThat(status.isChecked()).isTrue();
+        assertThat(status.getLines()).isEmpty();
+        assertThat(ticketStore.getTicketStatusById("something")).isNull();
+    }
+
+    @Test
+    public void shouldFindUncheckedTickets() throws Exception {
+        Ticket uncheckedTicket = insertTicket();
+        insertCheckedTicket();
+        assertThat(ticketStore.getTicketsByChecked(false)).containsOnly(uncheckedTicket);
+    }
+
+    @Test
+    public void shouldFindCheckedTickets() throws Exception {
+        insertTicket();
+        Ticket checkedTicket = insertCheckedTicket();
+        assertThat(ticketStore.getTicketsByChecked(true)).containsOnly(checkedTicket);
+    }
+
+    @Test
+    public void shouldStreamAllTickets() throws Exception {
+        Ticket firstTicket = insertTicket();
+        Ticket secondTicket = insertCheckedTicket();
+        assertThat(drain(ticketStore.streamAllTickets())).containsExactly(firstTicket, secondTicket);
+    }
+
+    @Test
+    public void shouldStreamTicketsByChecked() throws Exception {
+        Ticket uncheckedTicket = insertTicket();
+        Ticket checkedTicket = insertCheckedTicket();
+        assertThat(drain(ticketStore.streamTicketsByChecked(false))).containsExactly(uncheckedTicket);
+        assertThat(drain(ticketStore.streamTicketsByChecked(true))).containsExactly(checkedTicket);
+    }
+
+    @Test
+    public void shouldRetrieveTicketsPageByPage() throws Exception {
+        List<Ticket> inserted = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            inserted.add(insertTicket());
+        }
+        List<Ticket> firstPage = ticketStore.getTicketsPage(null, null, 2);
+        assertThat(firstPage).containsExactly(inserted.get(0), inserted.get(1));
+        List<Ticket> secondPage = ticketStore.getTicketsPage(null, firstPage.get(1).getId(), 2);
+        assertThat(secondPage).containsExactly(inserted.get(2), inserted.get(3));
+        List<Ticket> lastPage = ticketStore.getTicketsPage(null, secondPage.get(1).getId(), 2);
+        assertThat(lastPage).containsExactly(inserted.get(4));
+    }
+
+    @Test
+    public void shouldRetrievePageOfUncheckedTicketsWithoutOutcomes() throws Exception {
+        Ticket uncheckedTicket = insertTicket();
+        Ticket checkedTicket = insertCheckedTicket();
+        assertThat(ticketStore.getTicketsPage(false, null, 10)).containsExactly(uncheckedTicket);
+        assertThat(ticketStore.getTicketsPage(true, null, 10)).containsExactly(checkedTicket);
+    }
+
+    @Test
+    public void shouldThrowExceptionForInvalidPageCursor() throws Exception {
+        Throwable thrown = catchThrowable(() -> ticketStore.getTicketsPage(null, "something", 10));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldCreateTicket() throws Exception {
+        Ticket expected = getExampleTicket();
+        assertThat(expected.getId()).isNullOrEmpty();
+        ticketStore.createTicket(expected);
+        assertThat(expected.getId()).isNotEmpty();
+        assertThat(ObjectId.isValid(expected.getId())).isTrue();
+        assertThat(ticketStore.getTicketById(expected.getId())).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldCreateTicketsInBatch() throws Exception {
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tickets.add(getExampleTicket());
+        }
+        ticketStore.createTickets(tickets);
+        assertThat(tickets.stream().allMatch(ticket -> ticket.getId() != null)).isTrue();
+        assertThat(ticketStore.getAllTickets()).containsOnlyElementsOf(tickets).hasSize(3);
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenInsertingWithExistingId() throws Exception {
+        Ticket inserted = insertTicket();
+        // Try to insert it again
+        Throwable thrown = catchThrowable(() -> ticketStore.createTicket(inserted));
+        assertThat(thrown).isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    public void shouldUpdateLines() throws Exception {
+        Ticket initial = insertTicket();
+        Ticket updated = addLinesToTicket(initial);
+        ticketStore.amendTicket(updated);
+        assertThat(ticketStore.getTicketById(initial.getId())).isEqualTo(updated);
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenAmendingCheckedTicket() throws Exception {
+        Ticket checked = insertCheckedTicket();
+        Ticket amendment = addLinesToTicket(getExampleTicket());
+        amendment.setId(checked.getId());
+        Throwable thrown = catchThrowable(() -> ticketStore.amendTicket(amendment));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Checked tickets cannot be amended.");
+        assertThat(ticketStore.getTicketById(checked.getId())).isEqualTo(checked);
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenAmendingNonExistingTicket() throws Exception {
+        Ticket nonExistingTicket = getExampleTicket();
+        nonExistingTicket.setId("something");
+        Throwable thrown = catchThrowable(() -> ticketStore.amendTicket(nonExistingTicket));
+        assertThat(thrown).isInstanceOf(EmptyResultDataAccessException.class).hasMessage("Error amending ticket.");
+    }
+
+    @Test
+    public void shouldAddLinesToTicket() throws Exception {
+        Ticket initial = insertTicket();
+        LineSet newLines = LineSet.copyOf(newLinkedHashSet(
+                new Line(new int[] { 0, 1, 2 }),
+                new Line(new int[] { 2, 2, 2 })));
+        Ticket amended = ticketStore.addLines(initial.getId(), newLines, 27);
+        // the line which the ticket already had is not added again
+        Ticket expected = new TicketBuilder().id(initial.getId()).lines(newLinkedHashSet(
+                new Line(new int[] { 0, 1, 2 }),
+                new Line(new int[] { 1, 0, 1 }),
+                new Line(new int[] { 2, 2, 2 }))).build();
+        assertThat(amended).isEqualTo(expected);
+        assertThat(ticketStore.getTicketById(initial.getId())).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldNotAddLinesBeyondLimit() throws Exception {
+        Ticket initial = insertTicket();
+        LineSet newLines = LineSet.copyOf(newLinkedHashSet(new Line(new int[] { 2, 2, 2 })));
+        Throwable thrown = catchThrowable(() -> ticketStore.addLines(initial.getId(), newLines, 2));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid number of lines.");
+        assertThat(ticketStore.addLines(initial.getId(), newLines, 3).getLines()).hasSize(3);
+    }
+
+    @Test
+    public void shouldNotAddLinesToCheckedOrMissingTicket() throws Exception {
+        Ticket checked = insertCheckedTicket();
+        LineSet newLines = LineSet.copyOf(newLinkedHashSet(new Line(new int[] { 2, 2, 2 })));
+        Throwable thrown = catchThrowable(() -> ticketStore.addLines(checked.getId(), newLines, 27));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Checked tickets cannot be amended.");
+        thrown = catchThrowable(() -> ticketStore.addLines(new ObjectId().toString(), newLines, 27));
+        assertThat(thrown).isInstanceOf(EmptyResultDataAccessException.class).hasMessage("Error amending ticket.");
+        thrown = catchThrowable(() -> ticketStore.addLines("something", newLines, 27));
+        assertThat(thrown).isInstanceOf(EmptyResultDataAccessException.class).hasMessage("Error amending ticket.");
+    }
+
+    @Test
+    public void shouldKeepAllConcurrentAmendments() throws Exception {
+        Ticket initial = ticketStore.createTicket(new TicketBuilder().build());
+        int maxNumberOfLines = 20;
+        List<Line> candidates = new ArrayList<>();
+        for (int i = 0; i < 27; i++) {
+            candidates.add(new Line(new int[] { i / 9, (i / 3) % 3, i % 3 }));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Future<Ticket>> amendments = new ArrayList<>();
+        for (Line line : candidates) {
+            amendments.add(executor.submit(() -> {
+                startSignal.await();
+                return ticketStore.addLines(initial.getId(), LineSet.copyOf(Collections.singleton(line)), maxNumberOfLines);
+            }));
+        }
+        startSignal.countDown();
+        int succeeded = 0;
+        for (Future<Ticket> amendment : amendments) {
+            try {
+                amendment.get();
+                succeeded++;
+            } catch (ExecutionException ex) {
+                assertThat(ex.getCause()).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid number of lines.");
+            }
+        }
+        executor.shutdown();
+
+        assertThat(succeeded).isEqualTo(maxNumberOfLines);
+        Ticket stored = ticketStore.getTicketById(initial.getId());
+        assertThat(stored.getLines()).hasSize(maxNumberOfLines);
+        assertThat(candidates).containsAll(stored.getLines());
+    }
+
+    @Test
+    public void shouldCheckTicketAndAddOutcomes() {
+        Ticket initial = insertTicket();
+        Ticket checked = checkTicket(initial);
+        Ticket stored = ticketStore.checkTicket(checked);
+        assertThat(stored).isEqualTo(checked);
+        assertThat(ticketStore.getTicketById(initial.getId())).isEqualTo(checked);
+    }
+
+    @Test
+    public void shouldNotCheckTicketTwice() throws Exception {
+        Ticket initial = insertTicket();
+        Ticket checked = checkTicket(initial);
+        ticketStore.checkTicket(checked);
+        Throwable thrown = catchThrowable(() -> ticketStore.checkTicket(checked));
+        assertThat(thrown).isInstanceOf(EmptyResultDataAccessException.class).hasMessage("Error checking ticket.");
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenCheckingNonExistingTicket() throws Exception {
+        Ticket nonExistingTicket = getExampleTicket();
+        nonExistingTicket.setId("something");
+        Throwable thrown = catchThrowable(() -> ticketStore.checkTicket(nonExistingTicket));
+        assertThat(thrown).isInstanceOf(EmptyResultDataAccessException.class).hasMessage("Error checking ticket.");
+    }
+
+    @Test
+    public void shouldCheckTicketsInBulk() throws Exception {
+        Ticket firstTicket = insertTicket();
+        Ticket secondTicket = insertTicket();
+        Ticket alreadyChecked = checkTicket(insertTicket());
+        ticketStore.checkTicket(alreadyChecked);
+
+        int checkedCount = ticketStore.checkTickets(
+                Arrays.asList(checkTicket(firstTicket), checkTicket(secondTicket), alreadyChecked));
+
+        assertThat(checkedCount).isEqualTo(2);
+        assertThat(ticketStore.getTicketById(firstTicket.getId())).isEqualTo(checkTicket(firstTicket));
+        assertThat(ticketStore.getTicketById(secondTicket.getId())).isEqualTo(checkTicket(secondTicket));
+    }
+
+    @Test
+    public void shouldRetrieveTopWinnersAndTotalPayout() throws Exception {
+        Ticket firstWinner = ticketStore.checkTicket(checkTicket(insertTicket(), 5));
+        Ticket createdChecked = ticketStore.createTicket(checkTicket(getExampleTicket(), 10));
+        Ticket secondWinner = checkTicket(insertTicket(), 5);
+        ticketStore.checkTickets(Collections.singletonList(secondWinner));
+        ticketStore.checkTicket(checkTicket(insertTicket(), 0));
+        insertTicket();
+
+        assertThat(ticketStore.getTopWinners(10)).containsExactly(createdChecked, firstWinner, secondWinner);
+        assertThat(ticketStore.getTopWinners(2)).containsExactly(createdChecked, firstWinner);
+        assertThat(ticketStore.getTotalPayout()).isEqualTo(40);
+    }
+
+    @Test
+    public void shouldFindNoWinnersWithoutCheckedTickets() throws Exception {
+        insertTicket();
+        assertThat(ticketStore.getTopWinners(10)).isEmpty();
+        assertThat(ticketStore.getTotalPayout()).isZero();
+    }
+
+    @Test
+    public void shouldKeepTicketStats() throws Exception {
+        Ticket first = insertTicket();
+        Ticket second = insertTicket();
+        Ticket amended = insertTicket();
+        ticketStore.createTicket(checkTicket(getExampleTicket(), 10));
+        ticketStore.checkTicket(checkTicket(first, 5));
+        ticketStore.checkTickets(Collections.singletonList(checkTicket(second, 0)));
+        ticketStore.amendTicket(addLinesToTicket(amended));
+
+        TicketStats stats = ticketStore.getTicketStats();
+
+        assertThat(stats.getCheckedTickets()).isEqualTo(3);
+        assertThat(stats.getUncheckedTickets()).isEqualTo(1);
+        assertThat(stats.getLinesByOutcome()).containsExactly(entry(0, 2L), entry(5, 2L), entry(10, 2L));
+    }
+
+    @Test
+    public void shouldKeepTicketStatsOfBulkCheckWithTicketsAlreadyChecked() throws Exception {
+        Ticket first = insertTicket();
+        Ticket second = insertTicket();
+        ticketStore.checkTicket(checkTicket(first, 5));
+
+        int checkedCount = ticketStore.checkTickets(
+                Arrays.asList(checkTicket(first, 5), checkTicket(second, 10), checkTicket(second, 10)));
+
+        TicketStats stats = ticketStore.getTicketStats();
+        assertThat(checkedCount).isEqualTo(1);
+        assertThat(stats.getCheckedTickets()).isEqualTo(2);
+        assertThat(stats.getUncheckedTickets()).isZero();
+        assertThat(stats.getLinesByOutcome()).containsExactly(entry(5, 2L), entry(10, 2L));
+        assertThat(ticketStore.rebuildTicketStats()).isEqualTo(stats);
+    }
+
+    @Test
+    public void shouldRebuildTicketStats() throws Exception {
+        assertThat(ticketStore.rebuildTicketStats()).isEqualTo(TicketStats.empty());
+        Ticket checked = ticketStore.checkTicket(checkTicket(insertTicket(), 1));
+        insertTicket();
+        TicketStats stats = ticketStore.getTicketStats();
+
+        assertThat(ticketStore.rebuildTicketStats()).isEqualTo(stats);
+        assertThat(ticketStore.getTicketStats()).isEqualTo(stats);
+        assertThat(stats.getLinesWithOutcome(1)).isEqualTo(checked.getLines().size());
+    }
+
+    @Test
+    public void shouldSaveAndRemoveCheckpoint() throws Exception {
+        assertThat(ticketStore.getCheckpoint("job")).isNull();
+        ticketStore.saveCheckpoint("job", "1");
+        ticketStore.saveCheckpoint("job", "2");
+        assertThat(ticketStore.getCheckpoint("job")).isEqualTo("2");
+        ticketStore.removeCheckpoint("job");
+        assertThat(ticketStore.getCheckpoint("job")).isNull();
+    }
+
+    protected List<Ticket> drain(CloseableIterator<Ticket> iterator) {
+        List<Ticket> tickets = new ArrayList<>();
+        try (CloseableIterator<Ticket> toDrain = iterator) {
+            toDrain.forEachRemaining(tickets::add);
+        }
+        return tickets;
+    }
+
+    protected Ticket getExampleTicket() {
+        Set<Line> lines = newLinkedHashSet(
+                new Line(new int[] { 0, 1, 2}),
+                new Line(new int[] { 1, 0, 1}));
+        return new TicketBuilder().lines(lines).build();
+    }
+
+    protected Ticket addLinesToTicket(Ticket ticket) {
+        Set<Line> lines = ticket.getLines();
+        lines.add(new Line(new int[] { 1, 1, 0 }));
+        lines.add(new Line(new int[] { 2, 2, 2 }));
+        ticket.setLines(lines);
+        return ticket;
+    }
+
+    protected Ticket checkTicket(Ticket ticket) {
+        return checkTicket(ticket, 0);
+    }
+
+    protected Ticket checkTicket(Ticket ticket, int outcome) {
+        Set<Line> lines = new LinkedHashSet<>();
+        for (Line line : ticket.getLines()) {
+            lines.add(new Line(line.getNumbers(), outcome));
+        }
+        return new TicketBuilder().id(ticket.getId()).checked().lines(lines).build();
+    }
+
+    protected Ticket insertCheckedTicket() {
+        return ticketStore.createTicket(checkTicket(getExampleTicket()));
+    }
+
+    protected Ticket insertTicket() {
+        Ticket inserted = ticketStore.createTicket(getExampleTicket());
+        assertThat(inserted.getId()).isNotEmpty();
+        return inserted;
+    }
+}
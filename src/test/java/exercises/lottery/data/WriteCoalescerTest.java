@@ -0,0 +1,202 @@
+package exercises.lottery.data;
+
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.TicketBuilder;
+import exercises.lottery.metrics.LotteryMetrics;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+/**
+ * Test class for WriteCoalescer.
+ */
+public class WriteCoalescerTest {
+
+    private static final long LONG_WINDOW_MICROS = TimeUnit.SECONDS.toMicros(60);
+
+    @Rule
+    public MockitoRule mockito = MockitoJUnit.rule();
+
+    @Mock
+    private CachingLotteryDao lotteryDao;
+
+    private WriteCoalescer writeCoalescer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (writeCoalescer != null) {
+            writeCoalescer.close();
+        }
+    }
+
+
+    @Test
+    public void shouldRejectInvalidConfiguration() throws Exception {
+        assertThat(catchThrowable(() -> newWriteCoalescer(-1, 10, 10))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(catchThrowable(() -> newWriteCoalescer(0, 0, 10))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(catchThrowable(() -> newWriteCoalescer(0, 10, 0))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldWriteConcurrentCreatesAndChecksInOneBatch() throws Exception {
+        Ticket first = new TicketBuilder().build();
+        Ticket second = new TicketBuilder().build();
+        Ticket checked = new TicketBuilder().id("1").checked().build();
+        given(lotteryDao.writeTickets(anyListOf(Ticket.class), anyListOf(Ticket.class)))
+                .willReturn(Arrays.asList(null, null, null));
+        writeCoalescer = newWriteCoalescer(LONG_WINDOW_MICROS, 3, 10);
+
+        CompletableFuture<Ticket> firstFuture = writeCoalescer.createTicket(first);
+        CompletableFuture<Ticket> checkFuture = writeCoalescer.checkTicket(checked);
+        CompletableFuture<Ticket> secondFuture = writeCoalescer.createTicket(second);
+
+        assertThat(firstFuture.get(5, TimeUnit.SECONDS)).isSameAs(first);
+        assertThat(secondFuture.get(5, TimeUnit.SECONDS)).isSameAs(second);
+        assertThat(checkFuture.get(5, TimeUnit.SECONDS)).isSameAs(checked);
+        verify(lotteryDao).writeTickets(Arrays.asList(first, second), Collections.singletonList(checked));
+    }
+
+    @Test
+    public void shouldWriteQueuedTicketWhenWindowIsOver() throws Exception {
+        Ticket ticket = new TicketBuilder().build();
+        given(lotteryDao.writeTickets(anyListOf(Ticket.class), anyListOf(Ticket.class)))
+                .willReturn(Collections.singletonList(null));
+        writeCoalescer = newWriteCoalescer(1000, 100, 10);
+
+        assertThat(writeCoalescer.createTicket(ticket).get(5, TimeUnit.SECONDS)).isSameAs(ticket);
+        verify(lotteryDao).writeTickets(Collections.singletonList(ticket), Collections.emptyList());
+    }
+
+    @Test
+    public void shouldCompleteEachWriteWithItsOwnError() throws Exception {
+        Ticket created = new TicketBuilder().build();
+        Ticket duplicate = new TicketBuilder().id("1").build();
+        Ticket alreadyChecked = new TicketBuilder().id("2").checked().build();
+        given(lotteryDao.writeTickets(anyListOf(Ticket.class), anyListOf(Ticket.class))).willReturn(Arrays.asList(
+                null, new DuplicateKeyException("Duplicate ticket."), new EmptyResultDataAccessException(1)));
+        writeCoalescer = newWriteCoalescer(LONG_WINDOW_MICROS, 3, 10);
+
+        CompletableFuture<Ticket> createdFuture = writeCoalescer.createTicket(created);
+        CompletableFuture<Ticket> duplicateFuture = writeCoalescer.createTicket(duplicate);
+        CompletableFuture<Ticket> checkFuture = writeCoalescer.checkTicket(alreadyChecked);
+
+        assertThat(createdFuture.get(5, TimeUnit.SECONDS)).isSameAs(created);
+        assertThat(catchThrowable(duplicateFuture::join)).isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(DuplicateKeyException.class);
+        assertThat(catchThrowable(checkFuture::join)).isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(EmptyResultDataAccessException.class);
+    }
+
+    @Test
+    public void shouldFailAllWritesOfBatchWhenItCannotBeWritten() throws Exception {
+        given(lotteryDao.writeTickets(anyListOf(Ticket.class), anyListOf(Ticket.class)))
+                .willThrow(new DataAccessResourceFailureException("Database unavailable."));
+        writeCoalescer = newWriteCoalescer(LONG_WINDOW_MICROS, 2, 10);
+
+        CompletableFuture<Ticket> created = writeCoalescer.createTicket(new TicketBuilder().build());
+        CompletableFuture<Ticket> checked = writeCoalescer.checkTicket(new TicketBuilder().id("1").checked().build());
+
+        assertThat(catchThrowable(created::join)).hasCauseInstanceOf(DataAccessResourceFailureException.class);
+        assertThat(catchThrowable(checked::join)).hasCauseInstanceOf(DataAccessResourceFailureException.class);
+    }
+
+    @Test
+    public void shouldSplitWritesInBatchesOfMaximumSize() throws Exception {
+        given(lotteryDao.writeTickets(anyListOf(Ticket.class), anyListOf(Ticket.class)))
+                .willReturn(Arrays.asList(null, null));
+        writeCoalescer = newWriteCoalescer(LONG_WINDOW_MICROS, 2, 10);
+
+        List<CompletableFuture<Ticket>> futures = Arrays.asList(
+                writeCoalescer.createTicket(new TicketBuilder().build()),
+                writeCoalescer.createTicket(new TicketBuilder().build()),
+                writeCoalescer.createTicket(new TicketBuilder().build()),
+                writeCoalescer.createTicket(new TicketBuilder().build()));
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        verify(lotteryDao, times(2)).writeTickets(anyListOf(Ticket.class), anyListOf(Ticket.class));
+    }
+
+    @Test
+    public void shouldRejectWritesWhenQueueIsFull() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        given(lotteryDao.writeTickets(anyListOf(Ticket.class), anyListOf(Ticket.class))).willAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return Collections.singletonList(null);
+        });
+        writeCoalescer = newWriteCoalescer(0, 1, 1);
+
+        CompletableFuture<Ticket> written = writeCoalescer.createTicket(new TicketBuilder().build());
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Ticket> queued = writeCoalescer.createTicket(new TicketBuilder().build());
+        CompletableFuture<Ticket> rejected = writeCoalescer.createTicket(new TicketBuilder().build());
+        release.countDown();
+
+        assertThat(catchThrowable(rejected::join)).hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(written.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    @Test
+    public void shouldFailWritesAfterClose() throws Exception {
+        writeCoalescer = newWriteCoalescer(0, 10, 10);
+        writeCoalescer.close();
+
+        CompletableFuture<Ticket> future = writeCoalescer.createTicket(new TicketBuilder().build());
+
+        assertThat(catchThrowable(future::join)).hasCauseInstanceOf(IllegalStateException.class);
+        verifyZeroInteractions(lotteryDao);
+    }
+
+
+    @Test
+    public void shouldCompleteWritesQueuedWhileClosing() throws Exception {
+        given(lotteryDao.writeTickets(anyListOf(Ticket.class), anyListOf(Ticket.class))).willAnswer(invocation ->
+                Arrays.asList(new RuntimeException[((List<?>) invocation.getArguments()[0]).size()]));
+        writeCoalescer = newWriteCoalescer(0, 10, 1000);
+        List<CompletableFuture<Ticket>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writing = executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    futures.add(writeCoalescer.createTicket(new TicketBuilder().build()));
+                }
+            });
+            writeCoalescer.close();
+            writing.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(futures.stream().allMatch(CompletableFuture::isDone)).isTrue();
+    }
+
+
+    private WriteCoalescer newWriteCoalescer(long windowMicros, int maxBatchSize, int queueSize) {
+        return new WriteCoalescer(lotteryDao, windowMicros, maxBatchSize, queueSize, Runnable::run,
+                LotteryMetrics.disabled());
+    }
+}
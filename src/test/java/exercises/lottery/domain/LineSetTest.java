@@ -0,0 +1,95 @@
+package exercises.lottery.domain;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.assertj.core.util.Sets.*;
+
+/**
+ * Test class for LineSet and LineCodes.
+ */
+public class LineSetTest {
+
+    @Test
+    public void shouldEncodeAndDecodeLines() throws Exception {
+        Line line = new Line(new int[] { 2, 0, 1 }, 10);
+        long code = LineCodes.encode(line);
+        assertThat(LineCodes.size(code)).isEqualTo(3);
+        assertThat(LineCodes.numbers(code)).containsExactly(2, 0, 1);
+        assertThat(LineCodes.outcome(code)).isEqualTo(10);
+        assertThat(LineCodes.toLine(code)).isEqualTo(line);
+        assertThat(LineCodes.hashCode(code)).isEqualTo(line.hashCode());
+        assertThat(LineCodes.outcome(LineCodes.withOutcome(code, -1))).isEqualTo(-1);
+    }
+
+    @Test
+    public void shouldNotEncodeInvalidLines() throws Exception {
+        assertThat(LineCodes.isEncodable(null, -1)).isFalse();
+        assertThat(LineCodes.isEncodable(new int[] { 0, -1, 0 }, -1)).isFalse();
+        assertThat(LineCodes.isEncodable(new int[] { 0, 256, 0 }, -1)).isFalse();
+        assertThat(LineCodes.isEncodable(new int[] { 0, 0, 0, 0, 0, 0, 0 }, -1)).isFalse();
+        Throwable thrown = catchThrowable(() -> LineCodes.encode(new Line(null)));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Line cannot be packed.");
+    }
+
+    @Test
+    public void shouldKeepInsertionOrderAndIgnoreRepeatedLines() throws Exception {
+        LineSet lineSet = new LineSet();
+        lineSet.add(new Line(new int[] { 2, 2, 2 }));
+        lineSet.add(new Line(new int[] { 0, 1, 2 }));
+        lineSet.add(new Line(new int[] { 2, 2, 2 }));
+        lineSet.add(new Line(new int[] { 1, 0, 0 }));
+
+        assertThat(lineSet).hasSize(3);
+        assertThat(lineSet).containsExactly(
+                new Line(new int[] { 2, 2, 2 }),
+                new Line(new int[] { 0, 1, 2 }),
+                new Line(new int[] { 1, 0, 0 }));
+    }
+
+    @Test
+    public void shouldBeEqualToOtherSetsWithSameLines() throws Exception {
+        Set<Line> lines = newLinkedHashSet(
+                new Line(new int[] { 0, 1, 2 }),
+                new Line(new int[] { 1, 1, 1 }, 5));
+        LineSet lineSet = LineSet.copyOf(lines);
+
+        assertThat(lineSet).isEqualTo(lines);
+        assertThat(lines).isEqualTo(lineSet);
+        assertThat(lineSet.hashCode()).isEqualTo(lines.hashCode());
+        assertThat(lineSet).isEqualTo(LineSet.copyOf(lineSet));
+        assertThat(lineSet).isNotEqualTo(LineSet.copyOf(newLinkedHashSet(new Line(new int[] { 0, 1, 2 }))));
+    }
+
+    @Test
+    public void shouldRemoveLines() throws Exception {
+        LineSet lineSet = LineSet.copyOf(newLinkedHashSet(
+                new Line(new int[] { 0, 1, 2 }),
+                new Line(new int[] { 1, 1, 1 }),
+                new Line(new int[] { 2, 1, 0 })));
+
+        assertThat(lineSet.remove(new Line(new int[] { 1, 1, 1 }))).isTrue();
+        assertThat(lineSet.remove(new Line(null))).isFalse();
+        Iterator<Line> iterator = lineSet.iterator();
+        iterator.next();
+        iterator.remove();
+        assertThat(lineSet).containsExactly(new Line(new int[] { 2, 1, 0 }));
+    }
+
+    @Test
+    public void shouldSumAndCompareOutcomes() throws Exception {
+        LineSet checked = LineSet.copyOf(newLinkedHashSet(
+                new Line(new int[] { 0, 1, 2 }, 0),
+                new Line(new int[] { 1, 1, 1 }, 5),
+                new Line(new int[] { 2, 1, 0 }, 10)));
+        assertThat(checked.totalOutcome()).isEqualTo(15);
+        assertThat(checked.bestOutcome()).isEqualTo(10);
+
+        LineSet unchecked = LineSet.copyOf(newLinkedHashSet(new Line(new int[] { 0, 1, 2 })));
+        assertThat(unchecked.totalOutcome()).isZero();
+        assertThat(unchecked.bestOutcome()).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,79 @@
+package exercises.lottery.domain.rules;
+
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LotteryRules;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.assertj.core.util.Sets.*;
+
+/**
+ * Test class for PrecomputedLotteryRules.
+ */
+public class PrecomputedLotteryRulesTest {
+
+    private static final int MAX_NUMBER_OF_LINES = 27;
+
+    private LotteryRules simpleRules;
+    private PrecomputedLotteryRules rules;
+
+    @Before
+    public void setUp() throws Exception {
+        simpleRules = new SimpleLotteryRules();
+        rules = new PrecomputedLotteryRules(simpleRules);
+    }
+
+
+    @Test
+    public void shouldReturnSameLimitsAsUnderlyingRules() throws Exception {
+        assertThat(rules.getLineSize()).isEqualTo(simpleRules.getLineSize());
+        assertThat(rules.getMinLineValue()).isEqualTo(simpleRules.getMinLineValue());
+        assertThat(rules.getMaxLineValue()).isEqualTo(simpleRules.getMaxLineValue());
+        assertThat(rules.getMaxNumberOfLines()).isEqualTo(MAX_NUMBER_OF_LINES);
+    }
+
+    @Test
+    public void shouldEncodeAndDecodeAllLines() throws Exception {
+        LineOutcomeTable table = rules.getTable();
+        for (int index = 0; index < table.size(); index++) {
+            assertThat(table.indexOf(table.numbersOf(index))).isEqualTo(index);
+        }
+        assertThat(table.indexOf(new int[] { 0, 0, 0 })).isEqualTo(0);
+        assertThat(table.indexOf(new int[] { 1, 0, 2 })).isEqualTo(11);
+        assertThat(table.indexOf(new int[] { 2, 2, 2 })).isEqualTo(26);
+    }
+
+    @Test
+    public void outcomesShouldMatchUnderlyingRules() throws Exception {
+        LineOutcomeTable table = rules.getTable();
+        for (int index = 0; index < table.size(); index++) {
+            Line line = new Line(table.numbersOf(index));
+            assertThat(rules.getLineOutcome(line)).isEqualTo(simpleRules.getLineOutcome(line));
+        }
+    }
+
+    @Test
+    public void lineShouldNotBeValid() throws Exception {
+        Set<Line> invalidLines = newLinkedHashSet(
+                new Line(new int[] { 0, 0, -1}),
+                new Line(new int[] { 3, 0, 0 }),
+                new Line(new int[] { 0, 34, 0 }),
+                new Line(new int[] { 0 }),
+                new Line(null));
+
+        assertThat(
+                invalidLines.stream()
+                        .noneMatch(line -> rules.isLineValid(line)))
+                .isTrue();
+    }
+
+    @Test
+    public void shouldThrowException() throws Exception {
+        Line invalidLine1 = new Line(new int[] { 0, 0, -1});
+        Throwable thrown = catchThrowable(() -> rules.getLineOutcome(invalidLine1));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Line contains invalid numbers.");
+    }
+}
@@ -0,0 +1,82 @@
+package exercises.lottery.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class for LotteryMetrics.
+ */
+public class LotteryMetricsTest {
+
+    private MetricRegistry registry;
+
+    private LotteryMetrics metrics;
+
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new MetricRegistry();
+        metrics = new LotteryMetrics(registry, LotteryMetrics.DEFAULT_RESERVOIR);
+    }
+
+
+    @Test
+    public void shouldRecordTimer() throws Exception {
+        LotteryMetrics.Timer timer = metrics.timer("timer");
+        timer.stop(timer.start());
+        timer.stop(timer.start());
+        assertThat(registry.getTimers().get("timer").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRecordCounter() throws Exception {
+        metrics.counter("counter").increment(2);
+        metrics.counter("counter").increment(3);
+        assertThat(registry.getCounters().get("counter").getCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldRecordSummary() throws Exception {
+        LotteryMetrics.Summary summary = metrics.summary("summary");
+        summary.record(1);
+        summary.record(3);
+        assertThat(registry.getHistograms().get("summary").getSnapshot().getMax()).isEqualTo(3);
+        assertThat(registry.getHistograms().get("summary").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReuseMetricsWithSameName() throws Exception {
+        assertThat(metrics.timer("timer")).isSameAs(metrics.timer("timer"));
+        LotteryMetrics other = new LotteryMetrics(registry, "slidingWindow");
+        other.timer("timer").stop(other.timer("timer").start());
+        metrics.timer("timer").stop(metrics.timer("timer").start());
+        assertThat(registry.getTimers().get("timer").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotReuseNameForDifferentTypeOfMetric() throws Exception {
+        metrics.timer("metric");
+        Throwable thrown = catchThrowable(() -> metrics.summary("metric"));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldThrowExceptionForUnknownReservoir() throws Exception {
+        Throwable thrown = catchThrowable(() -> new LotteryMetrics(registry, "something"));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldNotRecordWhenDisabled() throws Exception {
+        LotteryMetrics disabled = LotteryMetrics.disabled();
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(disabled.timer("timer").start()).isEqualTo(0);
+        disabled.timer("timer").stop(0);
+        disabled.counter("counter").increment(1);
+        disabled.summary("summary").record(1);
+        assertThat(disabled.timer("timer")).isSameAs(disabled.timer("other"));
+    }
+}
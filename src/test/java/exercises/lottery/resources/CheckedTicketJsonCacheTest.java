@@ -0,0 +1,88 @@
+package exercises.lottery.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.TicketBuilder;
+import exercises.lottery.resources.CheckedTicketJsonCache.SerializedTicket;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.assertj.core.util.Sets.*;
+
+/**
+ * Test class for CheckedTicketJsonCache.
+ */
+public class CheckedTicketJsonCacheTest {
+
+    private final TicketJsonWriter ticketJsonWriter = new TicketJsonWriter();
+
+
+    @Test
+    public void shouldCacheJsonOfCheckedTicket() throws Exception {
+        CheckedTicketJsonCache cache = new CheckedTicketJsonCache(ticketJsonWriter, 10000, false);
+        SerializedTicket serialized = cache.put(createCheckedTicket("1", 10));
+        JsonNode json = new ObjectMapper().readTree(serialized.getJson());
+        assertThat(json.get("id").asText()).isEqualTo("1");
+        assertThat(json.get("lines").get(0).get("outcome").asInt()).isEqualTo(10);
+        assertThat(serialized.getGzippedJson()).isNull();
+        assertThat(cache.get("1")).isSameAs(serialized);
+    }
+
+    @Test
+    public void shouldGzipJsonWhenEnabled() throws Exception {
+        CheckedTicketJsonCache cache = new CheckedTicketJsonCache(ticketJsonWriter, 10000, true);
+        SerializedTicket serialized = cache.put(createCheckedTicket("1", 10));
+        try (GZIPInputStream gunzipped = new GZIPInputStream(new ByteArrayInputStream(serialized.getGzippedJson()))) {
+            assertThat(new ObjectMapper().readTree(gunzipped)).isEqualTo(new ObjectMapper().readTree(serialized.getJson()));
+        }
+    }
+
+    @Test
+    public void shouldUseDifferentEntityTagForGzippedJson() throws Exception {
+        CheckedTicketJsonCache cache = new CheckedTicketJsonCache(ticketJsonWriter, 10000, true);
+        SerializedTicket serialized = cache.put(createCheckedTicket("1", 10));
+        assertThat(serialized.getGzippedEntityTag()).isNotEqualTo(serialized.getEntityTag())
+                .startsWith(serialized.getEntityTag());
+    }
+
+    @Test
+    public void shouldComputeEntityTagFromContents() throws Exception {
+        CheckedTicketJsonCache cache = new CheckedTicketJsonCache(ticketJsonWriter, 10000, false);
+        String first = cache.put(createCheckedTicket("1", 10)).getEntityTag();
+        assertThat(cache.put(createCheckedTicket("1", 10)).getEntityTag()).isEqualTo(first);
+        assertThat(cache.put(createCheckedTicket("1", 5)).getEntityTag()).isNotEqualTo(first);
+        assertThat(cache.put(createCheckedTicket("2", 10)).getEntityTag()).isNotEqualTo(first);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedBeyondMaxBytes() throws Exception {
+        int ticketSize = new CheckedTicketJsonCache(ticketJsonWriter, 10000, false)
+                .put(createCheckedTicket("1", 10)).getJson().length;
+        CheckedTicketJsonCache cache = new CheckedTicketJsonCache(ticketJsonWriter, 2 * ticketSize, false);
+        cache.put(createCheckedTicket("1", 10));
+        cache.put(createCheckedTicket("2", 10));
+        cache.get("1");
+        cache.put(createCheckedTicket("3", 10));
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("1")).isNotNull();
+        assertThat(cache.get("2")).isNull();
+    }
+
+    @Test
+    public void shouldNotCacheUncheckedTicket() throws Exception {
+        CheckedTicketJsonCache cache = new CheckedTicketJsonCache(ticketJsonWriter, 10000, false);
+        Throwable thrown = catchThrowable(() -> cache.put(new TicketBuilder().id("1").build()));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Ticket createCheckedTicket(String id, int outcome) {
+        return new TicketBuilder().id(id).checked().lines(newLinkedHashSet(
+                new Line(new int[] { 0, 1, 2 }, outcome),
+                new Line(new int[] { 1, 0, 1 }, 0))).build();
+    }
+}
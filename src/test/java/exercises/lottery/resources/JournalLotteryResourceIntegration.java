@@ -0,0 +1,23 @@
+package exercises.lottery.resources;
+
+import exercises.lottery.data.JournalTicketStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the integration tests on LotteryResource with the tickets stored in a journal.
+ */
+@ActiveProfiles(JournalTicketStore.PROFILE)
+@TestPropertySource(locations = "classpath:application.integration.properties",
+        properties = "journalDirectory=target/journal-integration")
+public class JournalLotteryResourceIntegration extends LotteryResourceIntegration {
+
+    @Autowired
+    private JournalTicketStore journalTicketStore;
+
+    @Override
+    protected void removeAllTickets() {
+        journalTicketStore.clear();
+    }
+}
@@ -3,6 +3,8 @@ package exercises.lottery.resources;
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
 import exercises.lottery.LotteryApplication;
+import exercises.lottery.data.TicketCache;
+import exercises.lottery.data.TicketStore;
 import exercises.lottery.domain.Line;
 import exercises.lottery.domain.Ticket;
 import exercises.lottery.domain.TicketBuilder;
@@ -23,12 +25,13 @@ import org.springframework.test.context.web.WebAppConfiguration;
 import java.util.Iterator;
 import java.util.Set;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.util.Sets.*;
 import static io.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.*;
 
 /**
- * Class for integration tests on LotteryResource.
+ * Class for integration tests on LotteryResource, with the tickets stored in MongoDB.
  *
  * Created by guisil on 26/07/2016.
  */
@@ -39,9 +42,18 @@ import static org.hamcrest.Matchers.*;
 @IntegrationTest("server.port:0")
 public class LotteryResourceIntegration {
 
-    @Autowired
+    @Autowired(required = false)
     private MongoTemplate mongoTemplate;
 
+    @Autowired
+    private TicketStore ticketStore;
+
+    @Autowired
+    private TicketCache ticketCache;
+
+    @Autowired
+    private CheckedTicketJsonCache checkedTicketJsonCache;
+
     private static Ticket ticket1, ticket2;
     private static Set<Line> extraLines, invalidLines;
 
@@ -75,10 +87,23 @@ public class LotteryResourceIntegration {
 
     @Before
     public void setUp() throws Exception {
-        mongoTemplate.dropCollection("ticket");
+        removeAllTickets();
+        ticketCache.clear();
+        checkedTicketJsonCache.clear();
+        // the tickets are stored again by each test, with new IDs
+        ticket1.setId(null);
+        ticket2.setId(null);
         RestAssured.port = port;
     }
 
+    /**
+     * Removes the tickets stored by the previous test.
+     */
+    protected void removeAllTickets() {
+        mongoTemplate.dropCollection("ticket");
+        mongoTemplate.dropCollection("stats");
+    }
+
     @Test
     public void shouldNotFindAnyTicket() throws Exception {
         when().get("/lottery/tickets")
@@ -88,18 +113,112 @@ public class LotteryResourceIntegration {
 
     @Test
     public void shouldFindAllTickets() throws Exception {
-        mongoTemplate.save(ticket1);
-        mongoTemplate.save(ticket2);
+        ticketStore.createTicket(ticket1);
+        ticketStore.createTicket(ticket2);
         when().get("/lottery/tickets")
         .then().statusCode(HttpStatus.SC_OK)
         .and().body("", hasSize(2))
         .and().body("id", contains(ticket1.getId(), ticket2.getId()));
     }
 
+    @Test
+    public void shouldStreamAllTicketsAsNewlineDelimitedJson() throws Exception {
+        ticketStore.createTicket(ticket1);
+        ticketStore.createTicket(ticket2);
+        String body = given().accept(TicketJsonWriter.APPLICATION_NDJSON)
+                .when().get("/lottery/tickets")
+                .then().statusCode(HttpStatus.SC_OK)
+                .contentType(TicketJsonWriter.APPLICATION_NDJSON)
+                .extract().asString();
+        String[] lines = body.trim().split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).contains(ticket1.getId());
+        assertThat(lines[1]).contains(ticket2.getId());
+    }
+
+    @Test
+    public void shouldRetrieveTicketsPageByPage() throws Exception {
+        ticketStore.createTicket(ticket1);
+        ticketStore.createTicket(ticket2);
+        // pages are sorted by ID
+        boolean ticket1First = ticket1.getId().compareTo(ticket2.getId()) < 0;
+        String firstId = ticket1First ? ticket1.getId() : ticket2.getId();
+        String secondId = ticket1First ? ticket2.getId() : ticket1.getId();
+        String next = given().queryParam("limit", 1)
+                .when().get("/lottery/tickets/page")
+                .then().statusCode(HttpStatus.SC_OK)
+                .body("tickets", hasSize(1))
+                .body("tickets.id[0]", is(firstId))
+                .body("next", is(firstId))
+                .extract().path("next");
+        given().queryParam("limit", 1).queryParam("after", next)
+                .when().get("/lottery/tickets/page")
+                .then().statusCode(HttpStatus.SC_OK)
+                .body("tickets", hasSize(1))
+                .body("tickets.id[0]", is(secondId))
+                .body("next", nullValue());
+    }
+
+    @Test
+    public void shouldRetrieveOnlyUncheckedTicketsInPage() throws Exception {
+        ticketStore.createTicket(ticket1);
+        ticketStore.createTicket(ticket2);
+        given().queryParam("checked", false)
+                .when().get("/lottery/tickets/page")
+                .then().statusCode(HttpStatus.SC_OK)
+                .body("tickets", hasSize(1))
+                .body("tickets.id[0]", is(ticket1.getId()))
+                .body("tickets[0].lines.outcome[0]", isEmptyOrNullString());
+    }
+
+    @Test
+    public void shouldNotRetrievePageWithInvalidLimit() throws Exception {
+        given().queryParam("limit", 0)
+                .when().get("/lottery/tickets/page")
+                .then().statusCode(HttpStatus.SC_BAD_REQUEST)
+                .body("error", notNullValue());
+    }
+
+    @Test
+    public void shouldRetrieveTopWinnersAndTotalPayout() throws Exception {
+        ticketStore.createTicket(ticket1);
+        ticketStore.createTicket(ticket2);
+        given().queryParam("limit", 5)
+                .when().get("/lottery/tickets/winners")
+                .then().statusCode(HttpStatus.SC_OK)
+                .body("", hasSize(1))
+                .body("id[0]", is(ticket2.getId()))
+                .body("payout[0]", is(10))
+                .body("bestOutcome[0]", is(10));
+        when().get("/lottery/tickets/liability")
+                .then().statusCode(HttpStatus.SC_OK)
+                .body("totalPayout", is(10));
+    }
+
+    @Test
+    public void shouldNotRetrieveTopWinnersWithInvalidLimit() throws Exception {
+        given().queryParam("limit", 0)
+                .when().get("/lottery/tickets/winners")
+                .then().statusCode(HttpStatus.SC_BAD_REQUEST)
+                .body("error", notNullValue());
+    }
+
+    @Test
+    public void shouldRetrieveTicketStats() throws Exception {
+        ticketStore.createTicket(ticket1);
+        ticketStore.createTicket(ticket2);
+        when().get("/lottery/tickets/stats")
+                .then().statusCode(HttpStatus.SC_OK)
+                .body("checkedTickets", is(1))
+                .body("uncheckedTickets", is(1))
+                .body("linesByOutcome.'0'", is(1))
+                .body("linesByOutcome.'10'", is(1));
+    }
+
     @Test
     public void shouldOnlyFindCheckedTicket() throws Exception {
-        mongoTemplate.save(ticket1);
-        mongoTemplate.save(ticket2);
+        ticketStore.createTicket(ticket1);
+        ticketStore.createTicket(ticket2);
         when().get("/lottery/tickets/checked")
                 .then().statusCode(HttpStatus.SC_OK)
                 .and().body("", hasSize(1))
@@ -108,8 +227,8 @@ public class LotteryResourceIntegration {
 
     @Test
     public void shouldOnlyFindUncheckedTicket() throws Exception {
-        mongoTemplate.save(ticket1);
-        mongoTemplate.save(ticket2);
+        ticketStore.createTicket(ticket1);
+        ticketStore.createTicket(ticket2);
         when().get("/lottery/tickets/unchecked")
                 .then().statusCode(HttpStatus.SC_OK)
                 .and().body("", hasSize(1))
@@ -124,7 +243,7 @@ public class LotteryResourceIntegration {
 
     @Test
     public void shouldFindUncheckedTicketWithId() throws Exception {
-        mongoTemplate.save(ticket1);
+        ticketStore.createTicket(ticket1);
         when().get("/lottery/tickets/{id}", ticket1.getId())
                 .then().statusCode(HttpStatus.SC_OK)
                 .body("id", equalTo(ticket1.getId()))
@@ -138,7 +257,7 @@ public class LotteryResourceIntegration {
 
     @Test
     public void shouldFindCheckedTicketWithId() throws Exception {
-        mongoTemplate.save(ticket2);
+        ticketStore.createTicket(ticket2);
         when().get("/lottery/tickets/{id}", ticket2.getId())
                 .then().statusCode(HttpStatus.SC_OK)
                 .body("id", equalTo(ticket2.getId()))
@@ -177,9 +296,34 @@ public class LotteryResourceIntegration {
                 .body("error", notNullValue());
     }
 
+    @Test
+    public void shouldGenerateTicketsInBulk() throws Exception {
+        given().queryParam("count", 5).queryParam("lines", 3)
+                .when().post("/lottery/tickets/bulk")
+                .then().statusCode(HttpStatus.SC_CREATED)
+                .body("", hasSize(5))
+                .body("", everyItem(notNullValue()));
+        when().get("/lottery/tickets/unchecked")
+                .then().statusCode(HttpStatus.SC_OK)
+                .body("", hasSize(5))
+                .body("lines[0]", hasSize(3));
+    }
+
+    @Test
+    public void shouldNotGenerateTicketsInBulkForInvalidNumbers() throws Exception {
+        given().queryParam("count", 0).queryParam("lines", 3)
+                .when().post("/lottery/tickets/bulk")
+                .then().statusCode(HttpStatus.SC_BAD_REQUEST)
+                .body("error", notNullValue());
+        given().queryParam("count", 5).queryParam("lines", 28)
+                .when().post("/lottery/tickets/bulk")
+                .then().statusCode(HttpStatus.SC_BAD_REQUEST)
+                .body("error", notNullValue());
+    }
+
     @Test
     public void shouldAmendTicket() throws Exception {
-        mongoTemplate.save(ticket1);
+        ticketStore.createTicket(ticket1);
         given().contentType(ContentType.JSON)
                 .body(extraLines)
         .when().put("/lottery/tickets/{id}", ticket1.getId())
@@ -189,7 +333,7 @@ public class LotteryResourceIntegration {
 
     @Test
     public void shouldThrowErrorWhenAmendingCheckedTicket() throws Exception {
-        mongoTemplate.save(ticket2);
+        ticketStore.createTicket(ticket2);
         given().contentType(ContentType.JSON)
                 .body(extraLines)
                 .when().put("/lottery/tickets/{id}", ticket2.getId())
@@ -199,7 +343,7 @@ public class LotteryResourceIntegration {
 
     @Test
     public void shouldThrowErrorForAmendingWithInvalidLines() throws Exception {
-        mongoTemplate.save(ticket1);
+        ticketStore.createTicket(ticket1);
         given().contentType(ContentType.JSON)
                 .body(invalidLines)
                 .when().put("/lottery/tickets/{id}", ticket1.getId())
@@ -218,7 +362,7 @@ public class LotteryResourceIntegration {
 
     @Test
     public void shouldCheckTicket() throws Exception {
-        mongoTemplate.save(ticket1);
+        ticketStore.createTicket(ticket1);
         when().put("/lottery/tickets/{id}/check", ticket1.getId())
                 .then().statusCode(HttpStatus.SC_OK)
                 .body("checked", equalTo(true))
@@ -227,7 +371,7 @@ public class LotteryResourceIntegration {
 
     @Test
     public void shouldNotChangeCheckedTicket() throws Exception {
-        mongoTemplate.save(ticket2);
+        ticketStore.createTicket(ticket2);
         Iterator<Line> lineIterator = ticket2.getLines().iterator();
         int outcomeLine1 = lineIterator.next().getOutcome();
         int outcomeLine2 = lineIterator.next().getOutcome();
@@ -246,4 +390,54 @@ public class LotteryResourceIntegration {
                 .then().statusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR)
                 .body("error", notNullValue());
     }
+
+    @Test
+    public void shouldCheckAllTicketsInBulk() throws Exception {
+        ticketStore.createTicket(ticket1);
+        ticketStore.createTicket(ticket2);
+        when().post("/lottery/tickets/check")
+                .then().statusCode(HttpStatus.SC_ACCEPTED);
+        long timeout = System.currentTimeMillis() + 10000;
+        while (get("/lottery/tickets/check").then().extract().<Boolean>path("running")
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        when().get("/lottery/tickets/check")
+                .then().statusCode(HttpStatus.SC_OK)
+                .body("running", equalTo(false))
+                .body("error", nullValue());
+        when().get("/lottery/tickets/{id}", ticket1.getId())
+                .then().statusCode(HttpStatus.SC_OK)
+                .body("checked", equalTo(true))
+                .body("lines.outcome[0]", greaterThan(-1));
+    }
+
+    @Test
+    public void shouldReturnEntityTagForCheckedTicket() throws Exception {
+        ticketStore.createTicket(ticket2);
+        String entityTag = when().get("/lottery/tickets/{id}", ticket2.getId())
+                .then().statusCode(HttpStatus.SC_OK)
+                .body("checked", equalTo(true))
+                .header("ETag", notNullValue())
+                .extract().header("ETag");
+        when().get("/lottery/tickets/{id}", ticket2.getId())
+                .then().statusCode(HttpStatus.SC_OK)
+                .header("ETag", equalTo(entityTag))
+                .body("lines", hasSize(2));
+        given().header("If-None-Match", entityTag)
+                .when().get("/lottery/tickets/{id}", ticket2.getId())
+                .then().statusCode(HttpStatus.SC_NOT_MODIFIED)
+                .header("ETag", equalTo(entityTag));
+        given().header("If-None-Match", "\"something\"")
+                .when().get("/lottery/tickets/{id}", ticket2.getId())
+                .then().statusCode(HttpStatus.SC_OK);
+    }
+
+    @Test
+    public void shouldNotReturnEntityTagForUncheckedTicket() throws Exception {
+        ticketStore.createTicket(ticket1);
+        when().get("/lottery/tickets/{id}", ticket1.getId())
+                .then().statusCode(HttpStatus.SC_OK)
+                .header("ETag", nullValue());
+    }
 }
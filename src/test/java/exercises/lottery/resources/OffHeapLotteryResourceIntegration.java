@@ -0,0 +1,22 @@
+package exercises.lottery.resources;
+
+import exercises.lottery.data.OffHeapTicketStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the integration tests on LotteryResource with the tickets stored off-heap.
+ */
+@ActiveProfiles(OffHeapTicketStore.PROFILE)
+@TestPropertySource("classpath:application.integration.properties")
+public class OffHeapLotteryResourceIntegration extends LotteryResourceIntegration {
+
+    @Autowired
+    private OffHeapTicketStore offHeapTicketStore;
+
+    @Override
+    protected void removeAllTickets() {
+        offHeapTicketStore.clear();
+    }
+}
@@ -0,0 +1,97 @@
+package exercises.lottery.resources;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+/**
+ * Test class for RequestLoggingFilter.
+ */
+public class RequestLoggingFilterTest {
+
+    @Rule
+    public MockitoRule mockito = MockitoJUnit.rule();
+
+    @Mock
+    private ContainerRequestContext request;
+
+    @Mock
+    private ContainerResponseContext response;
+
+    @Mock
+    private ExtendedUriInfo uriInfo;
+
+    private final Logger requestLogger = (Logger) LoggerFactory.getLogger("lottery.requests");
+    private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        willAnswer(invocation -> properties.put((String) invocation.getArguments()[0], invocation.getArguments()[1]))
+                .given(request).setProperty(anyString(), any());
+        given(request.getProperty(anyString())).willAnswer(invocation -> properties.get(invocation.getArguments()[0]));
+        given(request.getMethod()).willReturn("GET");
+        given(request.getUriInfo()).willReturn(uriInfo);
+        given(uriInfo.getPath()).willReturn("tickets/1");
+        events.start();
+        requestLogger.addAppender(events);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        requestLogger.detachAppender(events);
+    }
+
+
+    @Test
+    public void shouldLogRequestEvent() throws Exception {
+        given(response.getStatus()).willReturn(200);
+        handle(new RequestLoggingFilter(1));
+        assertThat(events.list).hasSize(1);
+        assertThat(events.list.get(0).getFormattedMessage())
+                .startsWith("event=request method=GET path=/tickets/1 resource=unmatched status=200 durationUs=")
+                .endsWith(" sampleRate=1");
+    }
+
+    @Test
+    public void shouldSampleSuccessfulRequests() throws Exception {
+        given(response.getStatus()).willReturn(200);
+        RequestLoggingFilter filter = new RequestLoggingFilter(3);
+        for (int i = 0; i < 7; i++) {
+            handle(filter);
+        }
+        assertThat(events.list).hasSize(3);
+    }
+
+    @Test
+    public void shouldAlwaysLogFailedRequests() throws Exception {
+        given(response.getStatus()).willReturn(500);
+        RequestLoggingFilter filter = new RequestLoggingFilter(0);
+        handle(filter);
+        handle(filter);
+        assertThat(events.list).hasSize(2);
+    }
+
+    private void handle(RequestLoggingFilter filter) {
+        filter.filter(request);
+        filter.filter(request, response);
+    }
+}
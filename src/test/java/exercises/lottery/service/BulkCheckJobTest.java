@@ -0,0 +1,143 @@
+package exercises.lottery.service;
+
+import exercises.lottery.config.TestMongoConfig;
+import exercises.lottery.data.LotteryDao;
+import exercises.lottery.data.QueryDiagnostics;
+import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LotteryRules;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.domain.TicketBuilder;
+import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.metrics.LotteryMetrics;
+import exercises.lottery.service.random.ThreadLocalRandomSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.assertj.core.util.Sets.*;
+import static org.mockito.BDDMockito.*;
+
+/**
+ * Test class for BulkCheckJob.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = { TestMongoConfig.class, LotteryDao.class, BulkCheckJobTest.DaoConfig.class })
+@ActiveProfiles("testing")
+public class BulkCheckJobTest {
+
+    // only for the testing profile, so that the application context does not pick it up when scanning
+    @Configuration
+    @Profile("testing")
+    static class DaoConfig {
+
+        @Bean
+        public LotteryMetrics lotteryMetrics() {
+            return LotteryMetrics.disabled();
+        }
+
+        @Bean
+        public QueryDiagnostics queryDiagnostics() {
+            return QueryDiagnostics.disabled();
+        }
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private LotteryDao lotteryDao;
+
+    private TicketService ticketService;
+
+
+    @Before
+    public void setUp() throws Exception {
+        LotteryRules rules = new SimpleLotteryRules();
+        ticketService = new TicketService(rules, new LineService(rules, new ThreadLocalRandomSource()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mongoTemplate.dropCollection(Ticket.class);
+        mongoTemplate.dropCollection("checkpoints");
+    }
+
+
+    @Test
+    public void shouldCheckAllUncheckedTickets() throws Exception {
+        List<Ticket> unchecked = insertTickets(5);
+        Ticket alreadyChecked = new TicketBuilder().checked().lines(newLinkedHashSet(new Line(new int[] { 2, 2, 2 }, 5))).build();
+        mongoTemplate.insert(alreadyChecked);
+
+        BulkCheckProgress progress = new BulkCheckJob(lotteryDao, ticketService, 2, 2).run();
+
+        assertThat(progress.isRunning()).isFalse();
+        assertThat(progress.getError()).isNull();
+        assertThat(progress.getTicketsRead()).isEqualTo(5);
+        assertThat(progress.getTicketsChecked()).isEqualTo(5);
+        for (Ticket ticket : unchecked) {
+            assertThat(lotteryDao.getTicketById(ticket.getId())).isEqualTo(ticketService.checkTicket(ticket));
+        }
+        assertThat(lotteryDao.getTicketById(alreadyChecked.getId())).isEqualTo(alreadyChecked);
+        assertThat(lotteryDao.getCheckpoint(BulkCheckJob.JOB_NAME)).isNull();
+    }
+
+    @Test
+    public void shouldResumeFromCheckpoint() throws Exception {
+        List<Ticket> unchecked = insertTickets(4);
+        lotteryDao.saveCheckpoint(BulkCheckJob.JOB_NAME, unchecked.get(1).getId());
+
+        BulkCheckProgress progress = new BulkCheckJob(lotteryDao, ticketService, 10, 1).run();
+
+        assertThat(progress.getTicketsChecked()).isEqualTo(2);
+        assertThat(lotteryDao.getTicketById(unchecked.get(0).getId()).isChecked()).isFalse();
+        assertThat(lotteryDao.getTicketById(unchecked.get(1).getId()).isChecked()).isFalse();
+        assertThat(lotteryDao.getTicketById(unchecked.get(2).getId()).isChecked()).isTrue();
+        assertThat(lotteryDao.getTicketById(unchecked.get(3).getId()).isChecked()).isTrue();
+    }
+
+    @Test
+    public void shouldNotMoveCheckpointPastFailedChunk() throws Exception {
+        List<Ticket> unchecked = insertTickets(6);
+        TicketService failingService = mock(TicketService.class);
+        given(failingService.checkTicket(any(Ticket.class))).willAnswer(invocation -> {
+            Ticket ticket = (Ticket) invocation.getArguments()[0];
+            if (ticket.getId().equals(unchecked.get(2).getId())) {
+                throw new IllegalStateException("Failed to check ticket.");
+            }
+            return ticketService.checkTicket(ticket);
+        });
+
+        BulkCheckProgress failed = new BulkCheckJob(lotteryDao, failingService, 2, 1).run();
+
+        assertThat(failed.getError()).contains("Failed to check ticket.");
+        assertThat(lotteryDao.getCheckpoint(BulkCheckJob.JOB_NAME)).isEqualTo(unchecked.get(1).getId());
+
+        BulkCheckProgress resumed = new BulkCheckJob(lotteryDao, ticketService, 2, 1).run();
+
+        assertThat(resumed.getError()).isNull();
+        assertThat(lotteryDao.getTicketsByChecked(false)).isEmpty();
+        assertThat(lotteryDao.getCheckpoint(BulkCheckJob.JOB_NAME)).isNull();
+    }
+
+    private List<Ticket> insertTickets(int numberOfTickets) {
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < numberOfTickets; i++) {
+            tickets.add(ticketService.generateNewTicket(3));
+        }
+        return lotteryDao.createTickets(tickets);
+    }
+}
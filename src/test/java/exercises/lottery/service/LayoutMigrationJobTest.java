@@ -0,0 +1,133 @@
+package exercises.lottery.service;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import exercises.lottery.config.TestMongoConfig;
+import exercises.lottery.data.LotteryDao;
+import exercises.lottery.data.QueryDiagnostics;
+import exercises.lottery.data.TicketConversions;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.metrics.LotteryMetrics;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class for LayoutMigrationJob.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = { TestMongoConfig.class, LotteryDao.class, LayoutMigrationJobTest.DaoConfig.class })
+@ActiveProfiles("testing")
+public class LayoutMigrationJobTest {
+
+    // only for the testing profile, so that the application context does not pick it up when scanning
+    @Configuration
+    @Profile("testing")
+    static class DaoConfig {
+
+        @Bean
+        public LotteryMetrics lotteryMetrics() {
+            return LotteryMetrics.disabled();
+        }
+
+        @Bean
+        public QueryDiagnostics queryDiagnostics() {
+            return QueryDiagnostics.disabled();
+        }
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private LotteryDao lotteryDao;
+
+    private DBCollection tickets;
+
+
+    @Before
+    public void setUp() throws Exception {
+        tickets = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Ticket.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mongoTemplate.dropCollection(Ticket.class);
+        mongoTemplate.dropCollection("checkpoints");
+    }
+
+
+    @Test
+    public void shouldMigrateAllTicketsWithDocumentLines() throws Exception {
+        List<String> ids = insertTicketsWithDocumentLines(5);
+
+        long migrated = new LayoutMigrationJob(lotteryDao, TicketConversions.COMPACT_LAYOUT, 2, false).run();
+
+        assertThat(migrated).isEqualTo(5);
+        assertThat(lotteryDao.getTicketsToMigrate(null, 10)).isEmpty();
+        for (String id : ids) {
+            assertThat(lotteryDao.getTicketById(id).getLines()).hasSize(2);
+        }
+        assertThat(lotteryDao.getCheckpoint(LayoutMigrationJob.JOB_NAME)).isNull();
+    }
+
+    @Test
+    public void shouldResumeFromCheckpoint() throws Exception {
+        List<String> ids = insertTicketsWithDocumentLines(4);
+        lotteryDao.saveCheckpoint(LayoutMigrationJob.JOB_NAME, ids.get(1));
+
+        long migrated = new LayoutMigrationJob(lotteryDao, TicketConversions.COMPACT_LAYOUT, 10, false).run();
+
+        assertThat(migrated).isEqualTo(2);
+        assertThat(lotteryDao.getTicketsToMigrate(null, 10)).extracting(Ticket::getId)
+                .containsExactly(ids.get(0), ids.get(1));
+    }
+
+    @Test
+    public void shouldNotMigrateWhenWritingDocumentLines() throws Exception {
+        insertTicketsWithDocumentLines(1);
+        LayoutMigrationJob job = new LayoutMigrationJob(lotteryDao, TicketConversions.DOCUMENTS_LAYOUT, 10, false);
+
+        assertThat(job.start()).isFalse();
+        Throwable thrown = catchThrowable(job::run);
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+        assertThat(lotteryDao.getTicketsToMigrate(null, 10)).hasSize(1);
+    }
+
+    private List<String> insertTicketsWithDocumentLines(int numberOfTickets) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < numberOfTickets; i++) {
+            BasicDBList lines = new BasicDBList();
+            lines.add(new BasicDBObject("numbers", numbers(i % 3, 0, 1)).append("outcome", -1));
+            lines.add(new BasicDBObject("numbers", numbers(2, 2, i % 3)).append("outcome", -1));
+            ObjectId id = new ObjectId();
+            tickets.insert(new BasicDBObject("_id", id).append("checked", false).append("lines", lines));
+            ids.add(id.toString());
+        }
+        return ids;
+    }
+
+    private static BasicDBList numbers(int... numbers) {
+        BasicDBList list = new BasicDBList();
+        for (int number : numbers) {
+            list.add(number);
+        }
+        return list;
+    }
+}
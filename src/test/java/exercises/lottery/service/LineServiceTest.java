@@ -1,8 +1,12 @@
 package exercises.lottery.service;
 
 import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineCodes;
+import exercises.lottery.domain.LineSet;
 import exercises.lottery.domain.LotteryRules;
 import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.service.random.SeededRandomSource;
+import exercises.lottery.service.random.ThreadLocalRandomSource;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
@@ -10,6 +14,7 @@ import org.junit.Test;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.stream.IntStream;
@@ -50,7 +55,7 @@ public class LineServiceTest {
     @Before
     public void setUp() throws Exception {
         rules = new SimpleLotteryRules();
-        lineService = new LineService(rules);
+        lineService = new LineService(rules, new ThreadLocalRandomSource());
     }
 
 
@@ -106,6 +111,52 @@ public class LineServiceTest {
         assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid line.");
     }
 
+    @Test
+    public void newLineCodeIsDifferentFromExistingOnes() throws Exception {
+        LineSet existing = LineSet.copyOf(testLines);
+        long newCode = lineService.generateNewLineCode(existing);
+        assertThat(existing.containsCode(newCode)).isFalse();
+        assertThat(rules.isLineValid(LineCodes.toLine(newCode))).isTrue();
+    }
+
+    @Test
+    public void shouldGenerateDistinctValidLines() throws Exception {
+        for (int numberOfLines = 0; numberOfLines <= rules.getMaxNumberOfLines(); numberOfLines++) {
+            LineSet lines = lineService.generateNewLines(numberOfLines);
+            assertThat(lines).hasSize(numberOfLines);
+            assertThat(lines.stream().allMatch(line -> rules.isLineValid(line))).isTrue();
+        }
+        assertThat(lineService.generateNewLines(rules.getMaxNumberOfLines())).isEqualTo(allPossibleLines);
+    }
+
+    @Test
+    public void seededSourcesShouldGenerateSameLines() throws Exception {
+        LineService firstService = new LineService(rules, new SeededRandomSource(42));
+        LineService secondService = new LineService(rules, new SeededRandomSource(42));
+        for (int i = 0; i < 10; i++) {
+            assertThat(new ArrayList<>(firstService.generateNewLines(5))).isEqualTo(new ArrayList<>(secondService.generateNewLines(5)));
+        }
+    }
+
+    @Test
+    public void shouldThrowExceptionIfTooManyLinesAreRequested() throws Exception {
+        Throwable thrown = catchThrowable(() -> lineService.generateNewLines(rules.getMaxNumberOfLines() + 1));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("All possible lines were already generated.");
+    }
+
+    @Test
+    public void shouldRetrieveLineCodeWithOutcome() throws Exception {
+        long code = LineCodes.encode(new int[] { 0, 1, 2 }, -1);
+        assertThat(lineService.determineLineOutcome(code)).isEqualTo(LineCodes.encode(new int[] { 0, 1, 2 }, 1));
+    }
+
+    @Test
+    public void shouldThrowExceptionForInvalidLineCode() throws Exception {
+        long invalidCode = LineCodes.encode(new int[] { 2, 3, 5 }, -1);
+        Throwable thrown = catchThrowable(() -> lineService.determineLineOutcome(invalidCode));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid line.");
+    }
+
     private static Set<Line> getAllPossibleLines() {
         Set<Line> allLines = new LinkedHashSet<>();
         for (int i = 0; i < 3; i++) {
@@ -0,0 +1,118 @@
+package exercises.lottery.service;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import exercises.lottery.config.TestMongoConfig;
+import exercises.lottery.data.LotteryDao;
+import exercises.lottery.data.QueryDiagnostics;
+import exercises.lottery.data.TicketStats;
+import exercises.lottery.domain.Ticket;
+import exercises.lottery.metrics.LotteryMetrics;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class for StatsReconciliationJob.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = { TestMongoConfig.class, LotteryDao.class, StatsReconciliationJobTest.DaoConfig.class })
+@ActiveProfiles("testing")
+public class StatsReconciliationJobTest {
+
+    // only for the testing profile, so that the application context does not pick it up when scanning
+    @Configuration
+    @Profile("testing")
+    static class DaoConfig {
+
+        @Bean
+        public LotteryMetrics lotteryMetrics() {
+            return LotteryMetrics.disabled();
+        }
+
+        @Bean
+        public QueryDiagnostics queryDiagnostics() {
+            return QueryDiagnostics.disabled();
+        }
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private LotteryDao lotteryDao;
+
+    @After
+    public void tearDown() throws Exception {
+        mongoTemplate.dropCollection(Ticket.class);
+        mongoTemplate.dropCollection("stats");
+    }
+
+
+    @Test
+    public void shouldRebuildStatsOfTicketsStoredWithoutThem() throws Exception {
+        insertTicketsWithoutStats(3);
+
+        TicketStats rebuilt = new StatsReconciliationJob(lotteryDao).run();
+
+        assertThat(rebuilt).isEqualTo(new TicketStats(0, 3, Collections.emptyMap()));
+        assertThat(lotteryDao.getTicketStats()).isEqualTo(rebuilt);
+    }
+
+    @Test
+    public void shouldRebuildStatsInBackgroundWhenStarted() throws Exception {
+        insertTicketsWithoutStats(2);
+        StatsReconciliationJob job = new StatsReconciliationJob(lotteryDao);
+
+        assertThat(job.start()).isTrue();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lotteryDao.getTicketStats().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(lotteryDao.getTicketStats().getUncheckedTickets()).isEqualTo(2);
+        job.shutdown();
+    }
+
+    @Test
+    public void shouldNotRebuildMissingStatsOnStartup() throws Exception {
+        insertTicketsWithoutStats(2);
+        StatsReconciliationJob job = new StatsReconciliationJob(lotteryDao);
+
+        job.warnOnStartup();
+
+        assertThat(job.isRunning()).isFalse();
+        assertThat(lotteryDao.getTicketStats()).isEqualTo(TicketStats.empty());
+        job.shutdown();
+    }
+
+    private void insertTicketsWithoutStats(int numberOfTickets) {
+        for (int i = 0; i < numberOfTickets; i++) {
+            BasicDBList lines = new BasicDBList();
+            lines.add(new BasicDBObject("numbers", numbers(i % 3, 0, 1)).append("outcome", -1));
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(Ticket.class))
+                    .insert(new BasicDBObject("_id", new ObjectId()).append("checked", false).append("lines", lines));
+        }
+    }
+
+    private static BasicDBList numbers(int... numbers) {
+        BasicDBList list = new BasicDBList();
+        for (int number : numbers) {
+            list.add(number);
+        }
+        return list;
+    }
+}
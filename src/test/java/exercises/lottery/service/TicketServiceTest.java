@@ -1,10 +1,13 @@
 package exercises.lottery.service;
 
 import exercises.lottery.domain.Line;
+import exercises.lottery.domain.LineCodes;
+import exercises.lottery.domain.LineSet;
 import exercises.lottery.domain.LotteryRules;
 import exercises.lottery.domain.Ticket;
 import exercises.lottery.domain.TicketBuilder;
 import exercises.lottery.domain.rules.SimpleLotteryRules;
+import exercises.lottery.service.random.SeededRandomSource;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
@@ -15,7 +18,6 @@ import org.mockito.junit.MockitoRule;
 
 import java.util.*;
 
-import static org.mockito.Matchers.any;
 import static org.mockito.BDDMockito.*;
 import static org.assertj.core.api.Assertions.*;
 import static org.assertj.core.util.Sets.*;
@@ -86,8 +88,8 @@ public class TicketServiceTest {
         Set<Line> expectedLines = new LinkedHashSet<>();
         expectedLines.addAll(Arrays.asList(testLines));
         Ticket expectedTicket = new Ticket(expectedLines);
-        given(lineService.generateNewLine(any(Set.class)))
-                .willReturn(testLines[0], testLines[1], testLines[2], testLines[3], testLines[4]);
+        given(lineService.generateNewLines(numberOfLines))
+                .willReturn(LineSet.copyOf(expectedLines));
         assertThat(ticketService.generateNewTicket(numberOfLines)).isEqualTo(expectedTicket);
     }
 
@@ -98,6 +100,43 @@ public class TicketServiceTest {
         assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid number of lines.");
     }
 
+    @Test
+    public void shouldGenerateNewTickets() throws Exception {
+        LineSet lines = LineSet.copyOf(newLinkedHashSet(testLines[0], testLines[1]));
+        given(lineService.generateNewLines(2)).willReturn(lines);
+        List<Ticket> tickets = ticketService.generateNewTickets(3, 2);
+        assertThat(tickets).hasSize(3);
+        assertThat(tickets.stream().allMatch(ticket -> ticket.getLines().equals(lines) && !ticket.isChecked())).isTrue();
+    }
+
+    @Test
+    public void shouldGenerateSameTicketsWithSameSeed() throws Exception {
+        SeededRandomSource source = new SeededRandomSource(7);
+        TicketService seededService = new TicketService(rules, new LineService(rules, source));
+        List<Ticket> generated = seededService.generateNewTickets(50, 5);
+        Ticket single = seededService.generateNewTicket(5);
+
+        source.reset();
+        assertThat(seededService.generateNewTickets(50, 5)).isEqualTo(generated);
+        assertThat(seededService.generateNewTicket(5)).isEqualTo(single);
+
+        TicketService otherService = new TicketService(rules, new LineService(rules, new SeededRandomSource(7)));
+        assertThat(otherService.generateNewTickets(50, 5)).isEqualTo(generated);
+        assertThat(otherService.generateNewTicket(5)).isEqualTo(single);
+    }
+
+    @Test
+    public void shouldThrowExceptionWithInvalidNumberOfTickets() throws Exception {
+        Throwable thrown = catchThrowable(() -> ticketService.generateNewTickets(-1, 2));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid number of tickets.");
+    }
+
+    @Test
+    public void shouldThrowExceptionWithInvalidNumberOfLinesForNewTickets() throws Exception {
+        Throwable thrown = catchThrowable(() -> ticketService.generateNewTickets(2, rules.getMaxNumberOfLines() + 1));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid number of lines.");
+    }
+
     @Test
     public void shouldAmendUncheckedTicket() throws Exception {
         assertThat(ticketService.amendTicket(firstTicketWithId, extraLines)).isEqualTo(firstTicketWithExtraLines);
@@ -130,10 +169,34 @@ public class TicketServiceTest {
         assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid line(s).");
     }
 
+    @Test
+    public void shouldValidateAmendmentWithoutOutcomes() throws Exception {
+        LineSet validated = ticketService.validateAmendment(newLinkedHashSet(testLinesWithOutcomes[2], testLines[3]));
+        assertThat(validated).containsExactly(testLines[2], testLines[3]);
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenAmendmentHasTooManyLines() throws Exception {
+        assertThat(ticketService.validateAmendment(getAllPossibleLines())).hasSize(rules.getMaxNumberOfLines());
+        Set<Line> tooManyLines = getAllPossibleLines();
+        tooManyLines.add(new Line(new int[] { 1, 1, 1, 1 }));
+        Throwable thrown = catchThrowable(() -> ticketService.validateAmendment(tooManyLines));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid number of lines.");
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenAmendmentHasInvalidLines() throws Exception {
+        Set<Line> invalidLines = newLinkedHashSet(
+                new Line(new int[] { 1, 2, 0 }),
+                new Line(new int[] { 2, 1, 4 }));
+        Throwable thrown = catchThrowable(() -> ticketService.validateAmendment(invalidLines));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Invalid line(s).");
+    }
+
     @Test
     public void shouldCheckTicket() throws Exception {
-        given(lineService.determineLineOutcome(any(Line.class)))
-                .willReturn(testLinesWithOutcomes[0], testLinesWithOutcomes[1]);
+        given(lineService.determineLineOutcome(anyLong()))
+                .willReturn(LineCodes.encode(testLinesWithOutcomes[0]), LineCodes.encode(testLinesWithOutcomes[1]));
         assertThat(ticketService.checkTicket(firstTicketWithId)).isEqualTo(firstTicketWithId_Checked);
     }
 
@@ -0,0 +1,71 @@
+package exercises.lottery.service.random;
+
+import org.junit.Test;
+
+import java.security.SecureRandom;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class for the RandomSource implementations.
+ */
+public class RandomSourceTest {
+
+    private static final int BOUND = 27;
+    private static final int SAMPLES = 10000;
+
+
+    @Test
+    public void threadLocalSourceShouldRespectBound() throws Exception {
+        assertAllValuesAreGenerated(new ThreadLocalRandomSource());
+    }
+
+    @Test
+    public void splittableSourceShouldRespectBound() throws Exception {
+        assertAllValuesAreGenerated(new SplittableRandomSource());
+    }
+
+    @Test
+    public void secureSourceShouldRespectBound() throws Exception {
+        assertAllValuesAreGenerated(new SecureRandomSource(new SecureRandom(), 64));
+    }
+
+    @Test
+    public void seededSourceShouldRespectBound() throws Exception {
+        assertAllValuesAreGenerated(new SeededRandomSource(7));
+    }
+
+    @Test
+    public void seededSourceShouldReplaySequence() throws Exception {
+        SeededRandomSource source = new SeededRandomSource(7);
+        int[] first = draw(source.newGenerator());
+        int[] second = draw(source.newGenerator());
+        source.reset();
+        assertThat(draw(source.newGenerator())).isEqualTo(first);
+        assertThat(draw(source.newGenerator())).isEqualTo(second);
+        assertThat(draw(new SeededRandomSource(7).newGenerator())).isEqualTo(first);
+    }
+
+    @Test
+    public void secureSourceShouldRejectSmallBatches() throws Exception {
+        Throwable thrown = catchThrowable(() -> new SecureRandomSource(new SecureRandom(), 2));
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void assertAllValuesAreGenerated(RandomSource source) {
+        boolean[] seen = new boolean[BOUND];
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            int value = source.newGenerator().nextInt(BOUND);
+            assertThat(value).isBetween(0, BOUND - 1);
+            seen[value] = true;
+        }
+        for (boolean valueSeen : seen) {
+            assertThat(valueSeen).isTrue();
+        }
+    }
+
+    private int[] draw(RandomGenerator generator) {
+        return IntStream.range(0, 100).map(i -> generator.nextInt(BOUND)).toArray();
+    }
+}